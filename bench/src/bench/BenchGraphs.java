@@ -0,0 +1,26 @@
+package bench;
+
+import common.Graph;
+import common.PlantedGraph;
+import common.PlantedGraphGenerator;
+import java.util.*;
+
+/**
+ * Benchmark inputs: planted 3-colourable graphs with average degree 6 and
+ * the colouring already set, so isValidColouring has something to check.
+ */
+final class BenchGraphs {
+
+    private BenchGraphs() {
+    }
+
+    // Same seed, same graph, so results are comparable across runs
+    static Graph planted(int numVertices) {
+        PlantedGraph planted = new PlantedGraphGenerator(numVertices, 6, 42).generate();
+        Graph graph = planted.toGraph();
+        for (Map.Entry<Integer, String> entry : planted.getColouring().entrySet()) {
+            graph.setColour(entry.getKey(), entry.getValue());
+        }
+        return graph;
+    }
+}
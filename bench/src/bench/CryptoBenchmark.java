@@ -0,0 +1,67 @@
+package bench;
+
+import common.CryptoUtils;
+import common.NonceDeriver;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Per-vertex commitment cost: one commitment per vertex per round on the
+ * prover, two verifications per round on the verifier.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    private String colour;
+    private String nonce;
+    private String commitment;
+    private byte[] colourBytes;
+    private byte[] nonceBytes;
+    private byte[] out;
+    private NonceDeriver deriver;
+    private int vertex;
+
+    @Setup
+    public void setup() {
+        colour = "GREEN";
+        nonce = CryptoUtils.generateNonce();
+        commitment = CryptoUtils.createCommitment(colour, nonce);
+        colourBytes = colour.getBytes(StandardCharsets.UTF_8);
+        nonceBytes = CryptoUtils.hexToBytes(nonce);
+        out = new byte[CryptoUtils.DIGEST_BYTES];
+        deriver = NonceDeriver.fresh();
+    }
+
+    @Benchmark
+    public String generateNonce() {
+        return CryptoUtils.generateNonce();
+    }
+
+    @Benchmark
+    public byte[] deriveNonce() {
+        deriver.derive(vertex++, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public String createCommitment() {
+        return CryptoUtils.createCommitment(colour, nonce);
+    }
+
+    @Benchmark
+    public byte[] createCommitmentBytes() {
+        CryptoUtils.createCommitment(colourBytes, nonceBytes, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public boolean verifyCommitment() {
+        return CryptoUtils.verifyCommitment(commitment, colour, nonce);
+    }
+}
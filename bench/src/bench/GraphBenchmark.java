@@ -0,0 +1,60 @@
+package bench;
+
+import common.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Whole-graph operations: edge enumeration and colouring validation,
+ * on the mutable Graph and on its compact snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class GraphBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int vertices;
+
+    private Graph graph;
+    private Map<Integer, String> colouring;
+    private CompactGraph compact;
+    private ColouringValidator validator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        graph = BenchGraphs.planted(vertices);
+        colouring = graph.getColouring();
+        compact = CompactGraph.from(graph);
+        validator = new ColouringValidator();
+    }
+
+    @Benchmark
+    public List<int[]> getEdges() {
+        return graph.getEdges();
+    }
+
+    @Benchmark
+    public EdgeIndex buildEdgeIndex() {
+        return EdgeIndex.of(graph);
+    }
+
+    @Benchmark
+    public boolean isValidColouring() {
+        return graph.isValidColouring();
+    }
+
+    @Benchmark
+    public boolean compactIsValidColouring() {
+        return compact.isValidColouring();
+    }
+
+    @Benchmark
+    public ValidationResult parallelValidate() {
+        return validator.validate(graph, colouring);
+    }
+}
@@ -0,0 +1,116 @@
+package bench;
+
+import client.ProverRound;
+import common.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JSON encoding and decoding of every message a round sends. Commitment
+ * messages grow with the vertex count; the others are fixed size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class MessageBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int vertices;
+
+    private CommitMessage commit;
+    private MerkleCommitMessage merkleCommit;
+    private BatchCommitMessage batchCommit;
+    private ChallengeMessage challenge;
+    private RevealMessage reveal;
+    private ResultMessage result;
+
+    private String commitJson;
+    private String merkleCommitJson;
+    private String batchCommitJson;
+    private String challengeJson;
+    private String revealJson;
+    private String resultJson;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Graph graph = BenchGraphs.planted(vertices);
+        ProverRound round = ProverRound.create(vertices, graph.getColouring());
+        commit = new CommitMessage(round.getCommitments(), 1);
+        merkleCommit = new MerkleCommitMessage(round.getMerkleTree().getRoot(), vertices, 1);
+        batchCommit = new BatchCommitMessage(Arrays.asList(round.getCommitments(), round.getCommitments()), 1);
+        challenge = new ChallengeMessage(0, vertices - 1, 1);
+        reveal = round.reveal(0, vertices - 1, 1);
+        result = new ResultMessage(true, "Verification successful! Proof shows a valid 3-colouring.", 100);
+
+        commitJson = commit.toJSON();
+        merkleCommitJson = merkleCommit.toJSON();
+        batchCommitJson = batchCommit.toJSON();
+        challengeJson = challenge.toJSON();
+        revealJson = reveal.toJSON();
+        resultJson = result.toJSON();
+    }
+
+    @Benchmark
+    public String commitToJSON() {
+        return commit.toJSON();
+    }
+
+    @Benchmark
+    public ProtocolMessage commitFromJSON() {
+        return ProtocolMessage.fromJSON(commitJson);
+    }
+
+    @Benchmark
+    public String merkleCommitToJSON() {
+        return merkleCommit.toJSON();
+    }
+
+    @Benchmark
+    public ProtocolMessage merkleCommitFromJSON() {
+        return ProtocolMessage.fromJSON(merkleCommitJson);
+    }
+
+    @Benchmark
+    public String batchCommitToJSON() {
+        return batchCommit.toJSON();
+    }
+
+    @Benchmark
+    public ProtocolMessage batchCommitFromJSON() {
+        return ProtocolMessage.fromJSON(batchCommitJson);
+    }
+
+    @Benchmark
+    public String challengeToJSON() {
+        return challenge.toJSON();
+    }
+
+    @Benchmark
+    public ProtocolMessage challengeFromJSON() {
+        return ProtocolMessage.fromJSON(challengeJson);
+    }
+
+    @Benchmark
+    public String revealToJSON() {
+        return reveal.toJSON();
+    }
+
+    @Benchmark
+    public ProtocolMessage revealFromJSON() {
+        return ProtocolMessage.fromJSON(revealJson);
+    }
+
+    @Benchmark
+    public String resultToJSON() {
+        return result.toJSON();
+    }
+
+    @Benchmark
+    public ProtocolMessage resultFromJSON() {
+        return ProtocolMessage.fromJSON(resultJson);
+    }
+}
@@ -0,0 +1,84 @@
+package bench;
+
+import client.ProverRound;
+import common.*;
+import java.io.IOException;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import server.BlockingConnection;
+import server.ZKPSession;
+
+/**
+ * One full interactive round over loopback: the prover permutes and commits,
+ * the verifier challenges an edge, the prover reveals and the verifier checks.
+ * The session is sized so it never finishes during a trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class RoundBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int vertices;
+
+    @Param({"JSON", "BINARY"})
+    public WireFormat format;
+
+    private Map<Integer, String> colouring;
+    private ServerSocket serverSocket;
+    private Thread verifier;
+    private Socket socket;
+    private MessageChannel channel;
+    private int round;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Graph graph = BenchGraphs.planted(vertices);
+        colouring = graph.getColouring();
+
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        ZKPSession session = new ZKPSession(1, graph, Integer.MAX_VALUE, false);
+        verifier = new Thread(() -> {
+            try {
+                new BlockingConnection(serverSocket.accept(), session, false).run();
+            } catch (IOException e) {
+                // Server socket closed before the prover connected
+            }
+        }, "bench-verifier");
+        verifier.setDaemon(true);
+        verifier.start();
+
+        socket = new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort());
+        socket.setTcpNoDelay(true);
+        channel = MessageChannel.connect(socket, format);
+        round = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        channel.close();
+        serverSocket.close();
+        verifier.join(5000);
+    }
+
+    @Benchmark
+    public RevealMessage round() throws IOException {
+        ProverRound proverRound = ProverRound.create(vertices, colouring);
+        channel.send(new CommitMessage(proverRound.getCommitments(), round));
+
+        ProtocolMessage reply = channel.receive();
+        if (!(reply instanceof ChallengeMessage)) {
+            throw new IllegalStateException("Expected CHALLENGE, got " + reply);
+        }
+        ChallengeMessage challenge = (ChallengeMessage) reply;
+        RevealMessage reveal = proverRound.reveal(challenge.getVertex1(), challenge.getVertex2(), round);
+        channel.send(reveal);
+        round++;
+        return reveal;
+    }
+}
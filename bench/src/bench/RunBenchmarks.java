@@ -0,0 +1,36 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached and keeps the results as
+ * JSON, so per-round cost can be compared between releases.
+ * Arguments are benchmark name patterns, e.g. "RoundBenchmark"; none runs all.
+ */
+public class RunBenchmarks {
+
+    public static void main(String[] args) {
+        try {
+            OptionsBuilder builder = new OptionsBuilder();
+            if (args.length == 0) {
+                builder.include("bench\\..*");
+            }
+            for (String pattern : args) {
+                builder.include(pattern);
+            }
+            Options options = builder
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("bench-results.json")
+                .build();
+            new Runner(options).run();
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
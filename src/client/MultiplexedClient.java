@@ -0,0 +1,224 @@
+package client;
+
+import common.*;
+import java.io.*;
+import java.net.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs many proof sessions over one persistent connection.
+ * Every message carries its session id; a reader thread hands incoming
+ * messages to the session they belong to, so proofs on different threads can
+ * interleave freely while paying for a single TCP handshake.
+ *
+ * Session ids are random, so that servers sharing a session store never see
+ * the same id from two clients. A session can then be resumed by id on a
+ * new connection, to the same server or another one sharing its store.
+ * Whoever knows a session's id can continue it, so ids must not be shared.
+ */
+public class MultiplexedClient implements Closeable {
+
+    // Delivered to every waiting session when the connection goes away
+    private static final ProtocolMessage CLOSED = new ResultMessage(false, "Connection closed", 0);
+
+    private final Socket socket;
+    private final MessageChannel channel;
+    private final Map<Long, BlockingQueue<ProtocolMessage>> inboxes = new ConcurrentHashMap<>();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Object sendLock = new Object();
+    private final Thread reader;
+    private volatile boolean closed;
+
+    private MultiplexedClient(Socket socket, MessageChannel channel) {
+        this.socket = socket;
+        this.channel = channel;
+        this.reader = new Thread(this::readLoop, "mux-reader-" + socket.getLocalPort());
+        this.reader.setDaemon(true);
+    }
+
+    public static MultiplexedClient connect(String host, int port, WireFormat format) throws IOException {
+        Socket socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        MultiplexedClient client = new MultiplexedClient(socket, MessageChannel.connect(socket, format));
+        client.reader.start();
+        return client;
+    }
+
+    // A new session with its own id; messages sent through it are tagged automatically
+    public ProofSession openSession() throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        long id;
+        do {
+            // 0 is an untagged message
+            id = RANDOM.nextLong();
+        } while (id == 0 || inboxes.putIfAbsent(id, new LinkedBlockingQueue<>()) != null);
+        return new ProofSession(id);
+    }
+
+    /**
+     * A session opened on an earlier connection, e.g. to continue a proof after
+     * that connection dropped. The server only has it if it keeps sessions in a
+     * store, see ZKPServer --session-store.
+     */
+    public ProofSession resumeSession(long id) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        if (id == 0 || inboxes.putIfAbsent(id, new LinkedBlockingQueue<>()) != null) {
+            throw new IOException("Session " + id + " cannot be resumed here");
+        }
+        return new ProofSession(id);
+    }
+
+    /**
+     * Run one complete proof on a new session and return the verifier's result.
+     * Safe to call from many threads at once.
+     */
+    public ResultMessage prove(int numVertices, Map<Integer, String> colouring, int numRounds) throws IOException {
+        try (ProofSession session = openSession()) {
+            return runProof(session, numVertices, colouring, numRounds);
+        }
+    }
+
+    // The interactive protocol over any endpoint; stops early if the verifier sends its result
+    static ResultMessage runProof(MessageEndpoint endpoint, int numVertices, Map<Integer, String> colouring, int numRounds) throws IOException {
+        for (int round = 1; round <= numRounds; round++) {
+            ProverRound proverRound = ProverRound.create(numVertices, colouring);
+            endpoint.send(new CommitMessage(proverRound.getCommitments(), round));
+
+            ProtocolMessage msg = endpoint.receive();
+            if (msg instanceof ResultMessage) {
+                return (ResultMessage) msg;
+            }
+            if (!(msg instanceof ChallengeMessage)) {
+                throw new IOException("Expected CHALLENGE message, got " + msg);
+            }
+            ChallengeMessage challenge = (ChallengeMessage) msg;
+            endpoint.send(proverRound.reveal(challenge.getVertex1(), challenge.getVertex2(), round));
+        }
+
+        ProtocolMessage msg = endpoint.receive();
+        if (!(msg instanceof ResultMessage)) {
+            throw new IOException("Expected RESULT message, got " + msg);
+        }
+        return (ResultMessage) msg;
+    }
+
+    private void readLoop() {
+        try {
+            ProtocolMessage msg;
+            while ((msg = channel.receive()) != null) {
+                BlockingQueue<ProtocolMessage> inbox = inboxes.get(msg.getSessionId());
+                if (inbox != null) {
+                    inbox.add(msg);
+                } else {
+                    System.err.println("Dropping message for unknown session " + msg.getSessionId());
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Connection error: " + e.getMessage());
+            }
+        } finally {
+            closed = true;
+            for (BlockingQueue<ProtocolMessage> inbox : inboxes.values()) {
+                inbox.add(CLOSED);
+            }
+        }
+    }
+
+    public int getOpenSessions() {
+        return inboxes.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        socket.close();
+    }
+
+    /**
+     * One proof session on the shared connection. Used by a single thread at a time.
+     */
+    public class ProofSession implements MessageEndpoint, Closeable {
+        private final long id;
+
+        private ProofSession(long id) {
+            this.id = id;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public void send(ProtocolMessage message) throws IOException {
+            message.setSessionId(id);
+            synchronized (sendLock) {
+                channel.send(message);
+            }
+        }
+
+        // Returns null once the connection has closed
+        @Override
+        public ProtocolMessage receive() throws IOException {
+            BlockingQueue<ProtocolMessage> inbox = inboxes.get(id);
+            if (inbox == null) {
+                throw new IOException("Session " + id + " is closed");
+            }
+            try {
+                ProtocolMessage msg = closed && inbox.isEmpty() ? CLOSED : inbox.take();
+                return msg == CLOSED ? null : msg;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for session " + id);
+            }
+        }
+
+        @Override
+        public void close() {
+            inboxes.remove(id);
+        }
+    }
+
+    // Run several proofs of the sample graph at once over one connection
+    public static void main(String[] args) {
+        try {
+            Graph graph = Graph.createSampleGraph();
+            Map<Integer, String> colouring = Graph.getSampleColouring();
+            int sessions = ZKPClient.intOption(args, "--sessions", 8);
+            int port = ZKPClient.intOption(args, "--port", 8888);
+            WireFormat format = Arrays.asList(args).contains("--binary") ? WireFormat.BINARY : WireFormat.JSON;
+
+            System.out.println("Zero-Knowledge Proof - Multiplexed Client");
+            System.out.println("Running " + sessions + " proofs over one " + format + " connection");
+
+            try (MultiplexedClient client = connect("localhost", port, format)) {
+                ExecutorService pool = Executors.newFixedThreadPool(sessions);
+                List<Future<ResultMessage>> results = new ArrayList<>();
+                for (int i = 0; i < sessions; i++) {
+                    results.add(pool.submit(() -> client.prove(graph.getNumVertices(), colouring, 100)));
+                }
+                int verified = 0;
+                for (int i = 0; i < sessions; i++) {
+                    ResultMessage result = results.get(i).get();
+                    System.out.println("Proof " + (i + 1) + ": " + (result.isVerified() ? "VERIFIED" : "FAILED") +
+                                       " (" + result.getTotalRounds() + " rounds) " + result.getMessage());
+                    if (result.isVerified()) {
+                        verified++;
+                    }
+                }
+                pool.shutdown();
+                System.out.println(verified + "/" + sessions + " proofs verified");
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
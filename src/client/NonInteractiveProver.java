@@ -0,0 +1,60 @@
+package client;
+
+import common.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Produces Fiat-Shamir proofs offline, without connecting to a verifier.
+ * A cheating prover can grind commitments until the hash picks edges it can
+ * answer, so non-interactive proofs need more rounds than a live session
+ * for the same confidence.
+ */
+public class NonInteractiveProver {
+
+    public static NonInteractiveProof prove(Graph graph, Map<Integer, String> colouring, int numRounds) {
+        // Commit to every round first, then let the hash choose the challenges
+        List<ProverRound> proverRounds = new ArrayList<>();
+        List<List<String>> commitmentSets = new ArrayList<>();
+        for (int i = 0; i < numRounds; i++) {
+            ProverRound proverRound = ProverRound.create(graph.getNumVertices(), colouring);
+            proverRounds.add(proverRound);
+            commitmentSets.add(proverRound.getCommitments());
+        }
+
+        String fingerprint = graph.fingerprint();
+        List<int[]> challenges = FiatShamir.deriveChallenges(fingerprint, commitmentSets, graph.getCanonicalEdges());
+
+        List<RevealMessage> reveals = new ArrayList<>();
+        for (int i = 0; i < numRounds; i++) {
+            int[] edge = challenges.get(i);
+            reveals.add(proverRounds.get(i).reveal(edge[0], edge[1], i + 1));
+        }
+        return new NonInteractiveProof(fingerprint, commitmentSets, reveals);
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length < 1) {
+                System.err.println("Usage: NonInteractiveProver <proof-file> [rounds]");
+                return;
+            }
+            Graph graph = Graph.createSampleGraph();
+            int numRounds = args.length > 1
+                ? Integer.parseInt(args[1])
+                : FiatShamir.requiredRounds(graph, RoundScheduler.DEFAULT_SOUNDNESS_BITS);
+            Map<Integer, String> colouring = Graph.getSampleColouring();
+
+            System.out.println("Zero-Knowledge Proof - Non-Interactive Prover");
+            NonInteractiveProof proof = prove(graph, colouring, numRounds);
+            Files.write(Paths.get(args[0]), proof.toJSON().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote " + numRounds + "-round proof to " + args[0]);
+
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
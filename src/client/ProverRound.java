@@ -0,0 +1,131 @@
+package client;
+
+import common.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Everything the prover needs for one round: a freshly permuted colouring,
+ * one nonce per vertex and the resulting commitments.
+ * Nonces are either drawn one by one from SecureRandom, or derived on demand
+ * from a single per-round seed (see NonceDeriver).
+ */
+public class ProverRound {
+    private final Map<Integer, String> permutedColouring;
+    private final Map<Integer, String> nonces;
+    private final NonceDeriver nonceDeriver;
+    private final List<String> commitments;
+    private MerkleTree merkleTree;
+
+    private ProverRound(Map<Integer, String> permutedColouring, Map<Integer, String> nonces,
+                        NonceDeriver nonceDeriver, List<String> commitments) {
+        this.permutedColouring = permutedColouring;
+        this.nonces = nonces;
+        this.nonceDeriver = nonceDeriver;
+        this.commitments = commitments;
+    }
+
+    // Do the O(V) work for one round: permute, draw nonces and commit
+    public static ProverRound create(int numVertices, Map<Integer, String> colouring) {
+        return create(numVertices, colouring, false);
+    }
+
+    // seededNonces: one SecureRandom seed per round instead of one draw per vertex
+    public static ProverRound create(int numVertices, Map<Integer, String> colouring, boolean seededNonces) {
+        Map<String, String> permutation = generatePermutation(colouring);
+        Map<Integer, String> permutedColouring = applyPermutation(colouring, permutation);
+        if (seededNonces) {
+            NonceDeriver deriver = NonceDeriver.fresh();
+            List<String> commitments = createCommitments(numVertices, permutedColouring, deriver);
+            return new ProverRound(permutedColouring, null, deriver, commitments);
+        }
+        Map<Integer, String> nonces = generateNonces(numVertices);
+        List<String> commitments = createCommitments(numVertices, permutedColouring, nonces);
+        return new ProverRound(permutedColouring, nonces, null, commitments);
+    }
+
+    public List<String> getCommitments() {
+        return commitments;
+    }
+
+    public String getColour(int vertex) {
+        return permutedColouring.get(vertex);
+    }
+
+    public String getNonce(int vertex) {
+        return nonceDeriver != null ? nonceDeriver.deriveHex(vertex) : nonces.get(vertex);
+    }
+
+    // Built on first use, only needed when committing by Merkle root
+    public MerkleTree getMerkleTree() {
+        if (merkleTree == null) {
+            merkleTree = new MerkleTree(commitments);
+        }
+        return merkleTree;
+    }
+    
+    // Open the commitments of both endpoints of the challenged edge
+    public RevealMessage reveal(int v1, int v2, int round) {
+        return new RevealMessage(getColour(v1), getColour(v2), getNonce(v1), getNonce(v2), round);
+    }
+    
+    // Same as reveal(), plus the authentication paths up to the Merkle root
+    public RevealMessage revealWithPaths(int v1, int v2, int round) {
+        MerkleTree tree = getMerkleTree();
+        return new RevealMessage(getColour(v1), getColour(v2), getNonce(v1), getNonce(v2), round,
+                                 tree.getPath(v1), tree.getPath(v2));
+    }
+
+    // Generate a random colour permutation so that verifier can't figure out the actual colouring
+    private static Map<String, String> generatePermutation(Map<Integer, String> colouring) {
+        Set<String> colours = new HashSet<>(colouring.values());
+        return CryptoUtils.generateColourPermutation(colours);
+    }
+
+    // Apply permutation to the actual colouring
+    private static Map<Integer, String> applyPermutation(Map<Integer, String> colouring, Map<String, String> permutation) {
+        Map<Integer, String> permutedColouring = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : colouring.entrySet()) {
+            String originalColour = entry.getValue();
+            String permutedColour = permutation.get(originalColour);
+            permutedColouring.put(entry.getKey(), permutedColour);
+        }
+        return permutedColouring;
+    }
+
+    // Generate random nonces for all vertices
+    private static Map<Integer, String> generateNonces(int numVertices) {
+        Map<Integer, String> nonces = new HashMap<>();
+        for (int i = 0; i < numVertices; i++) {
+            nonces.put(i, CryptoUtils.generateNonce());
+        }
+        return nonces;
+    }
+
+    // Create commitments for the colouring using nonces
+    private static List<String> createCommitments(int numVertices, Map<Integer, String> colouring, Map<Integer, String> nonces) {
+        List<String> commitments = new ArrayList<>();
+        for (int i = 0; i < numVertices; i++) {
+            String colour = colouring.get(i);
+            String nonce = nonces.get(i);
+            String commitment = CryptoUtils.createCommitment(colour, nonce);
+            commitments.add(commitment);
+        }
+        return commitments;
+    }
+
+    // Seeded mode: derive each nonce straight into a scratch buffer and hash it there
+    private static List<String> createCommitments(int numVertices, Map<Integer, String> colouring, NonceDeriver deriver) {
+        Map<String, byte[]> colourBytes = new HashMap<>();
+        byte[] nonce = new byte[CryptoUtils.NONCE_BYTES];
+        byte[] digest = new byte[CryptoUtils.DIGEST_BYTES];
+        List<String> commitments = new ArrayList<>(numVertices);
+        for (int i = 0; i < numVertices; i++) {
+            byte[] colour = colourBytes.computeIfAbsent(colouring.get(i), c -> c.getBytes(StandardCharsets.UTF_8));
+            deriver.derive(i, nonce, 0);
+            CryptoUtils.createCommitment(colour, nonce, digest, 0);
+            commitments.add(CryptoUtils.bytesToHex(digest));
+        }
+        return commitments;
+    }
+}
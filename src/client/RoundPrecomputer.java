@@ -0,0 +1,107 @@
+package client;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background producer of ready-to-send prover rounds.
+ * Worker threads keep a bounded queue topped up with permuted colourings,
+ * nonces and commitments while the network exchange of the current round is
+ * in flight, so the O(V) hashing is off the round's critical path.
+ */
+public class RoundPrecomputer implements AutoCloseable {
+
+    private final int numVertices;
+    private final Map<Integer, String> colouring;
+    private final boolean buildMerkleTree;
+    private final boolean seededNonces;
+    private final BlockingQueue<ProverRound> ready;
+    private final ExecutorService workers;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public RoundPrecomputer(int numVertices, Map<Integer, String> colouring, int queueDepth, int threads, boolean buildMerkleTree) {
+        this(numVertices, colouring, queueDepth, threads, buildMerkleTree, false);
+    }
+
+    public RoundPrecomputer(int numVertices, Map<Integer, String> colouring, int queueDepth, int threads,
+                            boolean buildMerkleTree, boolean seededNonces) {
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("Queue depth must be at least 1");
+        }
+        this.numVertices = numVertices;
+        this.colouring = colouring;
+        this.buildMerkleTree = buildMerkleTree;
+        this.seededNonces = seededNonces;
+        this.ready = new ArrayBlockingQueue<>(queueDepth);
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "round-precompute");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::produce);
+        }
+    }
+
+    // Keep the queue full until closed; put() blocks while it is
+    private void produce() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                ready.put(createRound());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ProverRound createRound() {
+        ProverRound round = ProverRound.create(numVertices, colouring, seededNonces);
+        if (buildMerkleTree) {
+            round.getMerkleTree();
+        }
+        return round;
+    }
+
+    /**
+     * Take a precomputed round, or build one inline if the workers fell behind.
+     */
+    public ProverRound next() {
+        ProverRound round = ready.poll();
+        if (round != null) {
+            hits.increment();
+            return round;
+        }
+        misses.increment();
+        return createRound();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Rounds currently waiting in the queue
+    public int getAvailable() {
+        return ready.size();
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+        ready.clear();
+    }
+
+    @Override
+    public String toString() {
+        long h = getHits();
+        long m = getMisses();
+        long total = h + m;
+        return "Precomputed rounds: " + h + " hits, " + m + " misses" +
+               (total > 0 ? String.format(" (%.1f%% hit rate)", 100.0 * h / total) : "");
+    }
+}
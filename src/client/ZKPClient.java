@@ -3,6 +3,8 @@ package client;
 import common.*;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
 
 public class ZKPClient {
@@ -10,9 +12,15 @@ public class ZKPClient {
     private int serverPort;
     private Graph graph;
     private Map<Integer, String> actualColouring;
+    private WireFormat wireFormat = WireFormat.JSON;
+    private boolean merkleCommitments;
+    private boolean seededNonces;
+    private int precomputeDepth;
+    private String proverId;
+    private Path verdictTokenFile;
+    private RoundPrecomputer precomputer;
     private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
+    private MessageChannel channel;
     
     public ZKPClient(String serverHost, int serverPort, Graph graph, Map<Integer, String> colouring) {
         this.serverHost = serverHost;
@@ -25,44 +33,94 @@ public class ZKPClient {
         for (Map.Entry<Integer, String> entry : colouring.entrySet()) {
             graph.setColour(entry.getKey(), entry.getValue());
         }
-        if (!graph.isValidColouring()) {
-            throw new IllegalArgumentException("Invalid colouring provided!");
+        if (graph.getNumVertices() < ColouringValidator.PARALLEL_THRESHOLD) {
+            if (!graph.isValidColouring()) {
+                throw new IllegalArgumentException("Invalid colouring provided!");
+            }
+        } else {
+            // Large graphs: scan in parallel and say which edge is wrong
+            ValidationResult result = new ColouringValidator().validate(graph, colouring);
+            if (!result.isValid()) {
+                throw new IllegalArgumentException("Invalid colouring provided! " + result.getReason());
+            }
         }
     }
     
+    // choose the wire format, must be called before connect()
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+    
+    // commit to a Merkle root per round instead of one hash per vertex
+    public void setMerkleCommitments(boolean merkleCommitments) {
+        this.merkleCommitments = merkleCommitments;
+    }
+    
+    // derive each round's nonces from one random seed instead of one SecureRandom draw per vertex
+    public void setSeededNonces(boolean seededNonces) {
+        this.seededNonces = seededNonces;
+    }
+    
+    // prepare up to queueDepth rounds ahead on spare cores, 0 disables it
+    public void setPrecomputeDepth(int queueDepth) {
+        this.precomputeDepth = queueDepth;
+    }
+    
+    // send this id in the HELLO, so a verifier with a verdict cache can skip a recent proof
+    public void setProverId(String proverId) {
+        this.proverId = proverId;
+    }
+    
+    // keep the verifier's verdict token in this file: sent in the HELLO, replaced after each successful proof
+    public void setVerdictTokenFile(Path verdictTokenFile) {
+        this.verdictTokenFile = verdictTokenFile;
+    }
+    
+    public RoundPrecomputer getPrecomputer() {
+        return precomputer;
+    }
+    
     // connect to server
     public void connect() throws IOException {
         System.out.println("Connecting to server at " + serverHost + ":" + serverPort + "...");
         socket = new Socket(serverHost, serverPort);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(socket.getOutputStream(), true);
-        System.out.println("Connected to server!");
+        channel = MessageChannel.connect(socket, wireFormat);
+        System.out.println("Connected to server! (" + wireFormat + " wire format)");
     }
     
     // start the ZKP protocol
     public void runProtocol(int numRounds) throws IOException {
         System.out.println("\nStarting Zero-Knowledge Proof Protocol");
         System.out.println("Graph: " + graph.getNumVertices() + " vertices, " + 
-                           graph.getEdges().size() + " edges");
+                           graph.getEdgeIndex().size() + " edges");
         System.out.println("Rounds: " + numRounds);
+        sendHello();
         
         for (int round = 1; round <= numRounds; round++) {
             System.out.println("Round " + round + "/" + numRounds);
             
             // Step 1: Generate random permutation and send commitments
-            Map<String, String> colourPermutation = generatePermutation();
-            Map<Integer, String> permutedColouring = applyPermutation(colourPermutation);
-            Map<Integer, String> nonces = generateNonces();
-            List<String> commitments = createCommitments(permutedColouring, nonces);
+            ProverRound proverRound = nextRound();
             
-            CommitMessage commitMsg = new CommitMessage(commitments, round);
-            sendMessage(commitMsg);
-            System.out.println("   Sent commitments (hashed colours)");
+            if (merkleCommitments) {
+                MerkleTree tree = proverRound.getMerkleTree();
+                sendMessage(new MerkleCommitMessage(tree.getRoot(), tree.getNumLeaves(), round));
+                System.out.println("   Sent Merkle root of commitments");
+            } else {
+                CommitMessage commitMsg = new CommitMessage(proverRound.getCommitments(), round);
+                sendMessage(commitMsg);
+                System.out.println("   Sent commitments (hashed colours)");
+            }
             
             // Step 2: Receive challenge from server
-            String response = receiveMessage();
-            ProtocolMessage msg = ProtocolMessage.fromJSON(response);
+            ProtocolMessage msg = receiveMessage();
             
+            if (msg instanceof ResultMessage) {
+                // The verifier finished before our planned rounds ran out,
+                // e.g. its soundness target was reached or a reveal failed
+                printResult(msg);
+                return;
+            }
             if (!(msg instanceof ChallengeMessage)) {
                 throw new IOException("Expected CHALLENGE message");
             }
@@ -73,14 +131,11 @@ public class ZKPClient {
             System.out.println("   Challenge: Reveal colours of vertices " + v1 + " and " + v2);
             
             // Step 3: Send the revealed colours and nonces
-            String colour1 = permutedColouring.get(v1);
-            String colour2 = permutedColouring.get(v2);
-            String nonce1 = nonces.get(v1);
-            String nonce2 = nonces.get(v2);
-            
-            RevealMessage reveal = new RevealMessage(colour1, colour2, nonce1, nonce2, round);
+            RevealMessage reveal = merkleCommitments
+                ? proverRound.revealWithPaths(v1, v2, round)
+                : proverRound.reveal(v1, v2, round);
             sendMessage(reveal);
-            System.out.println("   Revealed: v" + v1 + "=" + colour1 + ", v" + v2 + "=" + colour2);
+            System.out.println("   Revealed: v" + v1 + "=" + reveal.getColour1() + ", v" + v2 + "=" + reveal.getColour2());
             System.out.println();
             
             // Small delay between rounds for readability/showcasing
@@ -92,9 +147,88 @@ public class ZKPClient {
         }
         
         // Receive final result
-        String resultJson = receiveMessage();
-        ProtocolMessage resultMsg = ProtocolMessage.fromJSON(resultJson);
+        printResult(receiveMessage());
+    }
+    
+    // run the protocol in batches of parallel rounds, one COMMIT/CHALLENGE/REVEAL exchange per batch
+    public void runBatchProtocol(int numRounds, int batchSize) throws IOException {
+        System.out.println("\nStarting Zero-Knowledge Proof Protocol (batch mode)");
+        System.out.println("Graph: " + graph.getNumVertices() + " vertices, " + 
+                           graph.getEdgeIndex().size() + " edges");
+        System.out.println("Rounds: " + numRounds + " in batches of " + batchSize);
+        sendHello();
+        
+        int firstRound = 1;
+        while (firstRound <= numRounds) {
+            int size = Math.min(batchSize, numRounds - firstRound + 1);
+            System.out.println("Rounds " + firstRound + "-" + (firstRound + size - 1));
+            
+            // Step 1: Independent permutation, nonces and commitments for every round in the batch
+            List<ProverRound> proverRounds = new ArrayList<>();
+            List<List<String>> commitmentSets = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                ProverRound proverRound = nextRound();
+                proverRounds.add(proverRound);
+                commitmentSets.add(proverRound.getCommitments());
+            }
+            sendMessage(new BatchCommitMessage(commitmentSets, firstRound));
+            System.out.println("   Sent " + size + " commitment sets");
+            
+            // Step 2: Receive all challenges at once (or an early result)
+            ProtocolMessage msg = receiveMessage();
+            if (msg instanceof ResultMessage) {
+                printResult(msg);
+                return;
+            }
+            if (!(msg instanceof BatchChallengeMessage)) {
+                throw new IOException("Expected BATCH_CHALLENGE message");
+            }
+            
+            List<int[]> edges = ((BatchChallengeMessage) msg).getEdges();
+            if (edges.size() != size) {
+                throw new IOException("Expected " + size + " challenges, got " + edges.size());
+            }
+            
+            // Step 3: Reveal the challenged edge of each round
+            List<RevealMessage> reveals = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int[] edge = edges.get(i);
+                reveals.add(proverRounds.get(i).reveal(edge[0], edge[1], firstRound + i));
+            }
+            sendMessage(new BatchRevealMessage(reveals, firstRound));
+            System.out.println("   Revealed " + size + " edges");
+            
+            firstRound += size;
+        }
         
+        printResult(receiveMessage());
+    }
+    
+    // Name our graph, and ourselves if we have an id. No reply is awaited: the verifier answers
+    // the first commitment with a challenge, or with its result for an unknown graph or a cache hit
+    private void sendHello() throws IOException {
+        String token = verdictTokenFile != null && Files.exists(verdictTokenFile)
+            ? new String(Files.readAllBytes(verdictTokenFile), StandardCharsets.UTF_8).trim()
+            : null;
+        sendMessage(new HelloMessage(proverId, graph.fingerprint(), token));
+        System.out.println("Sent HELLO" + (proverId != null ? " as " + proverId : "") +
+                           (token != null ? " with a verdict token" : ""));
+    }
+    
+    // Take the next round from the precompute queue, or build it inline
+    private ProverRound nextRound() {
+        if (precomputeDepth > 0 && precomputer == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            precomputer = new RoundPrecomputer(graph.getNumVertices(), actualColouring, precomputeDepth, threads,
+                                               merkleCommitments, seededNonces);
+        }
+        if (precomputer != null) {
+            return precomputer.next();
+        }
+        return ProverRound.create(graph.getNumVertices(), actualColouring, seededNonces);
+    }
+    
+    private void printResult(ProtocolMessage resultMsg) throws IOException {
         if (resultMsg instanceof ResultMessage) {
             ResultMessage result = (ResultMessage) resultMsg;
             System.out.println();
@@ -106,59 +240,37 @@ public class ZKPClient {
                 System.out.println("Message: " + result.getMessage());
             }
             System.out.println("Total rounds completed: " + result.getTotalRounds());
+            if (precomputer != null) {
+                System.out.println(precomputer);
+            }
+            if (!result.getRoundVerdicts().isEmpty()) {
+                int passed = Collections.frequency(result.getRoundVerdicts(), Boolean.TRUE);
+                System.out.println("Round verdicts: " + passed + "/" + result.getRoundVerdicts().size() + " passed");
+            }
+            if (result.getVerdictToken() != null && verdictTokenFile != null) {
+                Files.write(verdictTokenFile, result.getVerdictToken().getBytes(StandardCharsets.UTF_8));
+                System.out.println("Verdict token saved to " + verdictTokenFile);
+            }
         }
     }
     
-    // Generate a random colour permutation so that verifier can't figure out the actual colouring
-    private Map<String, String> generatePermutation() {
-        Set<String> colours = new HashSet<>(actualColouring.values());
-        return CryptoUtils.generateColourPermutation(colours);
-    }
-    
-    // Apply permutation to the actual colouring
-    private Map<Integer, String> applyPermutation(Map<String, String> permutation) {
-        Map<Integer, String> permutedColouring = new HashMap<>();
-        for (Map.Entry<Integer, String> entry : actualColouring.entrySet()) {
-            String originalColour = entry.getValue();
-            String permutedColour = permutation.get(originalColour);
-            permutedColouring.put(entry.getKey(), permutedColour);
-        }
-        return permutedColouring;
-    }
-    
-    // Generate random nonces for all vertices
-    private Map<Integer, String> generateNonces() {
-        Map<Integer, String> nonces = new HashMap<>();
-        for (int i = 0; i < graph.getNumVertices(); i++) {
-            nonces.put(i, CryptoUtils.generateNonce());
-        }
-        return nonces;
+    private void sendMessage(ProtocolMessage message) throws IOException {
+        channel.send(message);
     }
     
-    // Create commitments for the colouring using nonces
-    private List<String> createCommitments(Map<Integer, String> colouring, Map<Integer, String> nonces) {
-        List<String> commitments = new ArrayList<>();
-        for (int i = 0; i < graph.getNumVertices(); i++) {
-            String colour = colouring.get(i);
-            String nonce = nonces.get(i);
-            String commitment = CryptoUtils.createCommitment(colour, nonce);
-            commitments.add(commitment);
+    private ProtocolMessage receiveMessage() throws IOException {
+        ProtocolMessage msg = channel.receive();
+        if (msg == null) {
+            throw new EOFException("Server closed the connection");
         }
-        return commitments;
-    }
-    
-    private void sendMessage(ProtocolMessage message) {
-        out.println(message.toJSON());
-    }
-    
-    private String receiveMessage() throws IOException {
-        return in.readLine();
+        return msg;
     }
     
     public void close() {
+        if (precomputer != null) {
+            precomputer.close();
+        }
         try {
-            if (in != null) in.close();
-            if (out != null) out.close();
             if (socket != null) socket.close();
             System.out.println("\nDisconnected from server");
         } catch (IOException e) {
@@ -166,6 +278,15 @@ public class ZKPClient {
         }
     }
     
+    // value following a command line flag, or the default if there is none
+    static int intOption(String[] args, String flag, int defaultValue) {
+        int index = Arrays.asList(args).indexOf(flag);
+        if (index >= 0 && index + 1 < args.length && args[index + 1].matches("\\d+")) {
+            return Integer.parseInt(args[index + 1]);
+        }
+        return defaultValue;
+    }
+    
     public static void main(String[] args) {
         try {
             // Create sample graph
@@ -178,10 +299,45 @@ public class ZKPClient {
             
             // Create client
             ZKPClient client = new ZKPClient("localhost", 8888, graph, colouring);
+            if (Arrays.asList(args).contains("--binary")) {
+                client.setWireFormat(WireFormat.BINARY);
+            }
+            if (Arrays.asList(args).contains("--merkle")) {
+                client.setMerkleCommitments(true);
+            }
+            if (Arrays.asList(args).contains("--seeded-nonces")) {
+                client.setSeededNonces(true);
+            }
+            int proverIdFlag = Arrays.asList(args).indexOf("--prover-id");
+            if (proverIdFlag >= 0 && proverIdFlag + 1 < args.length) {
+                client.setProverId(args[proverIdFlag + 1]);
+            }
+            int tokenFlag = Arrays.asList(args).indexOf("--verdict-token");
+            if (tokenFlag >= 0 && tokenFlag + 1 < args.length) {
+                client.setVerdictTokenFile(Paths.get(args[tokenFlag + 1]));
+            }
+            if (Arrays.asList(args).contains("--precompute")) {
+                client.setPrecomputeDepth(intOption(args, "--precompute", 8));
+            }
+            
+            // Rounds: --rounds N (100 by default), or as many as --soundness BITS needs
+            // for a 2^-BITS soundness error on this graph; must match the server
+            int numRounds = intOption(args, "--rounds", 100);
+            int soundnessFlag = Arrays.asList(args).indexOf("--soundness");
+            if (soundnessFlag >= 0 && soundnessFlag + 1 < args.length) {
+                RoundScheduler scheduler = RoundScheduler.forGraph(graph, Double.parseDouble(args[soundnessFlag + 1]));
+                numRounds = scheduler.getRequiredRounds();
+                System.out.println("Round schedule: " + scheduler);
+            }
             
             // Connect and run protocol
             client.connect();
-            client.runProtocol(100);  // 100 rounds
+            if (Arrays.asList(args).contains("--batch")) {
+                // All rounds in batches, no per-round round trip
+                client.runBatchProtocol(numRounds, intOption(args, "--batch", numRounds));
+            } else {
+                client.runProtocol(numRounds);
+            }
             
             // Close connection
             client.close();
@@ -22,21 +22,27 @@ public class ZKPClientFailure1 {
         this.actualColouring = new HashMap<>(colouring);
         
         // Select a random edge and make both vertices the same colour
-        List<int[]> edges = graph.getEdges();
-        Random random = new Random();
-        this.invalidEdge = edges.get(random.nextInt(edges.size()));
+        this.invalidEdge = forceSameColour(graph, actualColouring, new Random());
         
         int v1 = invalidEdge[0];
         int v2 = invalidEdge[1];
         
         System.out.println("FAILURE CASE 1: Creating invalid colouring");
         System.out.println("   Forcing edge (" + v1 + ", " + v2 + ") to have same colour");
-        
-        // Make both vertices the same colour
-        String sameColour = actualColouring.get(v1);
-        actualColouring.put(v2, sameColour);
-        
-        System.out.println("   Both vertices now: " + sameColour);
+        System.out.println("   Both vertices now: " + actualColouring.get(v1));
+    }
+    
+    /**
+     * Give both endpoints of a random edge the same colour, in place.
+     * Returns the edge that was broken. Also used by the load tester.
+     */
+    public static int[] forceSameColour(GraphView graph, Map<Integer, String> colouring, Random random) {
+        EdgeIndex edges = graph.getEdgeIndex();
+        int edge = random.nextInt(edges.size());
+        int v1 = edges.from(edge);
+        int v2 = edges.to(edge);
+        colouring.put(v2, colouring.get(v1));
+        return new int[]{v1, v2};
     }
     
     // Connect to the server
@@ -52,7 +58,7 @@ public class ZKPClientFailure1 {
     public void runProtocol(int numRounds) throws IOException {
         System.out.println("\nStarting Zero-Knowledge Proof Protocol (FAILURE CASE 1)");
         System.out.println("Graph: " + graph.getNumVertices() + " vertices, " + 
-                           graph.getEdges().size() + " edges");
+                           graph.getEdgeIndex().size() + " edges");
         System.out.println("Invalid edge: (" + invalidEdge[0] + ", " + invalidEdge[1] + ")");
         System.out.println("Rounds: " + numRounds);
         
@@ -29,6 +29,23 @@ public class ZKPClientFailure2 {
         Set<String> usedColours = new HashSet<>(actualColouring.values());
         System.out.println("   Original colours used: " + usedColours);
         
+        // Find a vertex and change its colour to the 4th colour
+        // Pick vertex 0 for simplicity
+        int vertexToChange = 0;
+        String oldColour = actualColouring.get(vertexToChange);
+        String fourthColour = addFourthColour(actualColouring, vertexToChange);
+        
+        System.out.println("   Changed vertex " + vertexToChange + " from " + oldColour + " to " + fourthColour);
+        System.out.println("   Now using colours: " + new HashSet<>(actualColouring.values()));
+    }
+    
+    /**
+     * Recolour one vertex with a colour the colouring does not use yet, in place.
+     * Returns the new colour. Also used by the load tester.
+     */
+    public static String addFourthColour(Map<Integer, String> colouring, int vertex) {
+        Set<String> usedColours = new HashSet<>(colouring.values());
+        
         // Define a 4th colour that's NOT in the current colouring
         String fourthColour = "YELLOW";
         if (usedColours.contains("YELLOW")) {
@@ -41,14 +58,8 @@ public class ZKPClientFailure2 {
             fourthColour = "CYAN";
         }
         
-        // Find a vertex and change its colour to the 4th colour
-        // Pick vertex 0 for simplicity
-        int vertexToChange = 0;
-        String oldColour = actualColouring.get(vertexToChange);
-        actualColouring.put(vertexToChange, fourthColour);
-        
-        System.out.println("   Changed vertex " + vertexToChange + " from " + oldColour + " to " + fourthColour);
-        System.out.println("   Now using colours: " + new HashSet<>(actualColouring.values()));
+        colouring.put(vertex, fourthColour);
+        return fourthColour;
     }
     
     /**
@@ -69,7 +80,7 @@ public class ZKPClientFailure2 {
         Set<String> actualColours = new HashSet<>(actualColouring.values());
         System.out.println("\nStarting Zero-Knowledge Proof Protocol (FAILURE CASE 2)");
         System.out.println("Graph: " + graph.getNumVertices() + " vertices, " + 
-                           graph.getEdges().size() + " edges");
+                           graph.getEdgeIndex().size() + " edges");
         System.out.println("Colours used: " + actualColours.size() + " " + actualColours);
         System.out.println("Rounds: " + numRounds);
         
@@ -0,0 +1,47 @@
+package common;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.*;
+
+public class BatchChallengeMessage extends ProtocolMessage {
+    private List<int[]> edges;  // Challenged edge for each round of the batch
+    private int firstRound;
+    
+    public BatchChallengeMessage(List<int[]> edges, int firstRound) {
+        super(MessageType.BATCH_CHALLENGE);
+        this.edges = edges;
+        this.firstRound = firstRound;
+    }
+    
+    public List<int[]> getEdges() {
+        return edges;
+    }
+    
+    public int getFirstRound() {
+        return firstRound;
+    }
+    
+    @Override
+    public String toJSON() {
+        JSONObject obj = header();
+        obj.put("firstRound", firstRound);
+        JSONArray edgesArray = new JSONArray();
+        for (int[] edge : edges) {
+            edgesArray.put(new JSONArray().put(edge[0]).put(edge[1]));
+        }
+        obj.put("edges", edgesArray);
+        return obj.toString();
+    }
+    
+    public static BatchChallengeMessage fromJSONObject(JSONObject obj) {
+        int firstRound = obj.getInt("firstRound");
+        JSONArray edgesArray = obj.getJSONArray("edges");
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 0; i < edgesArray.length(); i++) {
+            JSONArray edge = edgesArray.getJSONArray(i);
+            edges.add(new int[]{edge.getInt(0), edge.getInt(1)});
+        }
+        return new BatchChallengeMessage(edges, firstRound);
+    }
+}
@@ -0,0 +1,100 @@
+package common;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.*;
+
+public class BatchCommitMessage extends ProtocolMessage {
+    private List<List<String>> commitmentSets;  // One full set of vertex commitments per parallel round
+    private List<CommitmentBuffer> packedSets;  // The same as raw digests, when decoded from a binary frame
+    private int firstRound;
+    
+    public BatchCommitMessage(List<List<String>> commitmentSets, int firstRound) {
+        super(MessageType.BATCH_COMMIT);
+        this.commitmentSets = commitmentSets;
+        this.firstRound = firstRound;
+    }
+    
+    public static BatchCommitMessage packed(List<CommitmentBuffer> packedSets, int firstRound) {
+        BatchCommitMessage message = new BatchCommitMessage(null, firstRound);
+        message.packedSets = packedSets;
+        return message;
+    }
+    
+    public List<List<String>> getCommitmentSets() {
+        if (commitmentSets == null) {
+            commitmentSets = new ArrayList<>();
+            for (CommitmentBuffer packed : packedSets) {
+                commitmentSets.add(packed.toHexList());
+            }
+        }
+        return commitmentSets;
+    }
+    
+    /**
+     * One packed buffer per round, packing the hex form if needed.
+     * The caller owns the buffers and releases them when the batch is over.
+     */
+    public List<CommitmentBuffer> toCommitmentBuffers() {
+        if (packedSets == null) {
+            List<CommitmentBuffer> sets = new ArrayList<>();
+            try {
+                for (List<String> commitments : commitmentSets) {
+                    sets.add(CommitmentBuffer.fromHex(commitments));
+                }
+            } catch (RuntimeException e) {
+                sets.forEach(CommitmentBuffer::release);
+                throw e;
+            }
+            packedSets = sets;
+        }
+        return packedSets;
+    }
+    
+    @Override
+    public void release() {
+        if (packedSets != null) {
+            packedSets.forEach(CommitmentBuffer::release);
+        }
+    }
+    
+    // Packed digests as decoded, or null when the message was built from hex
+    List<CommitmentBuffer> getPackedSets() {
+        return packedSets;
+    }
+    
+    public int getFirstRound() {
+        return firstRound;
+    }
+    
+    public int getBatchSize() {
+        return packedSets != null ? packedSets.size() : commitmentSets.size();
+    }
+    
+    @Override
+    public String toJSON() {
+        JSONObject obj = header();
+        obj.put("firstRound", firstRound);
+        JSONArray sets = new JSONArray();
+        for (List<String> commitments : getCommitmentSets()) {
+            sets.put(new JSONArray(commitments));
+        }
+        obj.put("commitmentSets", sets);
+        return obj.toString();
+    }
+    
+    public static BatchCommitMessage fromJSONObject(JSONObject obj) {
+        int firstRound = obj.getInt("firstRound");
+        JSONArray sets = obj.getJSONArray("commitmentSets");
+        List<List<String>> commitmentSets = new ArrayList<>();
+        for (int i = 0; i < sets.length(); i++) {
+            JSONArray commitsArray = sets.getJSONArray(i);
+            List<String> commitments = new ArrayList<>();
+            for (int j = 0; j < commitsArray.length(); j++) {
+                commitments.add(commitsArray.getString(j));
+            }
+            commitmentSets.add(commitments);
+        }
+        return new BatchCommitMessage(commitmentSets, firstRound);
+    }
+}
@@ -0,0 +1,46 @@
+package common;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.*;
+
+public class BatchRevealMessage extends ProtocolMessage {
+    private List<RevealMessage> reveals;  // Opened edge for each round of the batch
+    private int firstRound;
+    
+    public BatchRevealMessage(List<RevealMessage> reveals, int firstRound) {
+        super(MessageType.BATCH_REVEAL);
+        this.reveals = reveals;
+        this.firstRound = firstRound;
+    }
+    
+    public List<RevealMessage> getReveals() {
+        return reveals;
+    }
+    
+    public int getFirstRound() {
+        return firstRound;
+    }
+    
+    @Override
+    public String toJSON() {
+        JSONObject obj = header();
+        obj.put("firstRound", firstRound);
+        JSONArray revealsArray = new JSONArray();
+        for (RevealMessage reveal : reveals) {
+            revealsArray.put(reveal.toJSONObject());
+        }
+        obj.put("reveals", revealsArray);
+        return obj.toString();
+    }
+    
+    public static BatchRevealMessage fromJSONObject(JSONObject obj) {
+        int firstRound = obj.getInt("firstRound");
+        JSONArray revealsArray = obj.getJSONArray("reveals");
+        List<RevealMessage> reveals = new ArrayList<>();
+        for (int i = 0; i < revealsArray.length(); i++) {
+            reveals.add(RevealMessage.fromJSONObject(revealsArray.getJSONObject(i)));
+        }
+        return new BatchRevealMessage(reveals, firstRound);
+    }
+}
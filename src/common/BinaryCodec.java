@@ -0,0 +1,396 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding of protocol messages.
+ * A frame is a 4-byte big-endian payload length followed by the payload.
+ * The payload starts with the message type ordinal, with the high bit set
+ * when an 8-byte session id follows (multiplexed connections only).
+ * Digests travel as raw 32-byte values and nonces as raw bytes instead of hex text;
+ * decoded commitments land directly in pooled off-heap CommitmentBuffers.
+ */
+public class BinaryCodec {
+
+    public static final int DIGEST_BYTES = CryptoUtils.DIGEST_BYTES;
+
+    // Set in the type byte when an 8-byte session id follows it
+    static final int SESSION_FLAG = 0x80;
+
+    // Encode a message into a complete length-prefixed frame
+    public static byte[] encode(ProtocolMessage message) {
+        ByteBuffer payload;
+        switch (message.getType()) {
+            case COMMIT: {
+                CommitMessage commit = (CommitMessage) message;
+                int count = commit.getCount();
+                payload = allocate(message, 4 + 4 + count * DIGEST_BYTES);
+                payload.putInt(commit.getRound());
+                payload.putInt(count);
+                if (commit.getPacked() != null) {
+                    commit.getPacked().writeTo(payload);
+                } else {
+                    for (String commitment : commit.getCommitments()) {
+                        putDigest(payload, commitment);
+                    }
+                }
+                break;
+            }
+            case CHALLENGE: {
+                ChallengeMessage challenge = (ChallengeMessage) message;
+                payload = allocate(message, 4 + 4 + 4);
+                payload.putInt(challenge.getRound());
+                payload.putInt(challenge.getVertex1());
+                payload.putInt(challenge.getVertex2());
+                break;
+            }
+            case REVEAL: {
+                RevealFields reveal = new RevealFields((RevealMessage) message);
+                payload = allocate(message, reveal.size());
+                reveal.put(payload);
+                break;
+            }
+            case RESULT: {
+                ResultMessage result = (ResultMessage) message;
+                byte[] text = result.getMessage().getBytes(StandardCharsets.UTF_8);
+                List<Boolean> verdicts = result.getRoundVerdicts();
+                // An empty token stands for none
+                byte[] token = result.getVerdictToken() != null
+                    ? result.getVerdictToken().getBytes(StandardCharsets.UTF_8)
+                    : new byte[0];
+                payload = allocate(message, 1 + 4 + 2 + text.length + 4 + verdicts.size() + 2 + token.length);
+                payload.put((byte) (result.isVerified() ? 1 : 0));
+                payload.putInt(result.getTotalRounds());
+                putShortBytes(payload, text);
+                payload.putInt(verdicts.size());
+                for (boolean verdict : verdicts) {
+                    payload.put((byte) (verdict ? 1 : 0));
+                }
+                putShortBytes(payload, token);
+                break;
+            }
+            case BATCH_COMMIT: {
+                BatchCommitMessage batch = (BatchCommitMessage) message;
+                if (batch.getPackedSets() != null) {
+                    List<CommitmentBuffer> sets = batch.getPackedSets();
+                    int perSet = sets.isEmpty() ? 0 : sets.get(0).size();
+                    payload = allocate(message, 4 + 4 + 4 + sets.size() * perSet * DIGEST_BYTES);
+                    payload.putInt(batch.getFirstRound());
+                    payload.putInt(sets.size());
+                    payload.putInt(perSet);
+                    for (CommitmentBuffer commitments : sets) {
+                        if (commitments.size() != perSet) {
+                            throw new IllegalArgumentException("Commitment sets in a batch must have equal size");
+                        }
+                        commitments.writeTo(payload);
+                    }
+                    break;
+                }
+                List<List<String>> sets = batch.getCommitmentSets();
+                int perSet = sets.isEmpty() ? 0 : sets.get(0).size();
+                payload = allocate(message, 4 + 4 + 4 + sets.size() * perSet * DIGEST_BYTES);
+                payload.putInt(batch.getFirstRound());
+                payload.putInt(sets.size());
+                payload.putInt(perSet);
+                for (List<String> commitments : sets) {
+                    if (commitments.size() != perSet) {
+                        throw new IllegalArgumentException("Commitment sets in a batch must have equal size");
+                    }
+                    for (String commitment : commitments) {
+                        putDigest(payload, commitment);
+                    }
+                }
+                break;
+            }
+            case BATCH_CHALLENGE: {
+                BatchChallengeMessage batch = (BatchChallengeMessage) message;
+                List<int[]> edges = batch.getEdges();
+                payload = allocate(message, 4 + 4 + edges.size() * 8);
+                payload.putInt(batch.getFirstRound());
+                payload.putInt(edges.size());
+                for (int[] edge : edges) {
+                    payload.putInt(edge[0]);
+                    payload.putInt(edge[1]);
+                }
+                break;
+            }
+            case MERKLE_COMMIT: {
+                MerkleCommitMessage commit = (MerkleCommitMessage) message;
+                payload = allocate(message, 4 + 4 + DIGEST_BYTES);
+                payload.putInt(commit.getRound());
+                payload.putInt(commit.getNumLeaves());
+                putDigest(payload, commit.getRoot());
+                break;
+            }
+            case BATCH_REVEAL: {
+                BatchRevealMessage batch = (BatchRevealMessage) message;
+                List<RevealFields> reveals = new ArrayList<>();
+                int size = 4 + 4;
+                for (RevealMessage reveal : batch.getReveals()) {
+                    RevealFields fields = new RevealFields(reveal);
+                    reveals.add(fields);
+                    size += fields.size();
+                }
+                payload = allocate(message, size);
+                payload.putInt(batch.getFirstRound());
+                payload.putInt(reveals.size());
+                for (RevealFields fields : reveals) {
+                    fields.put(payload);
+                }
+                break;
+            }
+            case HELLO: {
+                HelloMessage hello = (HelloMessage) message;
+                // An empty id stands for an anonymous prover
+                byte[] proverId = hello.getProverId() != null
+                    ? hello.getProverId().getBytes(StandardCharsets.UTF_8)
+                    : new byte[0];
+                byte[] fingerprint = hello.getFingerprint().getBytes(StandardCharsets.UTF_8);
+                byte[] token = hello.getVerdictToken() != null
+                    ? hello.getVerdictToken().getBytes(StandardCharsets.UTF_8)
+                    : new byte[0];
+                payload = allocate(message, 2 + proverId.length + 2 + fingerprint.length + 2 + token.length);
+                putShortBytes(payload, proverId);
+                putShortBytes(payload, fingerprint);
+                putShortBytes(payload, token);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown message type: " + message.getType());
+        }
+        return payload.array();
+    }
+
+    // Decode one frame payload (without the length prefix)
+    public static ProtocolMessage decode(ByteBuffer payload) {
+        int header = payload.get() & 0xFF;
+        long sessionId = (header & SESSION_FLAG) != 0 ? payload.getLong() : 0;
+        int ordinal = header & ~SESSION_FLAG;
+        ProtocolMessage.MessageType[] types = ProtocolMessage.MessageType.values();
+        if (ordinal >= types.length) {
+            throw new IllegalArgumentException("Unknown message type: " + ordinal);
+        }
+
+        ProtocolMessage message = decodeBody(types[ordinal], payload);
+        message.setSessionId(sessionId);
+        return message;
+    }
+
+    private static ProtocolMessage decodeBody(ProtocolMessage.MessageType type, ByteBuffer payload) {
+        switch (type) {
+            case COMMIT: {
+                int round = payload.getInt();
+                int count = payload.getInt();
+                if (count < 0 || count > payload.remaining() / DIGEST_BYTES) {
+                    throw new IllegalArgumentException("Invalid commitment count: " + count);
+                }
+                // Straight into off-heap storage, no hex strings on the way
+                CommitmentBuffer commitments = CommitmentBuffer.acquire(count);
+                commitments.readFrom(payload);
+                return new CommitMessage(commitments, round);
+            }
+            case CHALLENGE: {
+                int round = payload.getInt();
+                int v1 = payload.getInt();
+                int v2 = payload.getInt();
+                return new ChallengeMessage(v1, v2, round);
+            }
+            case REVEAL:
+                return getReveal(payload);
+            case RESULT: {
+                boolean verified = payload.get() != 0;
+                int totalRounds = payload.getInt();
+                String message = new String(getShortBytes(payload), StandardCharsets.UTF_8);
+                int count = payload.getInt();
+                if (count < 0 || count > payload.remaining()) {
+                    throw new IllegalArgumentException("Invalid verdict count: " + count);
+                }
+                List<Boolean> verdicts = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    verdicts.add(payload.get() != 0);
+                }
+                ResultMessage result = new ResultMessage(verified, message, totalRounds, verdicts);
+                // Peers from before verdict tokens end the frame here
+                String token = payload.hasRemaining() ? new String(getShortBytes(payload), StandardCharsets.UTF_8) : "";
+                result.setVerdictToken(token.isEmpty() ? null : token);
+                return result;
+            }
+            case BATCH_COMMIT: {
+                int firstRound = payload.getInt();
+                int sets = payload.getInt();
+                int perSet = payload.getInt();
+                if (sets < 0 || perSet < 0 || (long) sets * perSet > payload.remaining() / DIGEST_BYTES) {
+                    throw new IllegalArgumentException("Invalid batch commitment size");
+                }
+                List<CommitmentBuffer> commitmentSets = new ArrayList<>(sets);
+                for (int i = 0; i < sets; i++) {
+                    CommitmentBuffer commitments = CommitmentBuffer.acquire(perSet);
+                    commitments.readFrom(payload);
+                    commitmentSets.add(commitments);
+                }
+                return BatchCommitMessage.packed(commitmentSets, firstRound);
+            }
+            case BATCH_CHALLENGE: {
+                int firstRound = payload.getInt();
+                int count = payload.getInt();
+                if (count < 0 || count > payload.remaining() / 8) {
+                    throw new IllegalArgumentException("Invalid challenge count: " + count);
+                }
+                List<int[]> edges = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    edges.add(new int[]{payload.getInt(), payload.getInt()});
+                }
+                return new BatchChallengeMessage(edges, firstRound);
+            }
+            case MERKLE_COMMIT: {
+                int round = payload.getInt();
+                int numLeaves = payload.getInt();
+                byte[] root = new byte[DIGEST_BYTES];
+                payload.get(root);
+                return new MerkleCommitMessage(CryptoUtils.bytesToHex(root), numLeaves, round);
+            }
+            case BATCH_REVEAL: {
+                int firstRound = payload.getInt();
+                int count = payload.getInt();
+                if (count < 0 || count > payload.remaining()) {
+                    throw new IllegalArgumentException("Invalid reveal count: " + count);
+                }
+                List<RevealMessage> reveals = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    reveals.add(getReveal(payload));
+                }
+                return new BatchRevealMessage(reveals, firstRound);
+            }
+            case HELLO: {
+                String proverId = new String(getShortBytes(payload), StandardCharsets.UTF_8);
+                String fingerprint = new String(getShortBytes(payload), StandardCharsets.UTF_8);
+                String token = payload.hasRemaining() ? new String(getShortBytes(payload), StandardCharsets.UTF_8) : "";
+                return new HelloMessage(proverId.isEmpty() ? null : proverId, fingerprint, token.isEmpty() ? null : token);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown message type: " + type);
+        }
+    }
+
+    private static RevealMessage getReveal(ByteBuffer payload) {
+        int round = payload.getInt();
+        String c1 = new String(getShortBytes(payload), StandardCharsets.UTF_8);
+        String c2 = new String(getShortBytes(payload), StandardCharsets.UTF_8);
+        String n1 = CryptoUtils.bytesToHex(getTinyBytes(payload));
+        String n2 = CryptoUtils.bytesToHex(getTinyBytes(payload));
+        List<String> path1 = getPath(payload);
+        List<String> path2 = getPath(payload);
+        return new RevealMessage(c1, c2, n1, n2, round, path1, path2);
+    }
+
+    private static List<String> getPath(ByteBuffer payload) {
+        int length = payload.get() & 0xFF;
+        List<String> path = new ArrayList<>(length);
+        byte[] digest = new byte[DIGEST_BYTES];
+        for (int i = 0; i < length; i++) {
+            payload.get(digest);
+            path.add(CryptoUtils.bytesToHex(digest));
+        }
+        return path;
+    }
+
+    // Encoded fields of one reveal, shared by REVEAL and BATCH_REVEAL
+    private static class RevealFields {
+        final int round;
+        final byte[] colour1;
+        final byte[] colour2;
+        final byte[] nonce1;
+        final byte[] nonce2;
+        final List<String> path1;
+        final List<String> path2;
+
+        RevealFields(RevealMessage reveal) {
+            round = reveal.getRound();
+            colour1 = reveal.getColour1().getBytes(StandardCharsets.UTF_8);
+            colour2 = reveal.getColour2().getBytes(StandardCharsets.UTF_8);
+            nonce1 = CryptoUtils.hexToBytes(reveal.getNonce1());
+            nonce2 = CryptoUtils.hexToBytes(reveal.getNonce2());
+            path1 = reveal.getPath1();
+            path2 = reveal.getPath2();
+            if (path1.size() > 0xFF || path2.size() > 0xFF) {
+                throw new IllegalArgumentException("Merkle path too long for binary frame");
+            }
+        }
+
+        int size() {
+            return 4 + 2 + colour1.length + 2 + colour2.length + 1 + nonce1.length + 1 + nonce2.length
+                + 1 + path1.size() * DIGEST_BYTES + 1 + path2.size() * DIGEST_BYTES;
+        }
+
+        void put(ByteBuffer buffer) {
+            buffer.putInt(round);
+            putShortBytes(buffer, colour1);
+            putShortBytes(buffer, colour2);
+            putTinyBytes(buffer, nonce1);
+            putTinyBytes(buffer, nonce2);
+            putPath(buffer, path1);
+            putPath(buffer, path2);
+        }
+
+        private static void putPath(ByteBuffer buffer, List<String> path) {
+            buffer.put((byte) path.size());
+            for (String digest : path) {
+                putDigest(buffer, digest);
+            }
+        }
+    }
+
+    // Frame buffer with the length prefix and message header already written;
+    // bodyBytes excludes the header
+    private static ByteBuffer allocate(ProtocolMessage message, int bodyBytes) {
+        long sessionId = message.getSessionId();
+        int headerBytes = sessionId != 0 ? 1 + 8 : 1;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + headerBytes + bodyBytes);
+        buffer.putInt(headerBytes + bodyBytes);
+        if (sessionId != 0) {
+            buffer.put((byte) (message.getType().ordinal() | SESSION_FLAG));
+            buffer.putLong(sessionId);
+        } else {
+            buffer.put((byte) message.getType().ordinal());
+        }
+        return buffer;
+    }
+
+    private static void putDigest(ByteBuffer buffer, String hex) {
+        byte[] digest = CryptoUtils.hexToBytes(hex);
+        if (digest.length != DIGEST_BYTES) {
+            throw new IllegalArgumentException("Commitment is not a SHA-256 digest");
+        }
+        buffer.put(digest);
+    }
+
+    private static void putShortBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Field too long for binary frame");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] getShortBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void putTinyBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes.length > 0xFF) {
+            throw new IllegalArgumentException("Field too long for binary frame");
+        }
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static byte[] getTinyBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -28,8 +28,7 @@ public class ChallengeMessage extends ProtocolMessage {
     
     @Override
     public String toJSON() {
-        JSONObject obj = new JSONObject();
-        obj.put("type", type.name());
+        JSONObject obj = header();
         obj.put("round", round);
         obj.put("vertex1", vertex1);
         obj.put("vertex2", vertex2);
@@ -0,0 +1,149 @@
+package common;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks a colouring with the vertex range split across a ForkJoinPool.
+ * Colours are first mapped to small ids so the edge scan compares ints,
+ * and the first worker to find a monochrome edge publishes it, which stops
+ * every other worker at its next vertex. With several workers the reported
+ * edge is whichever was found first, not necessarily the lowest-numbered.
+ *
+ * Graph.isValidColouring() remains the simpler choice below PARALLEL_THRESHOLD.
+ */
+public class ColouringValidator {
+
+    // Below this many vertices the sequential check is cheaper than forking
+    public static final int PARALLEL_THRESHOLD = 10_000;
+
+    // Vertices scanned by one leaf task
+    private static final int CHUNK_VERTICES = 4096;
+
+    private final ForkJoinPool pool;
+
+    public ColouringValidator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ColouringValidator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ValidationResult validate(Graph graph, Map<Integer, String> colouring) {
+        int n = graph.getNumVertices();
+        int[] colours = new int[n];
+        Arrays.fill(colours, CompactGraph.NO_COLOUR);
+        Map<String, Integer> ids = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : colouring.entrySet()) {
+            int vertex = entry.getKey();
+            if (vertex < 0 || vertex >= n) {
+                return ValidationResult.invalid("Colour given for unknown vertex " + vertex, ids.size());
+            }
+            if (entry.getValue() == null) {
+                continue;
+            }
+            colours[vertex] = ids.computeIfAbsent(entry.getValue(), c -> ids.size());
+        }
+        return validate(graph, colours, ids.size());
+    }
+
+    public ValidationResult validate(CompactGraph graph) {
+        int n = graph.getNumVertices();
+        int[] colours = new int[n];
+        for (int v = 0; v < n; v++) {
+            colours[v] = graph.colourId(v);
+        }
+        int used = 0;
+        boolean[] seen = new boolean[graph.getPalette().size()];
+        for (int colour : colours) {
+            if (colour != CompactGraph.NO_COLOUR && !seen[colour]) {
+                seen[colour] = true;
+                used++;
+            }
+        }
+        return validate(graph, colours, used);
+    }
+
+    // colours[v] is an id in [0, colourCount) or NO_COLOUR
+    private ValidationResult validate(GraphView graph, int[] colours, int colourCount) {
+        for (int v = 0; v < colours.length; v++) {
+            if (colours[v] == CompactGraph.NO_COLOUR) {
+                return ValidationResult.invalid("Vertex " + v + " has no colour", colourCount);
+            }
+        }
+        if (colourCount > 3) {
+            return ValidationResult.invalid("Uses " + colourCount + " colours instead of 3", colourCount);
+        }
+
+        AtomicReference<int[]> conflict = new AtomicReference<>();
+        pool.invoke(new ScanTask(graph, colours, 0, colours.length, conflict));
+
+        int[] edge = conflict.get();
+        if (edge != null) {
+            return ValidationResult.conflict(edge[0], edge[1], colourCount);
+        }
+        return ValidationResult.valid(colourCount);
+    }
+
+    private static class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final GraphView graph;
+        private final int[] colours;
+        private final int from;
+        private final int to;
+        private final AtomicReference<int[]> conflict;
+
+        ScanTask(GraphView graph, int[] colours, int from, int to, AtomicReference<int[]> conflict) {
+            this.graph = graph;
+            this.colours = colours;
+            this.from = from;
+            this.to = to;
+            this.conflict = conflict;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_VERTICES) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ScanTask(graph, colours, from, mid, conflict),
+                          new ScanTask(graph, colours, mid, to, conflict));
+                return;
+            }
+            for (int v = from; v < to; v++) {
+                if (conflict.get() != null) {
+                    return;
+                }
+                int u = clashingNeighbour(v);
+                if (u >= 0) {
+                    conflict.compareAndSet(null, new int[]{Math.min(v, u), Math.max(v, u)});
+                    return;
+                }
+            }
+        }
+
+        private int clashingNeighbour(int v) {
+            int colour = colours[v];
+            if (graph instanceof Graph) {
+                // Walk the live list instead of one map lookup per neighbour
+                for (int u : ((Graph) graph).neighborList(v)) {
+                    if (colours[u] == colour) {
+                        return u;
+                    }
+                }
+                return -1;
+            }
+            int degree = graph.degree(v);
+            for (int i = 0; i < degree; i++) {
+                int u = graph.neighbor(v, i);
+                if (colours[u] == colour) {
+                    return u;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.util.*;
 
 public class CommitMessage extends ProtocolMessage {
     private List<String> commitments;  // Hashed colors for each vertex
+    private CommitmentBuffer packed;   // The same as raw digests, when decoded from a binary frame
     private int round;
     
     public CommitMessage(List<String> commitments, int round) {
@@ -14,20 +15,55 @@ public class CommitMessage extends ProtocolMessage {
         this.round = round;
     }
     
+    public CommitMessage(CommitmentBuffer packed, int round) {
+        super(MessageType.COMMIT);
+        this.packed = packed;
+        this.round = round;
+    }
+    
     public List<String> getCommitments() {
+        if (commitments == null) {
+            commitments = packed.toHexList();
+        }
         return commitments;
     }
     
+    public int getCount() {
+        return packed != null ? packed.size() : commitments.size();
+    }
+    
+    /**
+     * The commitments as packed digests, packing the hex form if needed.
+     * The caller owns the buffer and releases it when the round is over.
+     */
+    public CommitmentBuffer toCommitmentBuffer() {
+        if (packed == null) {
+            packed = CommitmentBuffer.fromHex(commitments);
+        }
+        return packed;
+    }
+    
+    @Override
+    public void release() {
+        if (packed != null) {
+            packed.release();
+        }
+    }
+    
+    // Packed digests as decoded, or null when the message was built from hex
+    CommitmentBuffer getPacked() {
+        return packed;
+    }
+    
     public int getRound() {
         return round;
     }
     
     @Override
     public String toJSON() {
-        JSONObject obj = new JSONObject();
-        obj.put("type", type.name());
+        JSONObject obj = header();
         obj.put("round", round);
-        obj.put("commitments", new JSONArray(commitments));
+        obj.put("commitments", new JSONArray(getCommitments()));
         return obj.toString();
     }
     
@@ -0,0 +1,137 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One round's commitments as packed raw 32-byte digests in a direct buffer,
+ * looked up by vertex index. That is 32 bytes per vertex off the heap instead
+ * of a 64-character hex String on it, so a verifier holding many sessions on
+ * a large graph has a predictable footprint and nothing for the GC to trace.
+ *
+ * Buffers come from a shared pool keyed by vertex count and go back to it on
+ * release(), so steady-state sessions reuse the same memory. A buffer that is
+ * never released is still freed when it becomes unreachable, only not reused.
+ */
+public final class CommitmentBuffer {
+
+    public static final int DIGEST_BYTES = CryptoUtils.DIGEST_BYTES;
+
+    // Direct memory kept for reuse; released buffers beyond this are left to the GC
+    public static final long MAX_POOLED_BYTES = 256L << 20;
+
+    private static final Map<Integer, Queue<ByteBuffer>> POOL = new ConcurrentHashMap<>();
+    private static final AtomicLong pooledBytes = new AtomicLong();
+
+    private final int count;
+    private ByteBuffer digests;
+
+    private CommitmentBuffer(int count, ByteBuffer digests) {
+        this.count = count;
+        this.digests = digests;
+    }
+
+    // An uninitialised buffer for count digests, reused from the pool when possible
+    public static CommitmentBuffer acquire(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative commitment count: " + count);
+        }
+        Queue<ByteBuffer> free = POOL.get(count);
+        ByteBuffer digests = free != null ? free.poll() : null;
+        if (digests != null) {
+            pooledBytes.addAndGet(-digests.capacity());
+        } else {
+            digests = ByteBuffer.allocateDirect(count * DIGEST_BYTES);
+        }
+        return new CommitmentBuffer(count, digests);
+    }
+
+    // Pack hex commitments, e.g. from the JSON format; rejects anything that is not a SHA-256 digest
+    public static CommitmentBuffer fromHex(List<String> commitments) {
+        CommitmentBuffer buffer = acquire(commitments.size());
+        byte[] digest = new byte[DIGEST_BYTES];
+        for (int i = 0; i < commitments.size(); i++) {
+            if (!CryptoUtils.hexToBytes(commitments.get(i), digest)) {
+                buffer.release();
+                throw new IllegalArgumentException("Commitment " + i + " is not a SHA-256 digest");
+            }
+            buffer.digests.put(i * DIGEST_BYTES, digest);
+        }
+        return buffer;
+    }
+
+    // Fill the whole buffer from the next count * 32 bytes of a wire frame
+    public void readFrom(ByteBuffer source) {
+        ByteBuffer target = digests().duplicate();
+        target.clear();
+        ByteBuffer slice = source.slice();
+        slice.limit(count * DIGEST_BYTES);
+        target.put(slice);
+        source.position(source.position() + count * DIGEST_BYTES);
+    }
+
+    public void writeTo(ByteBuffer target) {
+        ByteBuffer source = digests().duplicate();
+        source.clear();
+        target.put(source);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Whether the commitment of this vertex opens to colour and nonce
+    public boolean matches(int vertex, String colour, String nonce) {
+        if (vertex < 0 || vertex >= count) {
+            return false;
+        }
+        return CryptoUtils.verifyCommitment(digests(), vertex * DIGEST_BYTES, colour, nonce);
+    }
+
+    public String getHex(int vertex) {
+        byte[] digest = new byte[DIGEST_BYTES];
+        digests().get(vertex * DIGEST_BYTES, digest);
+        return CryptoUtils.bytesToHex(digest);
+    }
+
+    public List<String> toHexList() {
+        List<String> commitments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            commitments.add(getHex(i));
+        }
+        return commitments;
+    }
+
+    /**
+     * Hand the memory back to the pool. The buffer must not be used
+     * afterwards; releasing it twice is harmless.
+     */
+    public void release() {
+        ByteBuffer released = digests;
+        if (released == null) {
+            return;
+        }
+        digests = null;
+        if (pooledBytes.addAndGet(released.capacity()) <= MAX_POOLED_BYTES) {
+            POOL.computeIfAbsent(count, c -> new ConcurrentLinkedQueue<>()).offer(released);
+        } else {
+            pooledBytes.addAndGet(-released.capacity());
+        }
+    }
+
+    // Direct memory currently parked in the pool
+    public static long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    private ByteBuffer digests() {
+        ByteBuffer current = digests;
+        if (current == null) {
+            throw new IllegalStateException("Commitment buffer used after release");
+        }
+        return current;
+    }
+}
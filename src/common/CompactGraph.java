@@ -0,0 +1,152 @@
+package common;
+
+import java.util.*;
+
+/**
+ * Immutable graph in compressed sparse row form.
+ * The neighbours of v are targets[offsets[v] .. offsets[v + 1]), and every
+ * undirected edge appears once in each endpoint's row, as in Graph.
+ * Colours are stored as small ids into a palette, so the whole structure is
+ * a handful of int arrays and iterating neighbours allocates nothing:
+ *
+ *     for (int i = g.neighborStart(v); i < g.neighborEnd(v); i++) {
+ *         int u = g.target(i);
+ *     }
+ */
+public final class CompactGraph implements GraphView {
+
+    public static final int NO_COLOUR = -1;
+
+    private final int numVertices;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] colours;
+    private final List<String> palette;
+
+    // Built on first use; a racing thread at worst builds an identical copy
+    private volatile EdgeIndex edgeIndex;
+
+    public CompactGraph(int numVertices, int[] offsets, int[] targets, int[] colours, List<String> palette) {
+        if (offsets.length != numVertices + 1 || offsets[numVertices] != targets.length) {
+            throw new IllegalArgumentException("Offsets do not match vertex and edge counts");
+        }
+        if (colours.length != numVertices) {
+            throw new IllegalArgumentException("Expected one colour id per vertex");
+        }
+        this.numVertices = numVertices;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.colours = colours;
+        this.palette = Collections.unmodifiableList(new ArrayList<>(palette));
+    }
+
+    // Snapshot a mutable Graph, including whatever colouring it currently holds
+    public static CompactGraph from(Graph graph) {
+        int n = graph.getNumVertices();
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + graph.neighborList(v).size();
+        }
+
+        int[] targets = new int[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            int pos = offsets[v];
+            for (int u : graph.neighborList(v)) {
+                targets[pos++] = u;
+            }
+        }
+
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        int[] colours = new int[n];
+        for (int v = 0; v < n; v++) {
+            String colour = graph.getColour(v);
+            colours[v] = colour == null ? NO_COLOUR : ids.computeIfAbsent(colour, c -> ids.size());
+        }
+        return new CompactGraph(n, offsets, targets, colours, new ArrayList<>(ids.keySet()));
+    }
+
+    public int getNumVertices() {
+        return numVertices;
+    }
+
+    // Undirected edge count; each edge is stored in both endpoints' rows
+    public int getNumEdges() {
+        return targets.length / 2;
+    }
+
+    public int degree(int vertex) {
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    public int neighborStart(int vertex) {
+        return offsets[vertex];
+    }
+
+    public int neighborEnd(int vertex) {
+        return offsets[vertex + 1];
+    }
+
+    public int target(int index) {
+        return targets[index];
+    }
+
+    public int neighbor(int vertex, int i) {
+        return targets[offsets[vertex] + i];
+    }
+
+    public int colourId(int vertex) {
+        return colours[vertex];
+    }
+
+    public String getColour(int vertex) {
+        int id = colours[vertex];
+        return id == NO_COLOUR ? null : palette.get(id);
+    }
+
+    public List<String> getPalette() {
+        return palette;
+    }
+
+    // Same rules as Graph.isValidColouring: every vertex coloured, at most 3 colours, no monochrome edge
+    public boolean isValidColouring() {
+        boolean[] used = new boolean[palette.size()];
+        int usedCount = 0;
+        for (int v = 0; v < numVertices; v++) {
+            int colour = colours[v];
+            if (colour == NO_COLOUR) {
+                return false;
+            }
+            if (!used[colour]) {
+                used[colour] = true;
+                if (++usedCount > 3) {
+                    return false;
+                }
+            }
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                if (colours[targets[i]] == colour) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Heap bytes held by the arrays, for comparing against the boxed layout
+    public long getMemoryBytes() {
+        return 4L * (offsets.length + targets.length + colours.length);
+    }
+
+    public EdgeIndex getEdgeIndex() {
+        EdgeIndex index = edgeIndex;
+        if (index == null) {
+            index = EdgeIndex.of(this);
+            edgeIndex = index;
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactGraph with " + numVertices + " vertices, " + getNumEdges() + " edges";
+    }
+}
@@ -1,59 +1,226 @@
 package common;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.*;
 
 public class CryptoUtils {
-    
+
+    public static final int DIGEST_BYTES = 32;
+    public static final int NONCE_BYTES = 16;
+
     private static final SecureRandom random = new SecureRandom();
-    
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES["0123456789abcdef".charAt(i)] = (byte) i;
+            HEX_VALUES["0123456789ABCDEF".charAt(i)] = (byte) i;
+        }
+    }
+
+    // Per-thread digest and scratch buffers, so hashing neither allocates nor contends
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private static class Scratch {
+        final MessageDigest digest;
+        final byte[] expected = new byte[DIGEST_BYTES];
+        final byte[] actual = new byte[DIGEST_BYTES];
+        byte[] text = new byte[64];
+
+        Scratch() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("SHA-256 algorithm not available", e);
+            }
+        }
+
+        // Grow the text buffer if needed, keeping what is already written
+        byte[] text(int length) {
+            if (text.length < length) {
+                text = Arrays.copyOf(text, Math.max(length, text.length * 2));
+            }
+            return text;
+        }
+    }
+
     // Generate a random nonce as a hexadecimal string
     public static String generateNonce() {
-        byte[] nonce = new byte[16];
+        byte[] nonce = new byte[NONCE_BYTES];
         random.nextBytes(nonce);
         return bytesToHex(nonce);
     }
-    
+
     // Create a commitment by hashing the colour with the nonce
     public static String createCommitment(String colour, String nonce) {
+        byte[] hash = SCRATCH.get().actual;
+        createCommitment(colour, nonce, hash, 0);
+        return bytesToHex(hash);
+    }
+
+    // Same hash as createCommitment(String, String), written into out[offset..offset+32)
+    public static void createCommitment(String colour, String nonce, byte[] out, int offset) {
+        Scratch scratch = SCRATCH.get();
+        // The committed text is "colour:nonce" in UTF-8
+        int pos = putUtf8(scratch, colour, 0);
+        scratch.text(pos + 1)[pos++] = ':';
+        pos = putUtf8(scratch, nonce, pos);
+        digest(scratch, scratch.text, pos, out, offset);
+    }
+
+    // Append a string as UTF-8 to the scratch text, copying ASCII directly
+    private static int putUtf8(Scratch scratch, String value, int pos) {
+        int length = value.length();
+        byte[] text = scratch.text(pos + length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                text = scratch.text(pos + encoded.length);
+                System.arraycopy(encoded, 0, text, pos, encoded.length);
+                return pos + encoded.length;
+            }
+            text[pos + i] = (byte) c;
+        }
+        return pos + length;
+    }
+
+    /**
+     * Byte-oriented commitment for hot loops: colour as UTF-8 bytes, nonce as
+     * raw bytes. Hashes exactly what createCommitment(String, String) hashes
+     * for the hex form of the nonce, into a caller-supplied buffer.
+     */
+    public static void createCommitment(byte[] colour, byte[] nonce, byte[] out, int offset) {
+        Scratch scratch = SCRATCH.get();
+        byte[] text = scratch.text(colour.length + 1 + 2 * nonce.length);
+        System.arraycopy(colour, 0, text, 0, colour.length);
+        int pos = colour.length;
+        text[pos++] = ':';
+        pos = writeHex(nonce, 0, nonce.length, text, pos);
+        digest(scratch, text, pos, out, offset);
+    }
+
+    private static void digest(Scratch scratch, byte[] text, int length, byte[] out, int offset) {
+        MessageDigest digest = scratch.digest;
+        digest.update(text, 0, length);
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            String data = colour + ":" + nonce;
-            byte[] hash = digest.digest(data.getBytes());
-            return bytesToHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
+            digest.digest(out, offset, DIGEST_BYTES);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("Output buffer too small for SHA-256 digest", e);
         }
     }
-    
+
     // Verify that a commitment matches the revealed colour and nonce
     public static boolean verifyCommitment(String commitment, String colour, String nonce) {
-        String recomputed = createCommitment(colour, nonce);
-        return commitment.equals(recomputed);
+        Scratch scratch = SCRATCH.get();
+        if (!hexToBytes(commitment, scratch.expected)) {
+            return false;
+        }
+        createCommitment(colour, nonce, scratch.actual, 0);
+        return MessageDigest.isEqual(scratch.expected, scratch.actual);
+    }
+
+    // Constant-time check of a raw 32-byte commitment at commitment[offset..]
+    public static boolean verifyCommitment(byte[] commitment, int offset, byte[] colour, byte[] nonce) {
+        Scratch scratch = SCRATCH.get();
+        createCommitment(colour, nonce, scratch.actual, 0);
+        System.arraycopy(commitment, offset, scratch.expected, 0, DIGEST_BYTES);
+        return MessageDigest.isEqual(scratch.expected, scratch.actual);
     }
-    
+
+    // Constant-time check of a raw 32-byte commitment at commitments[offset..], e.g. off-heap
+    public static boolean verifyCommitment(ByteBuffer commitments, int offset, String colour, String nonce) {
+        Scratch scratch = SCRATCH.get();
+        createCommitment(colour, nonce, scratch.actual, 0);
+        commitments.get(offset, scratch.expected);
+        return MessageDigest.isEqual(scratch.expected, scratch.actual);
+    }
+
     // Generate a random permutation of colours
     public static Map<String, String> generateColourPermutation(Set<String> colours) {
         List<String> colourList = new ArrayList<>(colours);
         List<String> permuted = new ArrayList<>(colours);
         Collections.shuffle(permuted, random);
-        
+
         Map<String, String> permutation = new HashMap<>();
         for (int i = 0; i < colourList.size(); i++) {
             permutation.put(colourList.get(i), permuted.get(i));
         }
-        
+
         return permutation;
     }
-    
+
     // Convert byte array to hexadecimal string
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(String.format("%02x", b));
+    public static String bytesToHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    // Write bytes as lowercase ASCII hex into out, returning the position after the last digit
+    public static int writeHex(byte[] bytes, int offset, int length, byte[] out, int outOffset) {
+        for (int i = offset; i < offset + length; i++) {
+            out[outOffset++] = (byte) HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            out[outOffset++] = (byte) HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return outOffset;
+    }
+
+    // Even-length lower-case hex, the one spelling bytesToHex produces
+    public static boolean isCanonicalHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return false;
+        }
+        for (int i = 0; i < hex.length(); i++) {
+            char c = hex.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Convert hexadecimal string back to a byte array
+    public static byte[] hexToBytes(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hex string has odd length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        if (!hexToBytes(hex, bytes)) {
+            throw new IllegalArgumentException("Invalid hex string");
+        }
+        return bytes;
+    }
+
+    // Decode hex into out, which must be exactly half as long; false if it is not valid hex
+    public static boolean hexToBytes(String hex, byte[] out) {
+        if (hex.length() != out.length * 2) {
+            return false;
+        }
+        for (int i = 0; i < out.length; i++) {
+            char hiChar = hex.charAt(2 * i);
+            char loChar = hex.charAt(2 * i + 1);
+            if (hiChar >= 128 || loChar >= 128) {
+                return false;
+            }
+            int hi = HEX_VALUES[hiChar];
+            int lo = HEX_VALUES[loChar];
+            if (hi < 0 || lo < 0) {
+                return false;
+            }
+            out[i] = (byte) ((hi << 4) | lo);
         }
-        return result.toString();
+        return true;
     }
 }
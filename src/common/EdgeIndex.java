@@ -0,0 +1,91 @@
+package common;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable list of a graph's distinct edges as two parallel int arrays.
+ * Edge i is (from(i), to(i)) with from(i) <= to(i), ordered by from then to,
+ * the same order as GraphView.getCanonicalEdges(), without an int[] per edge.
+ * The arrays live on the heap, or in a mapped GraphFile that stores them.
+ */
+public final class EdgeIndex {
+
+    private final IntBuffer from;
+    private final IntBuffer to;
+
+    private EdgeIndex(IntBuffer from, IntBuffer to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    // Edges stored elsewhere, e.g. a GraphFile's edge sections, already in index order
+    static EdgeIndex wrap(IntBuffer from, IntBuffer to) {
+        if (from.limit() != to.limit()) {
+            throw new IllegalArgumentException("Edge arrays differ in length");
+        }
+        return new EdgeIndex(from, to);
+    }
+
+    public static EdgeIndex of(GraphView graph) {
+        int n = graph.getNumVertices();
+
+        // Upper bound on the edge count, so the arrays are allocated once
+        int capacity = 0;
+        for (int v = 0; v < n; v++) {
+            int degree = graph.degree(v);
+            for (int i = 0; i < degree; i++) {
+                if (graph.neighbor(v, i) >= v) {
+                    capacity++;
+                }
+            }
+        }
+
+        int[] from = new int[capacity];
+        int[] to = new int[capacity];
+        int size = 0;
+        for (int v = 0; v < n; v++) {
+            int rowStart = size;
+            int degree = graph.degree(v);
+            for (int i = 0; i < degree; i++) {
+                int u = graph.neighbor(v, i);
+                if (u >= v) {
+                    to[size++] = u;
+                }
+            }
+            // Sort the row and drop parallel edges in place
+            Arrays.sort(to, rowStart, size);
+            int end = rowStart;
+            for (int i = rowStart; i < size; i++) {
+                if (i == rowStart || to[i] != to[end - 1]) {
+                    to[end++] = to[i];
+                }
+            }
+            Arrays.fill(from, rowStart, end, v);
+            size = end;
+        }
+
+        if (size < capacity) {
+            from = Arrays.copyOf(from, size);
+            to = Arrays.copyOf(to, size);
+        }
+        return new EdgeIndex(IntBuffer.wrap(from), IntBuffer.wrap(to));
+    }
+
+    public int size() {
+        return from.limit();
+    }
+
+    public int from(int edge) {
+        return from.get(edge);
+    }
+
+    public int to(int edge) {
+        return to.get(edge);
+    }
+
+    // The same edges in the same order, however each index is stored
+    public boolean sameEdges(EdgeIndex other) {
+        return from.equals(other.from) && to.equals(other.to);
+    }
+}
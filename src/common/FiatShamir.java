@@ -0,0 +1,73 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Derives the verifier's challenges from a hash instead of asking a live verifier.
+ * The seed binds the graph and every round's commitments, so the prover cannot
+ * know which edges get opened until all commitments are fixed.
+ */
+public class FiatShamir {
+
+    private static final byte[] DOMAIN = "ZKP-3COL-FS-v2".getBytes(StandardCharsets.UTF_8);
+
+    // A cheater can rehash its commitments offline; allow for 2^32 attempts
+    public static final double GRINDING_MARGIN_BITS = 32;
+
+    // Rounds a proof needs for 2^-soundnessBits error even after offline grinding
+    public static int requiredRounds(GraphView graph, double soundnessBits) {
+        return RoundScheduler.forGraph(graph, soundnessBits + GRINDING_MARGIN_BITS).getRequiredRounds();
+    }
+
+    // Pick one edge per round from the canonical edge list
+    public static List<int[]> deriveChallenges(String graphFingerprint, List<List<String>> commitmentSets, List<int[]> canonicalEdges) {
+        if (canonicalEdges.isEmpty()) {
+            throw new IllegalArgumentException("Graph has no edges to challenge");
+        }
+        byte[] seed = seed(graphFingerprint, commitmentSets);
+
+        List<int[]> challenges = new ArrayList<>();
+        MessageDigest digest = sha256();
+        for (int round = 0; round < commitmentSets.size(); round++) {
+            digest.update(seed);
+            digest.update(ByteBuffer.allocate(4).putInt(round).array());
+            long value = ByteBuffer.wrap(digest.digest()).getLong();
+            // 64 random bits reduced mod |E|; the bias is negligible for any realistic edge count
+            int index = (int) Long.remainderUnsigned(value, canonicalEdges.size());
+            challenges.add(canonicalEdges.get(index));
+        }
+        return challenges;
+    }
+
+    // Commitments enter as decoded digests: their hex text has more than one spelling
+    // (upper or lower case), and each spelling must not give the prover a fresh seed
+    private static byte[] seed(String graphFingerprint, List<List<String>> commitmentSets) {
+        MessageDigest digest = sha256();
+        byte[] raw = new byte[CryptoUtils.DIGEST_BYTES];
+        digest.update(DOMAIN);
+        digest.update(graphFingerprint.getBytes(StandardCharsets.UTF_8));
+        digest.update(ByteBuffer.allocate(4).putInt(commitmentSets.size()).array());
+        for (List<String> commitments : commitmentSets) {
+            digest.update(ByteBuffer.allocate(4).putInt(commitments.size()).array());
+            for (String commitment : commitments) {
+                if (!CryptoUtils.hexToBytes(commitment, raw)) {
+                    throw new IllegalArgumentException("Commitment is not a " + CryptoUtils.DIGEST_BYTES + "-byte hex digest");
+                }
+                digest.update(raw);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+}
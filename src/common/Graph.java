@@ -2,7 +2,7 @@ package common;
 
 import java.util.*;
 
-public class Graph {
+public class Graph implements GraphView {
     
     public static final List<String> COLOR_POOL = Arrays.asList(
         "RED", "BLUE", "GREEN", "YELLOW", "ORANGE", "PURPLE", "PINK", "CYAN"
@@ -12,6 +12,9 @@ public class Graph {
     private Map<Integer, List<Integer>> adjacencyList;
     private Map<Integer, String> colouring;
     
+    // Built on first use and dropped whenever an edge is added
+    private volatile EdgeIndex edgeIndex;
+    
     public Graph(int numVertices) {
         this.numVertices = numVertices;
         this.adjacencyList = new HashMap<>();
@@ -30,6 +33,7 @@ public class Graph {
         
         adjacencyList.get(v1).add(v2);
         adjacencyList.get(v2).add(v1);
+        edgeIndex = null;
     }
     
     public void setColour(int vertex, String colour) {
@@ -76,25 +80,30 @@ public class Graph {
         return new ArrayList<>(adjacencyList.get(vertex));
     }
     
+    // Live neighbour list without the defensive copy, for converters in this package
+    List<Integer> neighborList(int vertex) {
+        return adjacencyList.get(vertex);
+    }
+    
     public int getNumVertices() {
         return numVertices;
     }
     
-    public List<int[]> getEdges() {
-        List<int[]> edges = new ArrayList<>();
-        Set<String> seen = new HashSet<>();
-        
-        for (int v1 = 0; v1 < numVertices; v1++) {
-            for (int v2 : adjacencyList.get(v1)) {
-                String edge = Math.min(v1, v2) + "-" + Math.max(v1, v2);
-                if (!seen.contains(edge)) {
-                    edges.add(new int[]{v1, v2});
-                    seen.add(edge);
-                }
-            }
+    public int degree(int vertex) {
+        return adjacencyList.get(vertex).size();
+    }
+    
+    public int neighbor(int vertex, int i) {
+        return adjacencyList.get(vertex).get(i);
+    }
+    
+    public EdgeIndex getEdgeIndex() {
+        EdgeIndex index = edgeIndex;
+        if (index == null) {
+            index = EdgeIndex.of(this);
+            edgeIndex = index;
         }
-        
-        return edges;
+        return index;
     }
     
     public Map<Integer, String> getColouring() {
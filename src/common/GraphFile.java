@@ -0,0 +1,237 @@
+package common;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/**
+ * On-disk binary graph format, read in place through a memory mapping.
+ *
+ * Layout, all little-endian:
+ *   header   magic "ZKPG", int version, int numVertices, int reserved, long numTargets,
+ *            long numEdges, 32-byte fingerprint
+ *   offsets  (numVertices + 1) ints, the CSR row starts
+ *   targets  numTargets ints, every undirected edge once per endpoint
+ *   from     numEdges ints, the EdgeIndex's first endpoints
+ *   to       numEdges ints, the EdgeIndex's second endpoints
+ *
+ * Everything a verifier derives from the structure, the edge index and the
+ * fingerprint, is stored at write time, so opening a file maps it and reads
+ * a few header fields: nothing is copied onto the heap, start-up does not
+ * depend on the edge count, and several processes on one host share the same
+ * page cache. Version 1 files, without the last two sections, still open and
+ * derive both on first use.
+ *
+ * Opening checks the header and section sizes only. The full structural
+ * check, every offset and target plus the stored index and fingerprint, is a
+ * scan of the whole file and runs when asked for: open(path, true), or
+ * "GraphFile --check", e.g. once when a file is installed.
+ */
+public class GraphFile {
+
+    public static final int VERSION = 2;
+    public static final int HEADER_BYTES = 64;
+    private static final int V1_HEADER_BYTES = 24;
+    private static final byte[] MAGIC = {'Z', 'K', 'P', 'G'};
+
+    // Write any graph representation in CSR form, with its edge index and fingerprint
+    public static void write(GraphView graph, Path path) throws IOException {
+        int n = graph.getNumVertices();
+        long numTargets = 0;
+        for (int v = 0; v < n; v++) {
+            numTargets += graph.degree(v);
+        }
+        if (numTargets > Integer.MAX_VALUE) {
+            throw new IOException("Graph too large for format version " + VERSION);
+        }
+        EdgeIndex edges = graph.getEdgeIndex();
+        byte[] fingerprint = CryptoUtils.hexToBytes(graph.fingerprint());
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(MAGIC).putInt(VERSION).putInt(n).putInt(0).putLong(numTargets)
+                  .putLong(edges.size()).put(fingerprint);
+
+            long offset = 0;
+            for (int v = 0; v <= n; v++) {
+                buffer = ensureRoom(channel, buffer, 4);
+                buffer.putInt((int) offset);
+                if (v < n) {
+                    offset += graph.degree(v);
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                int degree = graph.degree(v);
+                for (int i = 0; i < degree; i++) {
+                    buffer = ensureRoom(channel, buffer, 4);
+                    buffer.putInt(graph.neighbor(v, i));
+                }
+            }
+            for (int i = 0; i < edges.size(); i++) {
+                buffer = ensureRoom(channel, buffer, 4);
+                buffer.putInt(edges.from(i));
+            }
+            for (int i = 0; i < edges.size(); i++) {
+                buffer = ensureRoom(channel, buffer, 4);
+                buffer.putInt(edges.to(i));
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static ByteBuffer ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    // Map a graph file read-only, checking only its header and section sizes
+    public static MappedGraph open(Path path) throws IOException {
+        return open(path, false);
+    }
+
+    // Map a graph file read-only; with verify, scan all of it first, see check
+    public static MappedGraph open(Path path, boolean verify) throws IOException {
+        MappedGraph graph;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < V1_HEADER_BYTES) {
+                throw new IOException("Not a graph file: " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_BYTES))
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a graph file: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION && version != 1) {
+                throw new IOException("Unsupported graph file version " + version);
+            }
+            int headerBytes = version == 1 ? V1_HEADER_BYTES : HEADER_BYTES;
+            if (header.limit() < headerBytes) {
+                throw new IOException("Graph file header is truncated: " + path);
+            }
+            int numVertices = header.getInt();
+            header.getInt();
+            long numTargets = header.getLong();
+            long numEdges = 0;
+            byte[] fingerprint = null;
+            if (version != 1) {
+                numEdges = header.getLong();
+                fingerprint = new byte[CryptoUtils.DIGEST_BYTES];
+                header.get(fingerprint);
+            }
+            if (numVertices < 0 || numTargets < 0 || numTargets > Integer.MAX_VALUE
+                    || numEdges < 0 || numEdges > numTargets) {
+                throw new IOException("Graph file header out of range: " + path);
+            }
+
+            long offsetsBytes = 4L * (numVertices + 1);
+            long targetsBytes = 4L * numTargets;
+            long edgesBytes = 4L * numEdges;
+            if (channel.size() != headerBytes + offsetsBytes + targetsBytes + 2 * edgesBytes) {
+                throw new IOException("Graph file is truncated or has trailing data: " + path);
+            }
+
+            // Every section gets its own mapping so each stays below the 2 GB mapping limit
+            long position = headerBytes;
+            IntBuffer offsets = map(channel, position, offsetsBytes);
+            IntBuffer targets = map(channel, position += offsetsBytes, targetsBytes);
+            // The two ends of the offsets, so a mismatched header fails here
+            if (offsets.get(0) != 0 || offsets.get(numVertices) != numTargets) {
+                throw new IOException("Graph file offsets do not cover its " + numTargets + " targets: " + path);
+            }
+            EdgeIndex edges = null;
+            if (version != 1) {
+                IntBuffer from = map(channel, position += targetsBytes, edgesBytes);
+                IntBuffer to = map(channel, position + edgesBytes, edgesBytes);
+                edges = EdgeIndex.wrap(from, to);
+            }
+            graph = new MappedGraph(numVertices, offsets, targets, edges,
+                                    fingerprint != null ? CryptoUtils.bytesToHex(fingerprint) : null);
+        }
+        if (verify) {
+            check(path, graph);
+        }
+        return graph;
+    }
+
+    /**
+     * Scan a mapped file so a corrupt one fails here rather than as a bad
+     * challenge later: offsets ascend within the targets, every target is a
+     * vertex, and the stored edge index and fingerprint match the structure.
+     * O(vertices + edges), touching every page of the file.
+     */
+    public static void check(Path path, MappedGraph graph) throws IOException {
+        int numVertices = graph.getNumVertices();
+        int numTargets = graph.getNumTargets();
+        for (int v = 0; v < numVertices; v++) {
+            int start = graph.neighborStart(v);
+            int end = graph.neighborEnd(v);
+            if (end < start || end > numTargets) {
+                throw new IOException("Graph file offset out of range at vertex " + v + ": " + path);
+            }
+        }
+        for (int i = 0; i < numTargets; i++) {
+            int target = graph.target(i);
+            if (target < 0 || target >= numVertices) {
+                throw new IOException("Graph file target " + target + " at index " + i
+                        + " is not a vertex below " + numVertices + ": " + path);
+            }
+        }
+        if (graph.hasStoredIndex()) {
+            if (!EdgeIndex.of(graph).sameEdges(graph.getEdgeIndex())) {
+                throw new IOException("Graph file edge index does not match its targets: " + path);
+            }
+            // Hashes the stored index, which is now known to be the right one
+            if (!graph.computeFingerprint().equals(graph.fingerprint())) {
+                throw new IOException("Graph file fingerprint does not match its edges: " + path);
+            }
+        }
+    }
+
+    private static IntBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        return mapped.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    // Convert the sample graph into a file, or check existing files with --check
+    public static void main(String[] args) {
+        try {
+            if (args.length < 1) {
+                System.err.println("Usage: GraphFile <output-file> | GraphFile --check <graph-file>...");
+                return;
+            }
+            if (args[0].equals("--check")) {
+                for (int i = 1; i < args.length; i++) {
+                    MappedGraph graph = open(Paths.get(args[i]), true);
+                    System.out.println(args[i] + ": OK, " + graph + ", fingerprint " + graph.fingerprint());
+                }
+                return;
+            }
+            Graph graph = Graph.createSampleGraph();
+            write(graph, Paths.get(args[0]));
+            MappedGraph mapped = open(Paths.get(args[0]), true);
+            System.out.println("Wrote " + mapped + " to " + args[0]);
+            System.out.println("Fingerprint: " + mapped.fingerprint());
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package common;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Read-only access to a graph's structure, whatever its storage:
+ * the mutable Graph, an in-memory CompactGraph or a memory-mapped file.
+ */
+public interface GraphView {
+
+    int getNumVertices();
+
+    int degree(int vertex);
+
+    // The i-th neighbour of vertex, 0 <= i < degree(vertex)
+    int neighbor(int vertex, int i);
+
+    // Distinct edges as parallel arrays; implementations may cache it
+    default EdgeIndex getEdgeIndex() {
+        return EdgeIndex.of(this);
+    }
+
+    // Edges as (min, max) pairs in ascending order, each distinct edge once
+    default List<int[]> getCanonicalEdges() {
+        EdgeIndex index = getEdgeIndex();
+        List<int[]> edges = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            edges.add(new int[]{index.from(i), index.to(i)});
+        }
+        return edges;
+    }
+
+    // Challengeable edges; representations may return them in their own order
+    default List<int[]> getEdges() {
+        return getCanonicalEdges();
+    }
+
+    // SHA-256 over the vertex count and canonical edge list, as a hex string.
+    // Two graphs with the same structure get the same fingerprint however they are stored.
+    default String fingerprint() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            digest.update(buffer.putInt(getNumVertices()).array(), 0, 4);
+            EdgeIndex index = getEdgeIndex();
+            for (int i = 0; i < index.size(); i++) {
+                buffer.clear();
+                buffer.putInt(index.from(i)).putInt(index.to(i));
+                digest.update(buffer.array());
+            }
+            return CryptoUtils.bytesToHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package common;
+
+import org.json.JSONObject;
+
+public class HelloMessage extends ProtocolMessage {
+    private String proverId;     // Who is proving, as the transport identified it; null when anonymous
+    private String fingerprint;  // GraphView.fingerprint() of the graph being proven, selects the server's graph
+    private String verdictToken; // From an earlier successful RESULT for this prover and graph; null if none
+
+    public HelloMessage(String proverId, String fingerprint) {
+        this(proverId, fingerprint, null);
+    }
+
+    public HelloMessage(String proverId, String fingerprint, String verdictToken) {
+        super(MessageType.HELLO);
+        this.proverId = proverId;
+        this.fingerprint = fingerprint;
+        this.verdictToken = verdictToken;
+    }
+
+    public String getProverId() {
+        return proverId;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public String getVerdictToken() {
+        return verdictToken;
+    }
+
+    @Override
+    public String toJSON() {
+        JSONObject obj = header();
+        if (proverId != null) {
+            obj.put("proverId", proverId);
+        }
+        obj.put("fingerprint", fingerprint);
+        if (verdictToken != null) {
+            obj.put("verdictToken", verdictToken);
+        }
+        return obj.toString();
+    }
+
+    public static HelloMessage fromJSONObject(JSONObject obj) {
+        String proverId = obj.optString("proverId", null);
+        String fingerprint = obj.getString("fingerprint");
+        String verdictToken = obj.optString("verdictToken", null);
+        return new HelloMessage(proverId, fingerprint, verdictToken);
+    }
+}
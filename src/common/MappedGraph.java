@@ -0,0 +1,98 @@
+package common;
+
+import java.nio.IntBuffer;
+
+/**
+ * Read-only CSR graph backed by a memory-mapped GraphFile.
+ * Nothing is copied onto the heap; lookups read the mapped pages directly,
+ * and so do the edge index and fingerprint when the file stores them.
+ */
+public final class MappedGraph implements GraphView {
+
+    private final int numVertices;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+
+    // Mapped from the file, or built on first use for files without them;
+    // a racing thread at worst builds an identical copy
+    private final boolean storedIndex;
+    private volatile EdgeIndex edgeIndex;
+    private volatile String fingerprint;
+
+    MappedGraph(int numVertices, IntBuffer offsets, IntBuffer targets, EdgeIndex edgeIndex, String fingerprint) {
+        this.numVertices = numVertices;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.storedIndex = edgeIndex != null;
+        this.edgeIndex = edgeIndex;
+        this.fingerprint = fingerprint;
+    }
+
+    public int getNumVertices() {
+        return numVertices;
+    }
+
+    // Undirected edge count; each edge is stored in both endpoints' rows
+    public int getNumEdges() {
+        return targets.limit() / 2;
+    }
+
+    public int degree(int vertex) {
+        return offsets.get(vertex + 1) - offsets.get(vertex);
+    }
+
+    public int neighbor(int vertex, int i) {
+        return targets.get(offsets.get(vertex) + i);
+    }
+
+    public int neighborStart(int vertex) {
+        return offsets.get(vertex);
+    }
+
+    public int neighborEnd(int vertex) {
+        return offsets.get(vertex + 1);
+    }
+
+    public int target(int index) {
+        return targets.get(index);
+    }
+
+    // Entries in the targets section, both directions of every edge
+    public int getNumTargets() {
+        return targets.limit();
+    }
+
+    // The file stores the edge index and fingerprint rather than deriving them
+    public boolean hasStoredIndex() {
+        return storedIndex;
+    }
+
+    public EdgeIndex getEdgeIndex() {
+        EdgeIndex index = edgeIndex;
+        if (index == null) {
+            index = EdgeIndex.of(this);
+            edgeIndex = index;
+        }
+        return index;
+    }
+
+    @Override
+    public String fingerprint() {
+        String value = fingerprint;
+        if (value == null) {
+            value = computeFingerprint();
+            fingerprint = value;
+        }
+        return value;
+    }
+
+    // Hash of the edge index, whatever the file claims
+    String computeFingerprint() {
+        return GraphView.super.fingerprint();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedGraph with " + numVertices + " vertices, " + getNumEdges() + " edges";
+    }
+}
@@ -0,0 +1,44 @@
+package common;
+
+import org.json.JSONObject;
+
+public class MerkleCommitMessage extends ProtocolMessage {
+    private String root;  // Merkle root over all vertex commitments
+    private int numLeaves;
+    private int round;
+    
+    public MerkleCommitMessage(String root, int numLeaves, int round) {
+        super(MessageType.MERKLE_COMMIT);
+        this.root = root;
+        this.numLeaves = numLeaves;
+        this.round = round;
+    }
+    
+    public String getRoot() {
+        return root;
+    }
+    
+    public int getNumLeaves() {
+        return numLeaves;
+    }
+    
+    public int getRound() {
+        return round;
+    }
+    
+    @Override
+    public String toJSON() {
+        JSONObject obj = header();
+        obj.put("round", round);
+        obj.put("root", root);
+        obj.put("numLeaves", numLeaves);
+        return obj.toString();
+    }
+    
+    public static MerkleCommitMessage fromJSONObject(JSONObject obj) {
+        int round = obj.getInt("round");
+        String root = obj.getString("root");
+        int numLeaves = obj.getInt("numLeaves");
+        return new MerkleCommitMessage(root, numLeaves, round);
+    }
+}
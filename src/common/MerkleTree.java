@@ -0,0 +1,109 @@
+package common;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Merkle tree over the per-vertex commitments of one round.
+ * The prover sends only the root; each reveal carries the authentication
+ * path of the opened vertex, so the verifier keeps a single digest.
+ * Leaves and inner nodes are hashed with different prefixes, and an odd
+ * node at the end of a level is carried up unchanged.
+ */
+public class MerkleTree {
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+
+    private final List<byte[][]> levels = new ArrayList<>();  // levels.get(0) are the leaf hashes
+
+    public MerkleTree(List<String> commitments) {
+        if (commitments.isEmpty()) {
+            throw new IllegalArgumentException("Cannot build a Merkle tree without leaves");
+        }
+        MessageDigest digest = sha256();
+        byte[][] level = new byte[commitments.size()][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = hashLeaf(digest, CryptoUtils.hexToBytes(commitments.get(i)));
+        }
+        levels.add(level);
+
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                int left = 2 * i;
+                parent[i] = left + 1 < level.length ? hashNode(digest, level[left], level[left + 1]) : level[left];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+    }
+
+    public String getRoot() {
+        return CryptoUtils.bytesToHex(levels.get(levels.size() - 1)[0]);
+    }
+
+    public int getNumLeaves() {
+        return levels.get(0).length;
+    }
+
+    // Sibling hashes from the leaf up to the root, skipping levels where the node has no sibling
+    public List<String> getPath(int index) {
+        List<String> path = new ArrayList<>();
+        for (int l = 0; l < levels.size() - 1; l++) {
+            byte[][] level = levels.get(l);
+            int sibling = index ^ 1;
+            if (sibling < level.length) {
+                path.add(CryptoUtils.bytesToHex(level[sibling]));
+            }
+            index /= 2;
+        }
+        return path;
+    }
+
+    /**
+     * Check that the commitment at the given leaf index hashes up to the root.
+     */
+    public static boolean verify(String root, String commitment, int index, int numLeaves, List<String> path) {
+        if (index < 0 || index >= numLeaves) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        byte[] node = hashLeaf(digest, CryptoUtils.hexToBytes(commitment));
+        int used = 0;
+        int size = numLeaves;
+        while (size > 1) {
+            int sibling = index ^ 1;
+            if (sibling < size) {
+                if (used >= path.size()) {
+                    return false;
+                }
+                byte[] other = CryptoUtils.hexToBytes(path.get(used++));
+                node = (index & 1) == 0 ? hashNode(digest, node, other) : hashNode(digest, other, node);
+            }
+            index /= 2;
+            size = (size + 1) / 2;
+        }
+        return used == path.size() && MessageDigest.isEqual(node, CryptoUtils.hexToBytes(root));
+    }
+
+    private static byte[] hashLeaf(MessageDigest digest, byte[] commitment) {
+        digest.update(LEAF_PREFIX);
+        return digest.digest(commitment);
+    }
+
+    private static byte[] hashNode(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package common;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking message transport over a socket in either wire format.
+ * The format is fixed during connect()/accept() and never changes afterwards.
+ */
+public class MessageChannel implements MessageEndpoint, Closeable {
+
+    // Upper bound on one frame so a broken peer cannot make us allocate without limit
+    public static final int DEFAULT_MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private final Socket socket;
+    private final WireFormat format;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final int maxFrameBytes;
+
+    private MessageChannel(Socket socket, WireFormat format, DataInputStream in, OutputStream out) {
+        this.socket = socket;
+        this.format = format;
+        this.in = in;
+        this.out = out;
+        this.maxFrameBytes = DEFAULT_MAX_FRAME_BYTES;
+    }
+
+    /**
+     * Client side: request the given format and wait for the server to accept it.
+     */
+    public static MessageChannel connect(Socket socket, WireFormat format) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+        if (format == WireFormat.BINARY) {
+            out.write(WireFormat.magic());
+            out.flush();
+            byte[] ack = new byte[WireFormat.magicLength()];
+            in.readFully(ack);
+            if (!WireFormat.isMagic(ack)) {
+                throw new IOException("Server did not accept binary wire format");
+            }
+        }
+        return new MessageChannel(socket, format, in, out);
+    }
+
+    /**
+     * Server side: look at the first byte to see which format the client wants.
+     */
+    public static MessageChannel accept(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+        in.mark(1);
+        int first = in.read();
+        if (first < 0) {
+            throw new EOFException("Client disconnected");
+        }
+        in.reset();
+
+        if (!WireFormat.startsBinary(first)) {
+            return new MessageChannel(socket, WireFormat.JSON, in, out);
+        }
+
+        byte[] magic = new byte[WireFormat.magicLength()];
+        in.readFully(magic);
+        if (!WireFormat.isMagic(magic)) {
+            throw new IOException("Unsupported binary wire format version");
+        }
+        out.write(magic);
+        out.flush();
+        return new MessageChannel(socket, WireFormat.BINARY, in, out);
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    public void send(ProtocolMessage message) throws IOException {
+        if (format == WireFormat.BINARY) {
+            out.write(BinaryCodec.encode(message));
+        } else {
+            out.write(message.toJSON().getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    // Returns null once the peer has closed the connection
+    public ProtocolMessage receive() throws IOException {
+        if (format == WireFormat.BINARY) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            if (length <= 0 || length > maxFrameBytes) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            return BinaryCodec.decode(ByteBuffer.wrap(payload));
+        }
+
+        String line = readLine();
+        return line == null ? null : ProtocolMessage.fromJSON(line);
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+            if (line.size() >= maxFrameBytes) {
+                throw new IOException("Line exceeds " + maxFrameBytes + " bytes");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,15 @@
+package common;
+
+import java.io.IOException;
+
+/**
+ * One side of a conversation with a single peer session: a whole
+ * MessageChannel, or one proof session on a multiplexed connection.
+ */
+public interface MessageEndpoint {
+
+    void send(ProtocolMessage message) throws IOException;
+
+    // Returns null once the peer has closed the connection
+    ProtocolMessage receive() throws IOException;
+}
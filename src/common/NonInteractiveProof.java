@@ -0,0 +1,74 @@
+package common;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.*;
+
+/**
+ * A self-contained Fiat-Shamir proof: every round's commitments plus the
+ * reveal for the edge that the hash picked in that round.
+ * It can be stored as JSON and checked later without a live session.
+ */
+public class NonInteractiveProof {
+    private String graphFingerprint;
+    private List<List<String>> commitmentSets;
+    private List<RevealMessage> reveals;
+
+    public NonInteractiveProof(String graphFingerprint, List<List<String>> commitmentSets, List<RevealMessage> reveals) {
+        this.graphFingerprint = graphFingerprint;
+        this.commitmentSets = commitmentSets;
+        this.reveals = reveals;
+    }
+
+    public String getGraphFingerprint() {
+        return graphFingerprint;
+    }
+
+    public List<List<String>> getCommitmentSets() {
+        return commitmentSets;
+    }
+
+    public List<RevealMessage> getReveals() {
+        return reveals;
+    }
+
+    public int getNumRounds() {
+        return commitmentSets.size();
+    }
+
+    public String toJSON() {
+        JSONObject obj = new JSONObject();
+        obj.put("graph", graphFingerprint);
+        JSONArray sets = new JSONArray();
+        for (List<String> commitments : commitmentSets) {
+            sets.put(new JSONArray(commitments));
+        }
+        obj.put("commitmentSets", sets);
+        JSONArray revealsArray = new JSONArray();
+        for (RevealMessage reveal : reveals) {
+            revealsArray.put(reveal.toJSONObject());
+        }
+        obj.put("reveals", revealsArray);
+        return obj.toString();
+    }
+
+    public static NonInteractiveProof fromJSON(String json) {
+        JSONObject obj = new JSONObject(json);
+        JSONArray sets = obj.getJSONArray("commitmentSets");
+        List<List<String>> commitmentSets = new ArrayList<>();
+        for (int i = 0; i < sets.length(); i++) {
+            JSONArray commitsArray = sets.getJSONArray(i);
+            List<String> commitments = new ArrayList<>();
+            for (int j = 0; j < commitsArray.length(); j++) {
+                commitments.add(commitsArray.getString(j));
+            }
+            commitmentSets.add(commitments);
+        }
+        JSONArray revealsArray = obj.getJSONArray("reveals");
+        List<RevealMessage> reveals = new ArrayList<>();
+        for (int i = 0; i < revealsArray.length(); i++) {
+            reveals.add(RevealMessage.fromJSONObject(revealsArray.getJSONObject(i)));
+        }
+        return new NonInteractiveProof(obj.getString("graph"), commitmentSets, reveals);
+    }
+}
@@ -0,0 +1,76 @@
+package common;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Per-vertex nonces derived from one random seed per round:
+ * nonce(v) = first 16 bytes of HMAC-SHA256(seed, v as 4 big-endian bytes).
+ *
+ * A round then costs one 32-byte SecureRandom draw instead of one per vertex,
+ * and a nonce is only computed when its vertex is committed or revealed.
+ * HMAC is a PRF, so without the seed the nonces are indistinguishable from
+ * random ones and reveal nothing about each other; the seed itself must
+ * never leave the prover.
+ */
+public final class NonceDeriver {
+
+    public static final int SEED_BYTES = 32;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Mac mac;
+    private final byte[] input = new byte[4];
+    private final byte[] output = new byte[CryptoUtils.DIGEST_BYTES];
+
+    public NonceDeriver(byte[] seed) {
+        if (seed.length != SEED_BYTES) {
+            throw new IllegalArgumentException("Seed must be " + SEED_BYTES + " bytes");
+        }
+        try {
+            mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(seed, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("HmacSHA256 not available", e);
+        }
+    }
+
+    // A deriver keyed by a fresh seed, for one round
+    public static NonceDeriver fresh() {
+        byte[] seed = new byte[SEED_BYTES];
+        RANDOM.nextBytes(seed);
+        NonceDeriver deriver = new NonceDeriver(seed);
+        Arrays.fill(seed, (byte) 0);
+        return deriver;
+    }
+
+    // Write the vertex's raw nonce into out[offset..offset+16)
+    public synchronized void derive(int vertex, byte[] out, int offset) {
+        input[0] = (byte) (vertex >>> 24);
+        input[1] = (byte) (vertex >>> 16);
+        input[2] = (byte) (vertex >>> 8);
+        input[3] = (byte) vertex;
+        mac.update(input);
+        try {
+            mac.doFinal(output, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        System.arraycopy(output, 0, out, offset, CryptoUtils.NONCE_BYTES);
+    }
+
+    public byte[] derive(int vertex) {
+        byte[] nonce = new byte[CryptoUtils.NONCE_BYTES];
+        derive(vertex, nonce, 0);
+        return nonce;
+    }
+
+    // Hex form, as sent in a reveal
+    public String deriveHex(int vertex) {
+        return CryptoUtils.bytesToHex(derive(vertex));
+    }
+}
@@ -0,0 +1,52 @@
+package common;
+
+import java.util.*;
+
+/**
+ * A generated graph together with the colouring it was built around.
+ * The compact form is what scales; the Graph and Map views are for code
+ * that still takes the mutable types, and copy everything on each call.
+ */
+public class PlantedGraph {
+
+    private final CompactGraph graph;
+    private final int[] witness;
+
+    PlantedGraph(CompactGraph graph, int[] witness) {
+        this.graph = graph;
+        this.witness = witness;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    // Colour id of every vertex, an index into PlantedGraphGenerator.PALETTE
+    public int[] getWitness() {
+        return witness;
+    }
+
+    // The structure as a mutable Graph, without colours set
+    public Graph toGraph() {
+        int n = graph.getNumVertices();
+        Graph copy = new Graph(n);
+        for (int v = 0; v < n; v++) {
+            for (int i = graph.neighborStart(v); i < graph.neighborEnd(v); i++) {
+                int u = graph.target(i);
+                if (u > v) {
+                    copy.addEdge(v, u);
+                }
+            }
+        }
+        return copy;
+    }
+
+    // The witness in the form ZKPClient and ProverRound take
+    public Map<Integer, String> getColouring() {
+        Map<Integer, String> colouring = new HashMap<>(witness.length * 2);
+        for (int v = 0; v < witness.length; v++) {
+            colouring.put(v, graph.getPalette().get(witness[v]));
+        }
+        return colouring;
+    }
+}
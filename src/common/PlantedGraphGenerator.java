@@ -0,0 +1,200 @@
+package common;
+
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Random sparse graphs with a planted 3-colouring, for load and scale tests.
+ *
+ * Every vertex is first assigned one of three colour classes, then edges are
+ * only drawn between different classes, so the planted colouring is always a
+ * valid witness. Work is split into fixed chunks, each with its own
+ * SplittableRandom split from the seed in chunk order, so the same parameters
+ * give the same graph however many threads run the build. Parallel edges are
+ * removed, so the average degree comes out marginally below the target on
+ * small, dense graphs.
+ */
+public class PlantedGraphGenerator {
+
+    public static final List<String> PALETTE = Arrays.asList("RED", "GREEN", "BLUE");
+
+    private static final int CHUNK = 1 << 16;
+
+    private final int numVertices;
+    private final double averageDegree;
+    private final double balance;
+    private final long seed;
+
+    /**
+     * balance 1.0 gives three equal colour classes; smaller values shrink the
+     * second and third class to balance and balance^2 times the first.
+     */
+    public PlantedGraphGenerator(int numVertices, double averageDegree, double balance, long seed) {
+        if (numVertices < 3) {
+            throw new IllegalArgumentException("Need at least 3 vertices");
+        }
+        if (averageDegree < 0) {
+            throw new IllegalArgumentException("Average degree must not be negative");
+        }
+        if (balance <= 0 || balance > 1) {
+            throw new IllegalArgumentException("Balance must be in (0, 1]");
+        }
+        this.numVertices = numVertices;
+        this.averageDegree = averageDegree;
+        this.balance = balance;
+        this.seed = seed;
+    }
+
+    public PlantedGraphGenerator(int numVertices, double averageDegree, long seed) {
+        this(numVertices, averageDegree, 1.0, seed);
+    }
+
+    public PlantedGraph generate() {
+        int n = numVertices;
+        long wantedEdges = Math.round(n * averageDegree / 2);
+        if (2 * wantedEdges > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many edges for an int-indexed graph");
+        }
+        int numEdges = (int) wantedEdges;
+
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] vertexRandoms = split(root, chunks(n));
+        SplittableRandom[] edgeRandoms = split(root, chunks(numEdges));
+
+        // 1. Colour classes, drawn per vertex with weights 1 : balance : balance^2
+        double total = 1 + balance + balance * balance;
+        double firstCut = 1 / total;
+        double secondCut = (1 + balance) / total;
+        int[] colours = new int[n];
+        IntStream.range(0, vertexRandoms.length).parallel().forEach(c -> {
+            SplittableRandom random = vertexRandoms[c];
+            for (int v = c * CHUNK, end = Math.min(n, v + CHUNK); v < end; v++) {
+                double r = random.nextDouble();
+                colours[v] = r < firstCut ? 0 : r < secondCut ? 1 : 2;
+            }
+        });
+
+        // Class members, so an edge can pick its second endpoint outside the first one's class
+        int[] classSize = new int[3];
+        for (int colour : colours) {
+            classSize[colour]++;
+        }
+        int[][] members = {new int[classSize[0]], new int[classSize[1]], new int[classSize[2]]};
+        int[] fill = new int[3];
+        for (int v = 0; v < n; v++) {
+            members[colours[v]][fill[colours[v]]++] = v;
+        }
+        if (numEdges > 0 && (classSize[0] == n || classSize[1] == n || classSize[2] == n)) {
+            throw new IllegalStateException("All vertices landed in one colour class; use more vertices or a higher balance");
+        }
+
+        // 2. Edges as two primitive arrays
+        int[] from = new int[numEdges];
+        int[] to = new int[numEdges];
+        IntStream.range(0, edgeRandoms.length).parallel().forEach(c -> {
+            SplittableRandom random = edgeRandoms[c];
+            for (int e = c * CHUNK, end = Math.min(numEdges, e + CHUNK); e < end; e++) {
+                int u;
+                int others;
+                do {
+                    u = random.nextInt(n);
+                    others = n - classSize[colours[u]];
+                } while (others == 0);
+                // Uniform over the vertices of the two other classes
+                int pick = random.nextInt(others);
+                int a = (colours[u] + 1) % 3;
+                int b = (colours[u] + 2) % 3;
+                from[e] = u;
+                to[e] = pick < classSize[a] ? members[a][pick] : members[b][pick - classSize[a]];
+            }
+        });
+
+        // 3. CSR rows: count, prefix sum, scatter
+        AtomicIntegerArray degree = new AtomicIntegerArray(n);
+        IntStream.range(0, numEdges).parallel().forEach(e -> {
+            degree.incrementAndGet(from[e]);
+            degree.incrementAndGet(to[e]);
+        });
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + degree.get(v);
+        }
+        AtomicIntegerArray cursor = new AtomicIntegerArray(n);
+        int[] targets = new int[offsets[n]];
+        IntStream.range(0, numEdges).parallel().forEach(e -> {
+            targets[offsets[from[e]] + cursor.getAndIncrement(from[e])] = to[e];
+            targets[offsets[to[e]] + cursor.getAndIncrement(to[e])] = from[e];
+        });
+
+        // 4. Sort each row and drop parallel edges; duplicates sit in both endpoints' rows, so rows stay symmetric
+        int[] distinct = new int[n];
+        IntStream.range(0, n).parallel().forEach(v -> {
+            int start = offsets[v];
+            int end = offsets[v + 1];
+            Arrays.sort(targets, start, end);
+            int size = 0;
+            for (int i = start; i < end; i++) {
+                if (size == 0 || targets[i] != targets[start + size - 1]) {
+                    targets[start + size++] = targets[i];
+                }
+            }
+            distinct[v] = size;
+        });
+        int[] compactOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            compactOffsets[v + 1] = compactOffsets[v] + distinct[v];
+        }
+        int[] compactTargets = compactOffsets[n] == targets.length ? targets : new int[compactOffsets[n]];
+        if (compactTargets != targets) {
+            IntStream.range(0, n).parallel().forEach(v ->
+                System.arraycopy(targets, offsets[v], compactTargets, compactOffsets[v], distinct[v]));
+        }
+
+        return new PlantedGraph(new CompactGraph(n, compactOffsets, compactTargets, colours, PALETTE), colours);
+    }
+
+    private static int chunks(int items) {
+        return (items + CHUNK - 1) / CHUNK;
+    }
+
+    private static SplittableRandom[] split(SplittableRandom root, int count) {
+        SplittableRandom[] randoms = new SplittableRandom[count];
+        for (int i = 0; i < count; i++) {
+            randoms[i] = root.split();
+        }
+        return randoms;
+    }
+
+    // Generate a graph, check the witness and optionally write it as a graph file
+    public static void main(String[] args) {
+        try {
+            if (args.length < 1) {
+                System.err.println("Usage: PlantedGraphGenerator <vertices> [averageDegree] [balance] [seed] [output-file]");
+                return;
+            }
+            int vertices = Integer.parseInt(args[0]);
+            double averageDegree = args.length > 1 ? Double.parseDouble(args[1]) : 6;
+            double balance = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+            PlantedGraphGenerator generator = new PlantedGraphGenerator(vertices, averageDegree, balance, seed);
+
+            long start = System.nanoTime();
+            PlantedGraph planted = generator.generate();
+            long built = System.nanoTime();
+            ValidationResult result = new ColouringValidator().validate(planted.getGraph());
+            long checked = System.nanoTime();
+
+            System.out.println("Generated " + planted.getGraph() + " in " + (built - start) / 1_000_000 + " ms");
+            System.out.println("Witness: " + result + " in " + (checked - built) / 1_000_000 + " ms");
+            if (args.length > 4) {
+                GraphFile.write(planted.getGraph(), Paths.get(args[4]));
+                System.out.println("Wrote " + args[4]);
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
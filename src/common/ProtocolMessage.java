@@ -7,11 +7,19 @@ public abstract class ProtocolMessage {
         COMMIT,
         CHALLENGE,
         REVEAL,
-        RESULT
+        RESULT,
+        BATCH_COMMIT,
+        BATCH_CHALLENGE,
+        BATCH_REVEAL,
+        MERKLE_COMMIT,
+        HELLO
     }
     
     protected MessageType type;
     
+    // Proof session this message belongs to on a multiplexed connection, 0 when not multiplexed
+    protected long sessionId;
+    
     public ProtocolMessage(MessageType type) {
         this.type = type;
     }
@@ -20,10 +28,41 @@ public abstract class ProtocolMessage {
         return type;
     }
     
+    public long getSessionId() {
+        return sessionId;
+    }
+    
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+    
     public abstract String toJSON();
     
+    /**
+     * Hand back any pooled buffers the receiver did not take over,
+     * for messages that are rejected or dropped. Most messages hold none.
+     */
+    public void release() {
+    }
+    
+    // Fields every message starts with; sessionId is left out when 0 so older peers see no change
+    protected JSONObject header() {
+        JSONObject obj = new JSONObject();
+        obj.put("type", type.name());
+        if (sessionId != 0) {
+            obj.put("sessionId", sessionId);
+        }
+        return obj;
+    }
+    
     public static ProtocolMessage fromJSON(String json) {
         JSONObject obj = new JSONObject(json);
+        ProtocolMessage message = fromJSONObject(obj);
+        message.setSessionId(obj.optLong("sessionId", 0));
+        return message;
+    }
+    
+    private static ProtocolMessage fromJSONObject(JSONObject obj) {
         String typeStr = obj.getString("type");
         MessageType type = MessageType.valueOf(typeStr);
         
@@ -36,6 +75,16 @@ public abstract class ProtocolMessage {
                 return RevealMessage.fromJSONObject(obj);
             case RESULT:
                 return ResultMessage.fromJSONObject(obj);
+            case BATCH_COMMIT:
+                return BatchCommitMessage.fromJSONObject(obj);
+            case BATCH_CHALLENGE:
+                return BatchChallengeMessage.fromJSONObject(obj);
+            case BATCH_REVEAL:
+                return BatchRevealMessage.fromJSONObject(obj);
+            case MERKLE_COMMIT:
+                return MerkleCommitMessage.fromJSONObject(obj);
+            case HELLO:
+                return HelloMessage.fromJSONObject(obj);
             default:
                 throw new IllegalArgumentException("Unknown message type: " + typeStr);
         }
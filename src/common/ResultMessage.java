@@ -1,17 +1,26 @@
 package common;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
+import java.util.*;
 
 public class ResultMessage extends ProtocolMessage {
     private boolean verified;
     private String message;
     private int totalRounds;
+    private List<Boolean> roundVerdicts;  // Batch mode: pass/fail of every verified round, in order
+    private String verdictToken;          // Presented in a later HELLO to reuse this verdict; null if not cached
     
     public ResultMessage(boolean verified, String message, int totalRounds) {
+        this(verified, message, totalRounds, Collections.emptyList());
+    }
+    
+    public ResultMessage(boolean verified, String message, int totalRounds, List<Boolean> roundVerdicts) {
         super(MessageType.RESULT);
         this.verified = verified;
         this.message = message;
         this.totalRounds = totalRounds;
+        this.roundVerdicts = roundVerdicts;
     }
     
     public boolean isVerified() {
@@ -26,13 +35,30 @@ public class ResultMessage extends ProtocolMessage {
         return totalRounds;
     }
     
+    public List<Boolean> getRoundVerdicts() {
+        return roundVerdicts;
+    }
+    
+    public String getVerdictToken() {
+        return verdictToken;
+    }
+    
+    public void setVerdictToken(String verdictToken) {
+        this.verdictToken = verdictToken;
+    }
+    
     @Override
     public String toJSON() {
-        JSONObject obj = new JSONObject();
-        obj.put("type", type.name());
+        JSONObject obj = header();
         obj.put("verified", verified);
         obj.put("message", message);
         obj.put("totalRounds", totalRounds);
+        if (!roundVerdicts.isEmpty()) {
+            obj.put("roundVerdicts", new JSONArray(roundVerdicts));
+        }
+        if (verdictToken != null) {
+            obj.put("verdictToken", verdictToken);
+        }
         return obj.toString();
     }
     
@@ -40,6 +66,15 @@ public class ResultMessage extends ProtocolMessage {
         boolean verified = obj.getBoolean("verified");
         String message = obj.getString("message");
         int totalRounds = obj.getInt("totalRounds");
-        return new ResultMessage(verified, message, totalRounds);
+        List<Boolean> roundVerdicts = new ArrayList<>();
+        JSONArray verdictsArray = obj.optJSONArray("roundVerdicts");
+        if (verdictsArray != null) {
+            for (int i = 0; i < verdictsArray.length(); i++) {
+                roundVerdicts.add(verdictsArray.getBoolean(i));
+            }
+        }
+        ResultMessage result = new ResultMessage(verified, message, totalRounds, roundVerdicts);
+        result.setVerdictToken(obj.optString("verdictToken", null));
+        return result;
     }
 }
@@ -1,6 +1,8 @@
 package common;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
+import java.util.*;
 
 public class RevealMessage extends ProtocolMessage {
     private String colour1;
@@ -8,14 +10,23 @@ public class RevealMessage extends ProtocolMessage {
     private String nonce1;  // Random nonce used in hashing
     private String nonce2;
     private int round;
+    private List<String> path1;  // Merkle authentication paths, empty unless committed by root
+    private List<String> path2;
     
     public RevealMessage(String colour1, String colour2, String nonce1, String nonce2, int round) {
+        this(colour1, colour2, nonce1, nonce2, round, Collections.emptyList(), Collections.emptyList());
+    }
+    
+    public RevealMessage(String colour1, String colour2, String nonce1, String nonce2, int round,
+                         List<String> path1, List<String> path2) {
         super(MessageType.REVEAL);
         this.colour1 = colour1;
         this.colour2 = colour2;
         this.nonce1 = nonce1;
         this.nonce2 = nonce2;
         this.round = round;
+        this.path1 = path1;
+        this.path2 = path2;
     }
     
     public String getColour1() {
@@ -38,24 +49,60 @@ public class RevealMessage extends ProtocolMessage {
         return round;
     }
     
+    public List<String> getPath1() {
+        return path1;
+    }
+    
+    public List<String> getPath2() {
+        return path2;
+    }
+    
     @Override
     public String toJSON() {
-        JSONObject obj = new JSONObject();
-        obj.put("type", type.name());
+        return toJSONObject().toString();
+    }
+    
+    JSONObject toJSONObject() {
+        JSONObject obj = header();
         obj.put("round", round);
         obj.put("colour1", colour1);
         obj.put("colour2", colour2);
         obj.put("nonce1", nonce1);
         obj.put("nonce2", nonce2);
-        return obj.toString();
+        if (!path1.isEmpty() || !path2.isEmpty()) {
+            obj.put("path1", new JSONArray(path1));
+            obj.put("path2", new JSONArray(path2));
+        }
+        return obj;
     }
     
     public static RevealMessage fromJSONObject(JSONObject obj) {
         int round = obj.getInt("round");
         String c1 = obj.getString("colour1");
         String c2 = obj.getString("colour2");
-        String n1 = obj.getString("nonce1");
-        String n2 = obj.getString("nonce2");
-        return new RevealMessage(c1, c2, n1, n2, round);
+        String n1 = checkNonce(obj.getString("nonce1"));
+        String n2 = checkNonce(obj.getString("nonce2"));
+        return new RevealMessage(c1, c2, n1, n2, round, readPath(obj, "path1"), readPath(obj, "path2"));
+    }
+    
+    // Commitments hash the nonce as text, and the binary format carries it as bytes that come
+    // back lower-case; accepting only lower-case hex keeps both formats verifying the same reveals
+    private static String checkNonce(String nonce) {
+        if (!CryptoUtils.isCanonicalHex(nonce)) {
+            throw new IllegalArgumentException("Nonce is not lower-case hex: " + nonce);
+        }
+        return nonce;
+    }
+    
+    private static List<String> readPath(JSONObject obj, String key) {
+        JSONArray array = obj.optJSONArray(key);
+        if (array == null) {
+            return Collections.emptyList();
+        }
+        List<String> path = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            path.add(array.getString(i));
+        }
+        return path;
     }
 }
@@ -0,0 +1,89 @@
+package common;
+
+import java.util.Locale;
+
+/**
+ * Number of rounds needed for a target soundness error.
+ *
+ * A prover without a valid colouring has at least one monochromatic edge,
+ * and the verifier challenges one of |E| edges uniformly, so a cheater
+ * survives a round with probability at most 1 - 1/|E| and k rounds with
+ * (1 - 1/|E|)^k. For an error of at most 2^-bits that takes
+ *     k = ceil(bits * ln 2 / -ln(1 - 1/|E|))  (about 0.69 * bits * |E| rounds)
+ * so the work grows with the graph instead of being a fixed 100 rounds.
+ */
+public final class RoundScheduler {
+
+    public static final double DEFAULT_SOUNDNESS_BITS = 40;
+
+    private final long numEdges;
+    private final double soundnessBits;
+    private final int requiredRounds;
+
+    public RoundScheduler(long numEdges, double soundnessBits) {
+        if (numEdges < 1) {
+            throw new IllegalArgumentException("Graph has no edges to challenge");
+        }
+        if (soundnessBits <= 0) {
+            throw new IllegalArgumentException("Soundness bits must be positive");
+        }
+        this.numEdges = numEdges;
+        this.soundnessBits = soundnessBits;
+        this.requiredRounds = requiredRounds(numEdges, soundnessBits);
+    }
+
+    public static RoundScheduler forGraph(GraphView graph, double soundnessBits) {
+        return new RoundScheduler(graph.getEdgeIndex().size(), soundnessBits);
+    }
+
+    public static int requiredRounds(long numEdges, double soundnessBits) {
+        if (numEdges == 1) {
+            // The only edge is always challenged, one round catches any cheater
+            return 1;
+        }
+        double rounds = Math.ceil(soundnessBits * Math.log(2) / -Math.log1p(-1.0 / numEdges));
+        if (rounds > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Soundness target needs more than " + Integer.MAX_VALUE + " rounds");
+        }
+        return Math.max(1, (int) rounds);
+    }
+
+    // Upper bound on a cheater surviving this many passed rounds
+    public static double soundnessError(long numEdges, int passedRounds) {
+        if (numEdges == 1) {
+            return passedRounds > 0 ? 0 : 1;
+        }
+        return Math.exp(passedRounds * Math.log1p(-1.0 / numEdges));
+    }
+
+    // The same as bits, -log2 of the error; infinite once the error is zero
+    public static double soundnessBits(long numEdges, int passedRounds) {
+        if (numEdges == 1) {
+            return passedRounds > 0 ? Double.POSITIVE_INFINITY : 0;
+        }
+        return -passedRounds * Math.log1p(-1.0 / numEdges) / Math.log(2);
+    }
+
+    public int getRequiredRounds() {
+        return requiredRounds;
+    }
+
+    public long getNumEdges() {
+        return numEdges;
+    }
+
+    public double getSoundnessBits() {
+        return soundnessBits;
+    }
+
+    // The bound is reached, further rounds would be wasted work
+    public boolean isSatisfied(int passedRounds) {
+        return passedRounds >= requiredRounds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d rounds for 2^-%.1f soundness over %d edges",
+                             requiredRounds, soundnessBits, numEdges);
+    }
+}
@@ -0,0 +1,61 @@
+package common;
+
+/**
+ * Outcome of checking a colouring: whether it is a valid 3-colouring, how
+ * many colours it uses and, when two neighbours clash, which edge.
+ */
+public class ValidationResult {
+
+    private final boolean valid;
+    private final String reason;
+    private final int conflictV1;
+    private final int conflictV2;
+    private final int colourCount;
+
+    private ValidationResult(boolean valid, String reason, int conflictV1, int conflictV2, int colourCount) {
+        this.valid = valid;
+        this.reason = reason;
+        this.conflictV1 = conflictV1;
+        this.conflictV2 = conflictV2;
+        this.colourCount = colourCount;
+    }
+
+    static ValidationResult valid(int colourCount) {
+        return new ValidationResult(true, "Valid 3-colouring", -1, -1, colourCount);
+    }
+
+    static ValidationResult invalid(String reason, int colourCount) {
+        return new ValidationResult(false, reason, -1, -1, colourCount);
+    }
+
+    static ValidationResult conflict(int v1, int v2, int colourCount) {
+        return new ValidationResult(false, "Adjacent vertices " + v1 + " and " + v2 + " have the same colour",
+                                    v1, v2, colourCount);
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public boolean hasConflict() {
+        return conflictV1 >= 0;
+    }
+
+    // The monochrome edge that was found, or null if the failure was something else
+    public int[] getConflictingEdge() {
+        return hasConflict() ? new int[]{conflictV1, conflictV2} : null;
+    }
+
+    public int getColourCount() {
+        return colourCount;
+    }
+
+    @Override
+    public String toString() {
+        return (valid ? "VALID" : "INVALID") + ": " + reason + " (" + colourCount + " colours)";
+    }
+}
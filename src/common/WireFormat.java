@@ -0,0 +1,34 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * How protocol messages are framed on the socket.
+ * JSON is the default, one message per line, and stays readable for debugging.
+ * BINARY is requested by sending MAGIC as the very first bytes of the
+ * connection; the server echoes MAGIC back to accept it.
+ */
+public enum WireFormat {
+    JSON,
+    BINARY;
+
+    // "ZKPB" followed by the binary format version
+    private static final byte[] MAGIC = {'Z', 'K', 'P', 'B', 1};
+
+    public static byte[] magic() {
+        return MAGIC.clone();
+    }
+
+    public static int magicLength() {
+        return MAGIC.length;
+    }
+
+    public static boolean isMagic(byte[] bytes) {
+        return Arrays.equals(MAGIC, bytes);
+    }
+
+    // JSON frames always start with '{', so a leading 'Z' can only mean BINARY
+    public static boolean startsBinary(int firstByte) {
+        return firstByte == MAGIC[0];
+    }
+}
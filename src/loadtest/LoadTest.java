@@ -0,0 +1,253 @@
+package loadtest;
+
+import common.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.JSONObject;
+
+/**
+ * Closed-loop load generator: N simulated provers each run proofs back to
+ * back against a ZKPServer, with no think time. Numbers from the warm-up
+ * phase are discarded; only the steady-state window is reported.
+ *
+ * The server must serve the same graph and round count, e.g. for a planted graph
+ *     java common.PlantedGraphGenerator 100000 6 1.0 42 g.zkg
+ *     java server.ZKPServer --nio --graph g.zkg --rounds 20
+ *     java loadtest.LoadTest --vertices 100000 --degree 6 --seed 42 --rounds 20
+ * Without --vertices both sides use the 10-vertex sample graph.
+ */
+public class LoadTest {
+
+    private static final int MAX_PRINTED_ERRORS = 5;
+
+    private final String host;
+    private final int port;
+    private final WireFormat wireFormat;
+    private final AtomicInteger printedErrors = new AtomicInteger();
+    private volatile boolean running = true;
+    private volatile boolean recording;
+    private boolean seededNonces;
+    private String graphFingerprint;
+
+    public LoadTest(String host, int port, WireFormat wireFormat) {
+        this.host = host;
+        this.port = port;
+        this.wireFormat = wireFormat;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    // Derive nonces from one seed per round, see ProverRound
+    public void setSeededNonces(boolean seededNonces) {
+        this.seededNonces = seededNonces;
+    }
+
+    boolean isSeededNonces() {
+        return seededNonces;
+    }
+
+    // Name the graph in a HELLO before every proof, so a server with a graph registry picks it
+    public void setGraphFingerprint(String graphFingerprint) {
+        this.graphFingerprint = graphFingerprint;
+    }
+
+    String getGraphFingerprint() {
+        return graphFingerprint;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    boolean isRecording() {
+        return recording;
+    }
+
+    // Print the first few failures so a misconfigured run is obvious, then stay quiet
+    void reportError(Exception e) {
+        if (printedErrors.incrementAndGet() <= MAX_PRINTED_ERRORS) {
+            System.err.println("Prover error: " + e);
+        }
+    }
+
+    /**
+     * Run the provers through warm-up and steady state and return their merged stats.
+     */
+    ProverStats run(List<SimulatedProver> provers, long warmupMillis, long durationMillis) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < provers.size(); i++) {
+            Thread thread = new Thread(provers.get(i), "prover-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        System.out.println("Warming up for " + warmupMillis / 1000.0 + " s...");
+        Thread.sleep(warmupMillis);
+        recording = true;
+        System.out.println("Measuring for " + durationMillis / 1000.0 + " s...");
+        Thread.sleep(durationMillis);
+        recording = false;
+        running = false;
+
+        // Provers finish the proof they are in, which is no longer recorded
+        for (Thread thread : threads) {
+            thread.join(30_000);
+        }
+
+        ProverStats total = new ProverStats();
+        for (SimulatedProver prover : provers) {
+            total.merge(prover.getStats());
+        }
+        return total;
+    }
+
+    static String option(String[] args, String flag, String defaultValue) {
+        int index = Arrays.asList(args).indexOf(flag);
+        if (index >= 0 && index + 1 < args.length) {
+            return args[index + 1];
+        }
+        return defaultValue;
+    }
+
+    public static void main(String[] args) {
+        try {
+            String host = option(args, "--host", "localhost");
+            int port = Integer.parseInt(option(args, "--port", "8888"));
+            int numProvers = Integer.parseInt(option(args, "--provers", "16"));
+            int numRounds = Integer.parseInt(option(args, "--rounds", "100"));
+            String soundness = option(args, "--soundness", null);
+            int vertices = Integer.parseInt(option(args, "--vertices", "0"));
+            double degree = Double.parseDouble(option(args, "--degree", "6"));
+            double balance = Double.parseDouble(option(args, "--balance", "1.0"));
+            long seed = Long.parseLong(option(args, "--seed", "42"));
+            double sameColourShare = Double.parseDouble(option(args, "--same-colour", "0"));
+            double fourthColourShare = Double.parseDouble(option(args, "--fourth-colour", "0"));
+            long warmupMillis = (long) (Double.parseDouble(option(args, "--warmup", "5")) * 1000);
+            long durationMillis = (long) (Double.parseDouble(option(args, "--duration", "30")) * 1000);
+            WireFormat format = Arrays.asList(args).contains("--binary") ? WireFormat.BINARY : WireFormat.JSON;
+
+            // Same graph as the server: the sample graph, or the planted graph for these parameters
+            GraphView graph;
+            Map<Integer, String> witness;
+            if (vertices > 0) {
+                PlantedGraph planted = new PlantedGraphGenerator(vertices, degree, balance, seed).generate();
+                graph = planted.getGraph();
+                witness = planted.getColouring();
+            } else {
+                graph = Graph.createSampleGraph();
+                witness = Graph.getSampleColouring();
+            }
+            if (soundness != null) {
+                // Same schedule as a server started with --soundness
+                numRounds = RoundScheduler.forGraph(graph, Double.parseDouble(soundness)).getRequiredRounds();
+            }
+
+            System.out.println("Zero-Knowledge Proof - Load Test");
+            System.out.println("Server: " + host + ":" + port + " (" + format + ")");
+            System.out.println("Graph: " + graph.getNumVertices() + " vertices, " + graph.getEdgeIndex().size() + " edges");
+            System.out.println("Provers: " + numProvers + ", rounds per proof: " + numRounds);
+
+            // The first provers cheat in the requested shares, the rest are honest
+            LoadTest test = new LoadTest(host, port, format);
+            test.setSeededNonces(Arrays.asList(args).contains("--seeded-nonces"));
+            test.setGraphFingerprint(graph.fingerprint());
+            int sameColour = (int) Math.round(numProvers * sameColourShare);
+            int fourthColour = (int) Math.round(numProvers * fourthColourShare);
+            List<SimulatedProver> provers = new ArrayList<>();
+            for (int i = 0; i < numProvers; i++) {
+                SimulatedProver.Kind kind = i < sameColour ? SimulatedProver.Kind.SAME_COLOUR
+                    : i < sameColour + fourthColour ? SimulatedProver.Kind.FOURTH_COLOUR
+                    : SimulatedProver.Kind.HONEST;
+                provers.add(new SimulatedProver(test, kind, graph, witness, numRounds, seed + i));
+            }
+            System.out.println("Cheating provers: " + sameColour + " same colour, " + fourthColour + " fourth colour");
+
+            ProverStats stats = test.run(provers, warmupMillis, durationMillis);
+            Map<String, Object> report = report(stats, durationMillis);
+            report.put("provers", numProvers);
+            report.put("vertices", graph.getNumVertices());
+            report.put("rounds", numRounds);
+            report.put("format", format.toString());
+            report.put("seeded_nonces", test.isSeededNonces());
+
+            System.out.println();
+            for (Map.Entry<String, Object> entry : report.entrySet()) {
+                System.out.println(String.format(Locale.ROOT, "%-20s %s", entry.getKey(), format(entry.getValue())));
+            }
+
+            String csv = option(args, "--csv", null);
+            if (csv != null) {
+                appendCsv(Paths.get(csv), report);
+            }
+            String json = option(args, "--json", null);
+            if (json != null) {
+                Files.write(Paths.get(json), new JSONObject(report).toString(2).getBytes(StandardCharsets.UTF_8));
+            }
+
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // Steady-state results in a fixed column order, shared by the console, CSV and JSON output
+    static Map<String, Object> report(ProverStats stats, long durationMillis) {
+        double seconds = durationMillis / 1000.0;
+        long attempts = stats.proofs + stats.errors;
+        long cheats = stats.cheatsDetected + stats.cheatsAccepted;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("proofs_per_sec", stats.proofs / seconds);
+        report.put("rounds_per_sec", stats.rounds / seconds);
+        report.put("round_p50_ms", stats.roundQuantileMillis(0.50));
+        report.put("round_p99_ms", stats.roundQuantileMillis(0.99));
+        report.put("round_p999_ms", stats.roundQuantileMillis(0.999));
+        report.put("proof_p50_ms", stats.proofQuantileMillis(0.50));
+        report.put("proof_p99_ms", stats.proofQuantileMillis(0.99));
+        // Honest provers that were rejected count as errors, as do failed connections
+        report.put("error_rate", attempts == 0 ? 0.0 : (double) (stats.errors + stats.honestRejected) / attempts);
+        report.put("detection_rate", cheats == 0 ? 0.0 : (double) stats.cheatsDetected / cheats);
+        report.put("proofs", stats.proofs);
+        report.put("honest_verified", stats.honestVerified);
+        report.put("honest_rejected", stats.honestRejected);
+        report.put("cheats_detected", stats.cheatsDetected);
+        report.put("cheats_accepted", stats.cheatsAccepted);
+        report.put("errors", stats.errors);
+        return report;
+    }
+
+    private static String format(Object value) {
+        return value instanceof Double ? String.format(Locale.ROOT, "%.3f", (Double) value) : String.valueOf(value);
+    }
+
+    // One row per run; the header is written when the file is new
+    private static void appendCsv(Path path, Map<String, Object> report) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            sb.append(String.join(",", report.keySet())).append('\n');
+        }
+        StringJoiner row = new StringJoiner(",");
+        for (Object value : report.values()) {
+            row.add(format(value));
+        }
+        sb.append(row).append('\n');
+        Files.write(path, sb.toString().getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
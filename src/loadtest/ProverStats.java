@@ -0,0 +1,82 @@
+package loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Counts and latencies recorded by one simulated prover during the
+ * steady-state phase. Only its own thread writes it; the driver merges all
+ * of them once the provers have stopped.
+ */
+class ProverStats {
+
+    long proofs;
+    long rounds;
+    long honestVerified;
+    long honestRejected;
+    long cheatsDetected;
+    long cheatsAccepted;
+    long errors;
+
+    private long[] roundNanos = new long[1024];
+    private int roundCount;
+    private long[] proofNanos = new long[64];
+    private int proofCount;
+
+    void recordRound(long nanos) {
+        if (roundCount == roundNanos.length) {
+            roundNanos = Arrays.copyOf(roundNanos, roundCount * 2);
+        }
+        roundNanos[roundCount++] = nanos;
+        rounds++;
+    }
+
+    void recordProof(long nanos) {
+        if (proofCount == proofNanos.length) {
+            proofNanos = Arrays.copyOf(proofNanos, proofCount * 2);
+        }
+        proofNanos[proofCount++] = nanos;
+        proofs++;
+    }
+
+    // Add another prover's numbers to this one
+    void merge(ProverStats other) {
+        proofs += other.proofs;
+        rounds += other.rounds;
+        honestVerified += other.honestVerified;
+        honestRejected += other.honestRejected;
+        cheatsDetected += other.cheatsDetected;
+        cheatsAccepted += other.cheatsAccepted;
+        errors += other.errors;
+
+        roundNanos = append(roundNanos, roundCount, other.roundNanos, other.roundCount);
+        roundCount += other.roundCount;
+        proofNanos = append(proofNanos, proofCount, other.proofNanos, other.proofCount);
+        proofCount += other.proofCount;
+    }
+
+    private static long[] append(long[] target, int size, long[] source, int count) {
+        if (target.length < size + count) {
+            target = Arrays.copyOf(target, size + count);
+        }
+        System.arraycopy(source, 0, target, size, count);
+        return target;
+    }
+
+    // Round latency quantile in milliseconds; sorts the samples in place
+    double roundQuantileMillis(double quantile) {
+        return quantile(roundNanos, roundCount, quantile);
+    }
+
+    double proofQuantileMillis(double quantile) {
+        return quantile(proofNanos, proofCount, quantile);
+    }
+
+    private static double quantile(long[] samples, int count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(samples, 0, count);
+        int index = (int) Math.min(count - 1, Math.max(0, Math.ceil(quantile * count) - 1));
+        return samples[index] / 1e6;
+    }
+}
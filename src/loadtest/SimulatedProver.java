@@ -0,0 +1,130 @@
+package loadtest;
+
+import client.ProverRound;
+import client.ZKPClientFailure1;
+import client.ZKPClientFailure2;
+import common.*;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * A headless prover that runs proofs back to back for as long as the load
+ * test lasts. Honest provers use the witness as is; cheating ones corrupt it
+ * the same way ZKPClientFailure1 (one monochrome edge, a new one per proof)
+ * or ZKPClientFailure2 (a fourth colour) do.
+ */
+class SimulatedProver implements Runnable {
+
+    enum Kind { HONEST, SAME_COLOUR, FOURTH_COLOUR }
+
+    private final LoadTest test;
+    private final Kind kind;
+    private final GraphView graph;
+    private final Map<Integer, String> witness;
+    private final int numRounds;
+    private final Random random;
+    private final ProverStats stats = new ProverStats();
+
+    SimulatedProver(LoadTest test, Kind kind, GraphView graph, Map<Integer, String> witness, int numRounds, long seed) {
+        this.test = test;
+        this.kind = kind;
+        this.graph = graph;
+        this.witness = witness;
+        this.numRounds = numRounds;
+        this.random = new Random(seed);
+    }
+
+    ProverStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void run() {
+        while (test.isRunning()) {
+            Map<Integer, String> colouring = colouringForProof();
+            long start = System.nanoTime();
+            try {
+                ResultMessage result = prove(colouring);
+                if (test.isRecording()) {
+                    stats.recordProof(System.nanoTime() - start);
+                    recordOutcome(result.isVerified());
+                }
+            } catch (IOException | RuntimeException e) {
+                if (test.isRecording()) {
+                    stats.errors++;
+                }
+                test.reportError(e);
+            }
+        }
+    }
+
+    private Map<Integer, String> colouringForProof() {
+        switch (kind) {
+            case SAME_COLOUR: {
+                Map<Integer, String> corrupted = new HashMap<>(witness);
+                ZKPClientFailure1.forceSameColour(graph, corrupted, random);
+                return corrupted;
+            }
+            case FOURTH_COLOUR: {
+                Map<Integer, String> corrupted = new HashMap<>(witness);
+                ZKPClientFailure2.addFourthColour(corrupted, random.nextInt(graph.getNumVertices()));
+                return corrupted;
+            }
+            default:
+                return witness;
+        }
+    }
+
+    // One complete proof on its own connection
+    private ResultMessage prove(Map<Integer, String> colouring) throws IOException {
+        try (Socket socket = new Socket(test.getHost(), test.getPort())) {
+            socket.setTcpNoDelay(true);
+            MessageChannel channel = MessageChannel.connect(socket, test.getWireFormat());
+            if (test.getGraphFingerprint() != null) {
+                channel.send(new HelloMessage(null, test.getGraphFingerprint()));
+            }
+
+            for (int round = 1; round <= numRounds; round++) {
+                long roundStart = System.nanoTime();
+                ProverRound proverRound = ProverRound.create(graph.getNumVertices(), colouring, test.isSeededNonces());
+                channel.send(new CommitMessage(proverRound.getCommitments(), round));
+
+                ProtocolMessage msg = channel.receive();
+                if (msg instanceof ResultMessage) {
+                    // The previous reveal already failed
+                    return (ResultMessage) msg;
+                }
+                if (!(msg instanceof ChallengeMessage)) {
+                    throw new IOException("Expected CHALLENGE message, got " + msg);
+                }
+                ChallengeMessage challenge = (ChallengeMessage) msg;
+                channel.send(proverRound.reveal(challenge.getVertex1(), challenge.getVertex2(), round));
+
+                if (test.isRecording()) {
+                    stats.recordRound(System.nanoTime() - roundStart);
+                }
+            }
+
+            ProtocolMessage msg = channel.receive();
+            if (!(msg instanceof ResultMessage)) {
+                throw new IOException("Expected RESULT message, got " + msg);
+            }
+            return (ResultMessage) msg;
+        }
+    }
+
+    private void recordOutcome(boolean verified) {
+        if (kind == Kind.HONEST) {
+            if (verified) {
+                stats.honestVerified++;
+            } else {
+                stats.honestRejected++;
+            }
+        } else if (verified) {
+            stats.cheatsAccepted++;
+        } else {
+            stats.cheatsDetected++;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package server;
+
+import common.*;
+import java.io.*;
+import java.net.*;
+import java.util.function.Supplier;
+
+/**
+ * Drives the sessions of one blocking socket, one thread per connection.
+ * The wire format is whatever the client asks for when it connects.
+ * Plain clients run one session; clients that tag messages with session ids
+ * can run many interleaved sessions over the same connection.
+ */
+public class BlockingConnection implements Runnable {
+
+    private final Socket socket;
+    private final SessionDemux demux;
+    private final boolean showcase;
+    private MessageChannel channel;
+
+    public BlockingConnection(Socket socket, Supplier<ZKPSession> sessionFactory, boolean showcase) {
+        this(socket, new SessionDemux(sessionFactory), showcase);
+    }
+
+    public BlockingConnection(Socket socket, SessionDemux demux, boolean showcase) {
+        this.socket = socket;
+        this.demux = demux;
+        this.showcase = showcase;
+    }
+
+    // A connection for exactly one, already created session
+    public BlockingConnection(Socket socket, ZKPSession session, boolean showcase) {
+        this(socket, () -> session, showcase);
+    }
+
+    // Entry point when the connection runs on its own thread
+    @Override
+    public void run() {
+        try {
+            runProtocol();
+        } catch (IOException e) {
+            System.err.println("[connection " + socket.getRemoteSocketAddress() + "] I/O error: " + e.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    // Feed messages into the sessions until the single session has sent its result or the client leaves
+    public void runProtocol() throws IOException {
+        channel = MessageChannel.accept(socket);
+
+        while (!demux.isDone()) {
+            ProtocolMessage msg;
+            try {
+                msg = channel.receive();
+            } catch (Exception e) {
+                // A broken frame leaves the stream unusable for every session on it
+                sendAll(demux.failAll(e));
+                break;
+            }
+            if (msg == null) {
+                if (demux.hasOpenSessions() || !demux.isMultiplexed()) {
+                    demux.failAll(new IOException("Client disconnected"));
+                }
+                break;
+            }
+
+            ProtocolMessage reply = demux.handle(msg);
+            if (reply != null) {
+                channel.send(reply);
+            } else if (showcase) {
+                // Small delay between rounds for readability
+                pause(100);
+            }
+        }
+
+        if (demux.anyFailed()) {
+            pause(200); // Give client time to receive the failure result
+        }
+    }
+
+    private void sendAll(Iterable<ProtocolMessage> replies) throws IOException {
+        for (ProtocolMessage reply : replies) {
+            channel.send(reply);
+        }
+    }
+
+    private void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Close this connection's streams and socket
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("[connection " + socket.getRemoteSocketAddress() + "] Error closing connection: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package server;
+
+import common.EdgeIndex;
+import java.security.SecureRandom;
+
+/**
+ * Picks challenge edges uniformly from an EdgeIndex for one session.
+ *
+ * Challenges must stay unpredictable to the prover, so the randomness comes
+ * from SecureRandom rather than a fast PRNG whose state could be recovered
+ * from earlier challenges. Each sampler draws a block of bytes at a time into
+ * its own buffer, which keeps the shared SecureRandom off the per-round path
+ * and makes a draw allocation-free.
+ */
+public class ChallengeSampler {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int BUFFER_BYTES = 256;
+
+    private final EdgeIndex edges;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private int position = BUFFER_BYTES;
+
+    public ChallengeSampler(EdgeIndex edges) {
+        if (edges.size() == 0) {
+            throw new IllegalArgumentException("Graph has no edges to challenge");
+        }
+        this.edges = edges;
+    }
+
+    // Index of a uniformly chosen edge, in [0, edges.size())
+    public int nextEdge() {
+        int bound = edges.size();
+        // Rejection sampling over 31-bit values, as Random.nextInt(bound) does, so there is no modulo bias
+        int r = nextInt31();
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return r & m;
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = nextInt31()) {
+        }
+        return r;
+    }
+
+    public int from(int edge) {
+        return edges.from(edge);
+    }
+
+    public int to(int edge) {
+        return edges.to(edge);
+    }
+
+    private int nextInt31() {
+        if (position + 4 > BUFFER_BYTES) {
+            RANDOM.nextBytes(buffer);
+            position = 0;
+        }
+        int value = ((buffer[position] & 0x7F) << 24) | ((buffer[position + 1] & 0xFF) << 16)
+                  | ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+        position += 4;
+        return value;
+    }
+}
@@ -0,0 +1,252 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Session store in a directory that several server processes on one host
+ * share, two files per session. Sessions are locked across processes with
+ * byte-range locks on one lock file, striped like InMemorySessionStore;
+ * within a process the stripe's ReentrantLock is taken first, as file locks
+ * are held per process, not per thread.
+ *
+ * The state file is a log: each save appends the new state as a record with
+ * its length and CRC-32, and a load takes the last intact record, so a node
+ * that dies mid-save leaves the previous state in force. Once the log
+ * passes COMPACT_BYTES the next save rewrites it with the one record,
+ * through a temporary file renamed over it.
+ *
+ * The commitments file holds one record, overwritten in place. A session
+ * only writes commitments while its saved state does not refer to any, and
+ * saves the state that does afterwards, so a torn write is never read.
+ */
+public class FileSessionStore implements SessionStore {
+
+    private static final int STRIPES = 256;
+    private static final String LOCK_FILE = "sessions.lock";
+    private static final String EXTENSION = ".zks";
+    private static final String COMMITMENTS_EXTENSION = ".zkc";
+
+    // Record header: int length, int CRC-32 of the bytes that follow
+    private static final int RECORD_HEADER_BYTES = 8;
+    // States are a few hundred bytes, so this is hundreds of saves between rewrites
+    private static final long COMPACT_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public FileSessionStore(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE),
+                                            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public Lock lock(long sessionId) throws IOException {
+        int stripe = InMemorySessionStore.stripe(sessionId);
+        ReentrantLock local = locks[stripe];
+        local.lock();
+        FileLock fileLock;
+        try {
+            fileLock = lockChannel.lock(stripe, 1, false);
+        } catch (IOException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+        return () -> {
+            try {
+                fileLock.release();
+            } finally {
+                local.unlock();
+            }
+        };
+    }
+
+    @Override
+    public ByteBuffer load(long sessionId) throws IOException {
+        Path file = path(sessionId);
+        ByteBuffer log = readFile(file);
+        if (log == null || !log.hasRemaining()) {
+            return null;
+        }
+        ByteBuffer state = null;
+        ByteBuffer record;
+        while ((record = nextRecord(log)) != null) {
+            state = record;
+        }
+        if (state == null) {
+            throw new IOException("Session state is corrupt: " + file);
+        }
+        if (log.hasRemaining()) {
+            // A save that died half-way; cut it off so the next one appends after the last good record
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(log.position());
+            }
+        }
+        return state;
+    }
+
+    @Override
+    public void save(long sessionId, ByteBuffer state) throws IOException {
+        Path target = path(sessionId);
+        ByteBuffer record = record(state);
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.APPEND)) {
+            if (channel.size() + record.remaining() <= COMPACT_BYTES) {
+                writeFully(channel, record);
+                return;
+            }
+        }
+        Path partial = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, record);
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public ByteBuffer loadCommitments(long sessionId) throws IOException {
+        Path file = commitmentsPath(sessionId);
+        ByteBuffer saved = readFile(file);
+        if (saved == null) {
+            return null;
+        }
+        ByteBuffer commitments = nextRecord(saved);
+        if (commitments == null || saved.hasRemaining()) {
+            throw new IOException("Session commitments are corrupt: " + file);
+        }
+        return commitments;
+    }
+
+    @Override
+    public void saveCommitments(long sessionId, ByteBuffer commitments) throws IOException {
+        ByteBuffer record = record(commitments);
+        try (FileChannel channel = FileChannel.open(commitmentsPath(sessionId), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE)) {
+            long size = record.remaining();
+            writeFully(channel, record);
+            channel.truncate(size);
+        }
+    }
+
+    @Override
+    public void remove(long sessionId) throws IOException {
+        Files.deleteIfExists(path(sessionId));
+        Files.deleteIfExists(commitmentsPath(sessionId));
+    }
+
+    @Override
+    @SuppressWarnings("try")
+    public int purge(long idleMillis) throws IOException {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        int purged = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                long sessionId;
+                try {
+                    String name = file.getFileName().toString();
+                    sessionId = Long.parseUnsignedLong(name.substring(0, name.length() - EXTENSION.length()), 16);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                try (Lock lock = lock(sessionId)) {
+                    // Another node may have saved it since the listing
+                    if (Files.getLastModifiedTime(file).to(TimeUnit.MILLISECONDS) < cutoff && Files.deleteIfExists(file)) {
+                        Files.deleteIfExists(commitmentsPath(sessionId));
+                        purged++;
+                    }
+                } catch (NoSuchFileException ignored) {
+                }
+            }
+        }
+        return purged;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lockChannel.close();
+    }
+
+    private Path path(long sessionId) {
+        return directory.resolve(String.format("%016x", sessionId) + EXTENSION);
+    }
+
+    private Path commitmentsPath(long sessionId) {
+        return directory.resolve(String.format("%016x", sessionId) + COMMITMENTS_EXTENSION);
+    }
+
+    // The whole file, or null if there is none
+    private static ByteBuffer readFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Session file too large: " + file);
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    throw new IOException("Session file truncated: " + file);
+                }
+            }
+            bytes.flip();
+            return bytes;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer record(ByteBuffer bytes) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + bytes.remaining());
+        record.putInt(bytes.remaining());
+        record.putInt(crc(bytes.duplicate()));
+        record.put(bytes.duplicate());
+        record.flip();
+        return record;
+    }
+
+    // The next intact record's bytes, moving past it, or null at the end or at a torn record
+    private static ByteBuffer nextRecord(ByteBuffer in) {
+        if (in.remaining() < RECORD_HEADER_BYTES) {
+            return null;
+        }
+        int length = in.getInt(in.position());
+        int crc = in.getInt(in.position() + 4);
+        if (length < 0 || length > in.remaining() - RECORD_HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer bytes = in.duplicate();
+        bytes.position(in.position() + RECORD_HEADER_BYTES).limit(in.position() + RECORD_HEADER_BYTES + length);
+        if (crc(bytes.duplicate()) != crc) {
+            return null;
+        }
+        in.position(bytes.limit());
+        return bytes.slice();
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
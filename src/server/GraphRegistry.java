@@ -0,0 +1,185 @@
+package server;
+
+import common.GraphFile;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The graphs a server can verify, keyed by fingerprint.
+ *
+ * Graph files live in one directory as <fingerprint>.zkg (see main to add
+ * them). A graph is mapped the first time a prover names it, its edge index
+ * and fingerprint are built once, and every session on it shares that one
+ * ServedGraph. Loaded graphs are kept in least-recently-used order and the
+ * coldest are dropped once their footprint exceeds the memory budget;
+ * sessions still running on a dropped graph keep it until they finish.
+ * Pinned graphs, such as the server's default graph, are never dropped.
+ *
+ * A load runs on the thread that first asks for the graph; other threads
+ * asking for the same graph wait for that load instead of repeating it.
+ */
+public class GraphRegistry {
+
+    public static final String EXTENSION = ".zkg";
+    public static final long DEFAULT_MEMORY_BUDGET = 1L << 30;
+
+    // Fingerprints are lower-case SHA-256 hex, which also keeps names inside the directory
+    private static final Pattern FINGERPRINT = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path directory;
+    private final long memoryBudget;
+    private final Map<String, ServedGraph> pinned = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private final LinkedHashMap<String, ServedGraph> loaded = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<ServedGraph>> loading = new HashMap<>();
+    private long loadedBytes;
+    private long loads;
+    private long evictions;
+
+    // directory may be null for a registry of pinned graphs only
+    public GraphRegistry(Path directory, long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        this.directory = directory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    // Keep this graph available for the registry's lifetime
+    public void pin(ServedGraph graph) {
+        pinned.put(graph.getFingerprint(), graph);
+    }
+
+    /**
+     * The graph with this fingerprint, loading it if needed,
+     * or null when the registry has no such graph.
+     */
+    public ServedGraph get(String fingerprint) throws IOException {
+        ServedGraph graph = pinned.get(fingerprint);
+        if (graph != null) {
+            return graph;
+        }
+        if (directory == null || fingerprint == null || !FINGERPRINT.matcher(fingerprint).matches()) {
+            return null;
+        }
+
+        CompletableFuture<ServedGraph> load;
+        boolean owner = false;
+        synchronized (this) {
+            graph = loaded.get(fingerprint);
+            if (graph != null) {
+                return graph;
+            }
+            load = loading.get(fingerprint);
+            if (load == null) {
+                load = new CompletableFuture<>();
+                loading.put(fingerprint, load);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            // Map and index outside the lock, lookups of other graphs carry on meanwhile
+            try {
+                graph = load(fingerprint);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    loading.remove(fingerprint);
+                }
+                load.completeExceptionally(e);
+                throw e;
+            }
+            synchronized (this) {
+                loading.remove(fingerprint);
+                if (graph != null) {
+                    admit(graph);
+                }
+            }
+            load.complete(graph);
+            return graph;
+        }
+
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw new IOException("Could not load graph " + fingerprint, e.getCause());
+        }
+    }
+
+    public synchronized int getLoadedCount() {
+        return loaded.size();
+    }
+
+    public synchronized long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    public synchronized long getLoads() {
+        return loads;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    private ServedGraph load(String fingerprint) throws IOException {
+        Path path = directory.resolve(fingerprint + EXTENSION);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        ServedGraph graph = ServedGraph.of(GraphFile.open(path));
+        if (!graph.getFingerprint().equals(fingerprint)) {
+            throw new IOException("Graph file " + path + " has fingerprint " + graph.getFingerprint());
+        }
+        return graph;
+    }
+
+    // Add a freshly loaded graph and drop the coldest others while over budget
+    private void admit(ServedGraph graph) {
+        loaded.put(graph.getFingerprint(), graph);
+        loadedBytes += graph.getFootprintBytes();
+        loads++;
+        Iterator<ServedGraph> coldest = loaded.values().iterator();
+        while (loadedBytes > memoryBudget && loaded.size() > 1) {
+            ServedGraph evicted = coldest.next();
+            coldest.remove();
+            loadedBytes -= evicted.getFootprintBytes();
+            evictions++;
+        }
+    }
+
+    // Copy graph files into a registry directory under their fingerprints
+    public static void main(String[] args) {
+        try {
+            if (args.length < 2) {
+                System.err.println("Usage: GraphRegistry <registry-dir> <graph.zkg>...");
+                return;
+            }
+            Path directory = Files.createDirectories(Paths.get(args[0]));
+            for (int i = 1; i < args.length; i++) {
+                Path source = Paths.get(args[i]);
+                // Checked in full once here, so the servers can map it without a scan
+                String fingerprint = GraphFile.open(source, true).fingerprint();
+                Path target = directory.resolve(fingerprint + EXTENSION);
+                // Copy then rename, a server may have the old file mapped
+                Path partial = directory.resolve(fingerprint + EXTENSION + ".tmp");
+                Files.copy(source, partial, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                System.out.println(source + " -> " + target);
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
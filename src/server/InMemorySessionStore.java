@@ -0,0 +1,112 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Session store inside one JVM. Sessions survive their connection, so a
+ * prover can continue on a new connection or on another server of the same
+ * process, but not a restart; use FileSessionStore for that.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+    // Lock stripes, sessions with the same stripe wait for each other
+    private static final int STRIPES = 256;
+
+    private static final class Entry {
+        final byte[] state;
+        final long savedAtNanos = System.nanoTime();
+
+        Entry(byte[] state) {
+            this.state = state;
+        }
+    }
+
+    private final Map<Long, Entry> sessions = new ConcurrentHashMap<>();
+    private final Map<Long, byte[]> commitments = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    public InMemorySessionStore() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Lock lock(long sessionId) {
+        ReentrantLock lock = locks[stripe(sessionId)];
+        lock.lock();
+        return lock::unlock;
+    }
+
+    @Override
+    public ByteBuffer load(long sessionId) {
+        Entry entry = sessions.get(sessionId);
+        return entry != null ? ByteBuffer.wrap(entry.state).asReadOnlyBuffer() : null;
+    }
+
+    @Override
+    public void save(long sessionId, ByteBuffer state) {
+        byte[] copy = new byte[state.remaining()];
+        state.duplicate().get(copy);
+        sessions.put(sessionId, new Entry(copy));
+    }
+
+    @Override
+    public ByteBuffer loadCommitments(long sessionId) {
+        byte[] saved = commitments.get(sessionId);
+        return saved != null ? ByteBuffer.wrap(saved).asReadOnlyBuffer() : null;
+    }
+
+    @Override
+    public void saveCommitments(long sessionId, ByteBuffer commitments) {
+        byte[] copy = new byte[commitments.remaining()];
+        commitments.duplicate().get(copy);
+        this.commitments.put(sessionId, copy);
+    }
+
+    @Override
+    public void remove(long sessionId) {
+        sessions.remove(sessionId);
+        commitments.remove(sessionId);
+    }
+
+    @Override
+    public int purge(long idleMillis) {
+        long now = System.nanoTime();
+        int purged = 0;
+        for (Map.Entry<Long, Entry> session : sessions.entrySet()) {
+            if (now - session.getValue().savedAtNanos <= idleMillis * 1_000_000L) {
+                continue;
+            }
+            // Held so the commitments go with their state, not with a session saved again meanwhile
+            ReentrantLock lock = locks[stripe(session.getKey())];
+            lock.lock();
+            try {
+                if (sessions.remove(session.getKey(), session.getValue())) {
+                    commitments.remove(session.getKey());
+                    purged++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return purged;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        sessions.clear();
+        commitments.clear();
+    }
+
+    static int stripe(long sessionId) {
+        return (int) ((sessionId ^ (sessionId >>> 32)) & (STRIPES - 1));
+    }
+}
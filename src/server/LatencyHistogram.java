@@ -0,0 +1,86 @@
+package server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with power-of-two nanosecond buckets from about 1 us to
+ * about 69 s. Every bucket is a LongAdder, so concurrent sessions recording
+ * at once update separate cells instead of contending on one counter.
+ */
+public class LatencyHistogram {
+
+    // Bucket i counts samples up to 2^(i + MIN_SHIFT) ns; the last bucket is everything above
+    static final int MIN_SHIFT = 10;
+    static final int BUCKETS = 27;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        // Smallest i with nanos <= 2^(i + MIN_SHIFT)
+        int bucket = nanos <= (1L << MIN_SHIFT) ? 0 : 64 - Long.numberOfLeadingZeros(nanos - 1) - MIN_SHIFT;
+        counts[Math.min(bucket, BUCKETS)].increment();
+        sumNanos.add(nanos);
+    }
+
+    // Upper bound of bucket i in nanoseconds, or Long.MAX_VALUE for the overflow bucket
+    static long upperBoundNanos(int bucket) {
+        return bucket < BUCKETS ? 1L << (bucket + MIN_SHIFT) : Long.MAX_VALUE;
+    }
+
+    // Per-bucket counts; each adder is read once, so the copy may straddle concurrent records
+    public long[] snapshot() {
+        long[] snapshot = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            snapshot[i] = counts[i].sum();
+        }
+        return snapshot;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    public double getMeanMicros() {
+        long count = getCount();
+        return count == 0 ? 0 : getSumNanos() / 1000.0 / count;
+    }
+
+    // Upper bound of the bucket holding the given quantile, in microseconds
+    public double getQuantileMicros(double quantile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long c : snapshot) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return i < BUCKETS ? upperBoundNanos(i) / 1000.0 : Double.POSITIVE_INFINITY;
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,50 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Plain-text scrape endpoint serving ServerMetrics at /metrics.
+ * Binds to the loopback address only; put a proxy in front to expose it.
+ */
+public class MetricsEndpoint {
+
+    private final HttpServer httpServer;
+
+    private MetricsEndpoint(HttpServer httpServer) {
+        this.httpServer = httpServer;
+    }
+
+    public static MetricsEndpoint start(ServerMetrics metrics, int port) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", exchange -> serve(exchange, metrics));
+        httpServer.start();
+        System.out.println("Metrics at http://localhost:" + httpServer.getAddress().getPort() + "/metrics");
+        return new MetricsEndpoint(httpServer);
+    }
+
+    private static void serve(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public void stop() {
+        httpServer.stop(0);
+    }
+}
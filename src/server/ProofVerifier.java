@@ -0,0 +1,141 @@
+package server;
+
+import common.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Offline verifier for Fiat-Shamir proofs. Needs no session or socket, so
+ * stored proofs can be checked in bulk on every available core.
+ *
+ * A proof must carry at least minRounds rounds. The challenges come from a
+ * hash the prover can evaluate as often as it likes, so a short proof could
+ * be ground until no bad edge is picked; FiatShamir.requiredRounds covers
+ * that on top of the soundness target.
+ *
+ * Usage: ProofVerifier [--graph file.zkg] [--soundness bits | --min-rounds N] <proof-file>...
+ */
+public class ProofVerifier {
+
+    // Check one proof against the graph it claims to be about
+    public static ResultMessage verify(GraphView graph, NonInteractiveProof proof, int minRounds) {
+        String fingerprint = graph.fingerprint();
+        if (!fingerprint.equals(proof.getGraphFingerprint())) {
+            return new ResultMessage(false, "Proof is for a different graph", 0);
+        }
+        return verify(graph, fingerprint, graph.getCanonicalEdges(), proof, minRounds);
+    }
+
+    // Check many proofs for the same graph in parallel
+    public static List<ResultMessage> verifyAll(GraphView graph, List<NonInteractiveProof> proofs, int minRounds) {
+        String fingerprint = graph.fingerprint();
+        List<int[]> edges = graph.getCanonicalEdges();
+        return proofs.parallelStream()
+            .map(proof -> fingerprint.equals(proof.getGraphFingerprint())
+                ? verify(graph, fingerprint, edges, proof, minRounds)
+                : new ResultMessage(false, "Proof is for a different graph", 0))
+            .collect(Collectors.toList());
+    }
+
+    private static ResultMessage verify(GraphView graph, String fingerprint, List<int[]> edges,
+                                        NonInteractiveProof proof, int minRounds) {
+        List<List<String>> commitmentSets = proof.getCommitmentSets();
+        List<RevealMessage> reveals = proof.getReveals();
+        if (commitmentSets.isEmpty() || reveals.size() != commitmentSets.size()) {
+            return new ResultMessage(false, "Malformed proof", 0);
+        }
+        if (commitmentSets.size() < Math.max(1, minRounds)) {
+            return new ResultMessage(false, "Proof has " + commitmentSets.size() + " rounds, at least "
+                                     + minRounds + " are required", commitmentSets.size());
+        }
+
+        // Recompute the challenges; the prover had no say in them
+        List<int[]> challenges;
+        try {
+            challenges = FiatShamir.deriveChallenges(fingerprint, commitmentSets, edges);
+        } catch (IllegalArgumentException e) {
+            return new ResultMessage(false, "Malformed proof: " + e.getMessage(), 0);
+        }
+        Set<String> revealedColours = new HashSet<>();
+        List<Boolean> verdicts = new ArrayList<>();
+        String failure = null;
+
+        for (int i = 0; i < reveals.size(); i++) {
+            List<String> commitments = commitmentSets.get(i);
+            RevealMessage reveal = reveals.get(i);
+            int[] edge = challenges.get(i);
+
+            boolean valid = commitments.size() == graph.getNumVertices()
+                && CryptoUtils.verifyCommitment(commitments.get(edge[0]), reveal.getColour1(), reveal.getNonce1())
+                && CryptoUtils.verifyCommitment(commitments.get(edge[1]), reveal.getColour2(), reveal.getNonce2());
+            if (valid && reveal.getColour1().equals(reveal.getColour2())) {
+                valid = false;
+                if (failure == null) failure = "FAILURE CASE 1: Adjacent vertices have same colour!";
+            }
+            if (!valid && failure == null) {
+                failure = "Commitment verification failed in round " + (i + 1);
+            }
+            verdicts.add(valid);
+
+            revealedColours.add(reveal.getColour1());
+            revealedColours.add(reveal.getColour2());
+        }
+
+        if (revealedColours.size() > 3) {
+            failure = "FAILURE CASE 2: Used " + revealedColours.size() + " colours instead of 3!";
+        }
+        if (failure != null) {
+            return new ResultMessage(false, failure, reveals.size(), verdicts);
+        }
+        return new ResultMessage(true, "Verification successful! Proof shows a valid 3-colouring.", reveals.size(), verdicts);
+    }
+
+    public static void main(String[] args) {
+        try {
+            List<String> files = new ArrayList<>();
+            String graphFile = null;
+            double soundnessBits = RoundScheduler.DEFAULT_SOUNDNESS_BITS;
+            int minRounds = -1;
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--graph") && i + 1 < args.length) {
+                    graphFile = args[++i];
+                } else if (args[i].equals("--soundness") && i + 1 < args.length) {
+                    soundnessBits = Double.parseDouble(args[++i]);
+                } else if (args[i].equals("--min-rounds") && i + 1 < args.length) {
+                    minRounds = Integer.parseInt(args[++i]);
+                } else {
+                    files.add(args[i]);
+                }
+            }
+            if (files.isEmpty()) {
+                System.err.println("Usage: ProofVerifier [--graph file.zkg] [--soundness bits | --min-rounds N] <proof-file>...");
+                return;
+            }
+
+            GraphView graph = graphFile != null ? GraphFile.open(Paths.get(graphFile)) : Graph.createSampleGraph();
+            if (minRounds < 0) {
+                minRounds = FiatShamir.requiredRounds(graph, soundnessBits);
+            }
+            List<NonInteractiveProof> proofs = new ArrayList<>();
+            for (String file : files) {
+                String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+                proofs.add(NonInteractiveProof.fromJSON(json));
+            }
+
+            System.out.println("Zero-Knowledge Proof - Offline Verifier");
+            System.out.println("Graph " + graph.fingerprint() + ", at least " + minRounds + " rounds per proof");
+            List<ResultMessage> results = verifyAll(graph, proofs, minRounds);
+            for (int i = 0; i < files.size(); i++) {
+                ResultMessage result = results.get(i);
+                System.out.println(files.get(i) + ": " + (result.isVerified() ? "VERIFIED" : "FAILED") +
+                                   " (" + result.getTotalRounds() + " rounds) " + result.getMessage());
+            }
+
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package server;
+
+import common.EdgeIndex;
+import common.GraphView;
+
+/**
+ * A graph as the verifier serves it: the graph itself plus what every
+ * session needs from it, computed once and shared by all sessions on it.
+ * Nothing here changes after construction.
+ */
+public final class ServedGraph {
+
+    private final GraphView graph;
+    private final EdgeIndex edgeIndex;
+    private final String fingerprint;
+    private final long footprintBytes;
+
+    private ServedGraph(GraphView graph, EdgeIndex edgeIndex, String fingerprint) {
+        this.graph = graph;
+        this.edgeIndex = edgeIndex;
+        this.fingerprint = fingerprint;
+        // CSR offsets and both directions of every edge, plus the edge index's two arrays
+        this.footprintBytes = 4L * (graph.getNumVertices() + 1) + 16L * edgeIndex.size();
+    }
+
+    // Builds the edge index and the fingerprint, O(edges), unless the graph stores them as a GraphFile does
+    public static ServedGraph of(GraphView graph) {
+        EdgeIndex edgeIndex = graph.getEdgeIndex();
+        if (edgeIndex.size() == 0) {
+            throw new IllegalArgumentException("Graph has no edges to challenge");
+        }
+        return new ServedGraph(graph, edgeIndex, graph.fingerprint());
+    }
+
+    public GraphView getGraph() {
+        return graph;
+    }
+
+    public EdgeIndex getEdgeIndex() {
+        return edgeIndex;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public int getNumVertices() {
+        return graph.getNumVertices();
+    }
+
+    // Approximate memory held by the graph and its index, for the registry's budget
+    public long getFootprintBytes() {
+        return footprintBytes;
+    }
+}
@@ -0,0 +1,247 @@
+package server;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Verifier counters and latency histograms, shared by every session of a server.
+ * Recording only touches LongAdders, so it is safe from any session thread
+ * and cheap enough for the round loop. Read through JMX or as Prometheus text.
+ *
+ * Phases are timed from the verifier's side: commit receive is the wait from
+ * the previous reply until the prover's commitments arrive, reveal receive the
+ * wait from the challenge until the reveal arrives, verify the time spent
+ * checking one round's reveal.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+    private final LongAdder sessionsStarted = new LongAdder();
+    private final LongAdder sessionsVerified = new LongAdder();
+    private final LongAdder failedSameColour = new LongAdder();
+    private final LongAdder failedTooManyColours = new LongAdder();
+    private final LongAdder failedError = new LongAdder();
+    private final LongAdder roundsCompleted = new LongAdder();
+    private final LongAdder verdictCacheHits = new LongAdder();
+    private final LongAdder verdictCacheMisses = new LongAdder();
+    private final LongAdder verdictCacheEvictions = new LongAdder();
+    private final LongAdder verdictCacheExpirations = new LongAdder();
+
+    private final LatencyHistogram commitReceive = new LatencyHistogram();
+    private final LatencyHistogram revealReceive = new LatencyHistogram();
+    private final LatencyHistogram verify = new LatencyHistogram();
+
+    // Rounds-per-second window, only touched by readers
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleRounds;
+    private double roundsPerSecond;
+
+    public void sessionStarted() {
+        sessionsStarted.increment();
+    }
+
+    public void sessionVerified() {
+        sessionsVerified.increment();
+    }
+
+    // failureType as set by ZKPSession, null for commitment mismatches and protocol errors
+    public void sessionFailed(String failureType) {
+        if ("FAILURE_CASE_1_SAME_COLOR".equals(failureType)) {
+            failedSameColour.increment();
+        } else if ("FAILURE_CASE_2_TOO_MANY_COLORS".equals(failureType)) {
+            failedTooManyColours.increment();
+        } else {
+            failedError.increment();
+        }
+    }
+
+    public void roundCompleted() {
+        roundsCompleted.increment();
+    }
+
+    public void verdictCacheHit() {
+        verdictCacheHits.increment();
+    }
+
+    public void verdictCacheMiss() {
+        verdictCacheMisses.increment();
+    }
+
+    public void verdictCacheEviction() {
+        verdictCacheEvictions.increment();
+    }
+
+    public void verdictCacheExpiration() {
+        verdictCacheExpirations.increment();
+    }
+
+    public void recordCommitReceive(long nanos) {
+        commitReceive.record(nanos);
+    }
+
+    public void recordRevealReceive(long nanos) {
+        revealReceive.record(nanos);
+    }
+
+    public void recordVerify(long nanos) {
+        verify.record(nanos);
+    }
+
+    // Register with the platform MBean server under zkp:type=ServerMetrics,port=N
+    public void register(int port) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("zkp:type=ServerMetrics,port=" + port);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public long getSessionsStarted() {
+        return sessionsStarted.sum();
+    }
+
+    public long getSessionsActive() {
+        return getSessionsStarted() - getSessionsVerified()
+             - getSessionsFailedSameColour() - getSessionsFailedTooManyColours() - getSessionsFailedError();
+    }
+
+    public long getSessionsVerified() {
+        return sessionsVerified.sum();
+    }
+
+    public long getSessionsFailedSameColour() {
+        return failedSameColour.sum();
+    }
+
+    public long getSessionsFailedTooManyColours() {
+        return failedTooManyColours.sum();
+    }
+
+    public long getSessionsFailedError() {
+        return failedError.sum();
+    }
+
+    public long getRoundsCompleted() {
+        return roundsCompleted.sum();
+    }
+
+    public long getVerdictCacheHits() {
+        return verdictCacheHits.sum();
+    }
+
+    public long getVerdictCacheMisses() {
+        return verdictCacheMisses.sum();
+    }
+
+    public long getVerdictCacheEvictions() {
+        return verdictCacheEvictions.sum();
+    }
+
+    public long getVerdictCacheExpirations() {
+        return verdictCacheExpirations.sum();
+    }
+
+    // Rate over the window since the last reading at least a second ago
+    public synchronized double getRoundsPerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - rateSampleNanos;
+        if (elapsed >= 1_000_000_000L) {
+            long rounds = roundsCompleted.sum();
+            roundsPerSecond = (rounds - rateSampleRounds) * 1e9 / elapsed;
+            rateSampleNanos = now;
+            rateSampleRounds = rounds;
+        }
+        return roundsPerSecond;
+    }
+
+    public double getCommitReceiveMeanMicros() {
+        return commitReceive.getMeanMicros();
+    }
+
+    public double getCommitReceiveP99Micros() {
+        return commitReceive.getQuantileMicros(0.99);
+    }
+
+    public double getRevealReceiveMeanMicros() {
+        return revealReceive.getMeanMicros();
+    }
+
+    public double getRevealReceiveP99Micros() {
+        return revealReceive.getQuantileMicros(0.99);
+    }
+
+    public double getVerifyMeanMicros() {
+        return verify.getMeanMicros();
+    }
+
+    public double getVerifyP99Micros() {
+        return verify.getQuantileMicros(0.99);
+    }
+
+    // Prometheus text exposition format 0.0.4
+    public String toPrometheusText() {
+        StringBuilder sb = new StringBuilder();
+        counter(sb, "zkp_sessions_started_total", "Verification sessions started", getSessionsStarted());
+        gauge(sb, "zkp_sessions_active", "Sessions started but not yet finished", getSessionsActive());
+        counter(sb, "zkp_sessions_verified_total", "Sessions that ended with a successful verification", getSessionsVerified());
+
+        sb.append("# HELP zkp_sessions_failed_total Sessions that ended with a failed verification\n");
+        sb.append("# TYPE zkp_sessions_failed_total counter\n");
+        sb.append("zkp_sessions_failed_total{reason=\"same_color\"} ").append(getSessionsFailedSameColour()).append('\n');
+        sb.append("zkp_sessions_failed_total{reason=\"too_many_colors\"} ").append(getSessionsFailedTooManyColours()).append('\n');
+        sb.append("zkp_sessions_failed_total{reason=\"error\"} ").append(getSessionsFailedError()).append('\n');
+
+        counter(sb, "zkp_rounds_total", "Rounds that passed verification", getRoundsCompleted());
+
+        sb.append("# HELP zkp_verdict_cache_lookups_total Verdict cache lookups by provers that sent HELLO\n");
+        sb.append("# TYPE zkp_verdict_cache_lookups_total counter\n");
+        sb.append("zkp_verdict_cache_lookups_total{result=\"hit\"} ").append(getVerdictCacheHits()).append('\n');
+        sb.append("zkp_verdict_cache_lookups_total{result=\"miss\"} ").append(getVerdictCacheMisses()).append('\n');
+        sb.append("# HELP zkp_verdict_cache_removals_total Cached verdicts dropped for space or age\n");
+        sb.append("# TYPE zkp_verdict_cache_removals_total counter\n");
+        sb.append("zkp_verdict_cache_removals_total{reason=\"evicted\"} ").append(getVerdictCacheEvictions()).append('\n');
+        sb.append("zkp_verdict_cache_removals_total{reason=\"expired\"} ").append(getVerdictCacheExpirations()).append('\n');
+
+        sb.append("# HELP zkp_phase_seconds Verifier latency per protocol phase\n");
+        sb.append("# TYPE zkp_phase_seconds histogram\n");
+        histogram(sb, "commit_receive", commitReceive);
+        histogram(sb, "reveal_receive", revealReceive);
+        histogram(sb, "verify", verify);
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder sb, String phase, LatencyHistogram histogram) {
+        long[] counts = histogram.snapshot();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < LatencyHistogram.BUCKETS
+                ? Double.toString(LatencyHistogram.upperBoundNanos(i) / 1e9)
+                : "+Inf";
+            sb.append("zkp_phase_seconds_bucket{phase=\"").append(phase).append("\",le=\"").append(le).append("\"} ")
+              .append(cumulative).append('\n');
+        }
+        sb.append("zkp_phase_seconds_sum{phase=\"").append(phase).append("\"} ")
+          .append(String.format(Locale.ROOT, "%.9f", histogram.getSumNanos() / 1e9)).append('\n');
+        sb.append("zkp_phase_seconds_count{phase=\"").append(phase).append("\"} ").append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,44 @@
+package server;
+
+/**
+ * JMX view of ServerMetrics, registered as zkp:type=ServerMetrics,port=N.
+ * Latencies are in microseconds.
+ */
+public interface ServerMetricsMBean {
+
+    long getSessionsStarted();
+
+    long getSessionsActive();
+
+    long getSessionsVerified();
+
+    long getSessionsFailedSameColour();
+
+    long getSessionsFailedTooManyColours();
+
+    long getSessionsFailedError();
+
+    long getRoundsCompleted();
+
+    long getVerdictCacheHits();
+
+    long getVerdictCacheMisses();
+
+    long getVerdictCacheEvictions();
+
+    long getVerdictCacheExpirations();
+
+    double getRoundsPerSecond();
+
+    double getCommitReceiveMeanMicros();
+
+    double getCommitReceiveP99Micros();
+
+    double getRevealReceiveMeanMicros();
+
+    double getRevealReceiveP99Micros();
+
+    double getVerifyMeanMicros();
+
+    double getVerifyP99Micros();
+}
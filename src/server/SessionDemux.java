@@ -0,0 +1,209 @@
+package server;
+
+import common.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Routes the messages of one connection to per-session state.
+ *
+ * A client that never sets a session id gets exactly one session, and the
+ * connection is done once that session has sent its result, as before.
+ * A client that tags messages with session ids can interleave any number of
+ * proofs: the first message with a new id opens a session, replies carry the
+ * id back, and the connection stays open until the client closes it.
+ * Only the connection's own thread calls into this class.
+ *
+ * With a SessionStore, tagged sessions are not kept here at all: each message
+ * loads its session from the store, and the session is saved back before the
+ * reply goes out. The prover may then send its next message over another
+ * connection, to any server sharing the store, and a connection that drops
+ * leaves its sessions open for the prover to resume. Untagged sessions stay
+ * on their connection as before.
+ */
+public class SessionDemux {
+
+    // Open sessions one connection may hold, so a single client cannot exhaust the server
+    public static final int MAX_OPEN_SESSIONS = 1024;
+
+    /**
+     * Where sessions kept in a SessionStore come from.
+     */
+    public interface StoredSessions {
+        // A new session under the prover's session id
+        ZKPSession create(long sessionId);
+
+        // A session saved by ZKPSession.snapshot(), with its commitments or null, see ZKPSession.restore
+        ZKPSession restore(ByteBuffer state, ByteBuffer commitments) throws IOException;
+    }
+
+    private final Supplier<ZKPSession> sessionFactory;
+    private final SessionStore store;
+    private final StoredSessions storedSessions;
+    private final Map<Long, ZKPSession> sessions = new HashMap<>();
+
+    // Recently finished ids, so a message that crossed the result on the wire
+    // is dropped instead of opening a new session under the old id
+    private final Set<Long> finished = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_OPEN_SESSIONS;
+        }
+    });
+    private boolean multiplexed;
+    private boolean singleFinished;
+    private boolean anyFailed;
+    private boolean broken;
+
+    public SessionDemux(Supplier<ZKPSession> sessionFactory) {
+        this(sessionFactory, null, null);
+    }
+
+    // Keep tagged sessions in store instead of on this connection, store may be null
+    public SessionDemux(Supplier<ZKPSession> sessionFactory, SessionStore store, StoredSessions storedSessions) {
+        this.sessionFactory = sessionFactory;
+        this.store = store;
+        this.storedSessions = storedSessions;
+    }
+
+    /**
+     * Hand a message to its session. Returns the reply, tagged with the
+     * session id, or null if nothing is due yet.
+     */
+    public ProtocolMessage handle(ProtocolMessage msg) {
+        long id = msg.getSessionId();
+        if (id != 0) {
+            multiplexed = true;
+            if (store != null) {
+                return handleStored(id, msg);
+            }
+        }
+        ZKPSession session = sessions.get(id);
+        if (session == null) {
+            if ((id == 0 && singleFinished) || finished.contains(id)) {
+                // Late message after this session's result
+                msg.release();
+                return null;
+            }
+            if (sessions.size() >= MAX_OPEN_SESSIONS) {
+                msg.release();
+                ProtocolMessage refusal = new ResultMessage(false,
+                    "Too many open sessions on this connection (limit " + MAX_OPEN_SESSIONS + ")", 0);
+                refusal.setSessionId(id);
+                return refusal;
+            }
+            session = sessionFactory.get();
+            sessions.put(id, session);
+        }
+        return finish(id, session, session.handle(msg));
+    }
+
+    // Load, advance and save one stored session, holding it against every other connection and server
+    @SuppressWarnings("try")
+    private ProtocolMessage handleStored(long id, ProtocolMessage msg) {
+        ZKPSession session = null;
+        ProtocolMessage reply = null;
+        boolean handled = false;
+        try (SessionStore.Lock lock = store.lock(id)) {
+            ByteBuffer state = store.load(id);
+            if (state != null) {
+                // Only a session waiting for reveals reads its commitments back
+                ByteBuffer commitments = ZKPSession.needsCommitments(state) ? store.loadCommitments(id) : null;
+                session = storedSessions.restore(state, commitments);
+            } else {
+                session = storedSessions.create(id);
+            }
+            if (session.isFinished()) {
+                // Late message after this session's result, which may have come from another server
+                msg.release();
+                return null;
+            }
+            handled = true;
+            reply = session.handle(msg);
+            // Commitments first, so a saved state never refers to commitments that are not there
+            if (session.commitmentsChanged()) {
+                store.saveCommitments(id, session.snapshotCommitments());
+            }
+            // Finished sessions stay in the store until purged, so late messages find them finished
+            store.save(id, session.snapshot());
+        } catch (IOException e) {
+            System.err.println("[session " + id + "] Session store error: " + e.getMessage());
+            if (!handled) {
+                // The store failed before the session took the message
+                msg.release();
+            }
+            if (session == null) {
+                reply = new ResultMessage(false, "Session state unavailable: " + e.getMessage(), 0);
+            } else if (!session.isFinished()) {
+                // The store does not have this step, so the prover must not take the next one
+                reply = session.fail(e);
+            }
+        } finally {
+            if (session != null) {
+                session.release();
+            }
+        }
+        if (reply != null) {
+            reply.setSessionId(id);
+        }
+        if (session == null || session.isFinished()) {
+            anyFailed |= session == null || !session.isVerified();
+        }
+        return reply;
+    }
+
+    /**
+     * The connection failed: fail every open session. Returns their results,
+     * which the caller may still try to send. The demux is done afterwards.
+     */
+    public List<ProtocolMessage> failAll(Exception e) {
+        if (sessions.isEmpty() && !multiplexed && !singleFinished) {
+            // A plain client that failed before its first message still gets its result
+            sessions.put(0L, sessionFactory.get());
+        }
+        broken = true;
+        List<ProtocolMessage> replies = new ArrayList<>();
+        for (Map.Entry<Long, ZKPSession> entry : new ArrayList<>(sessions.entrySet())) {
+            ProtocolMessage reply = finish(entry.getKey(), entry.getValue(), entry.getValue().fail(e));
+            if (reply != null) {
+                replies.add(reply);
+            }
+        }
+        return replies;
+    }
+
+    private ProtocolMessage finish(long id, ZKPSession session, ProtocolMessage reply) {
+        if (reply != null) {
+            reply.setSessionId(id);
+        }
+        if (session.isFinished()) {
+            sessions.remove(id);
+            finished.add(id);
+            anyFailed |= !session.isVerified();
+            if (id == 0) {
+                singleFinished = true;
+            }
+        }
+        return reply;
+    }
+
+    // An unmultiplexed connection is done after its one result, a multiplexed one when
+    // the client closes it; either is done once the connection has failed
+    public boolean isDone() {
+        return broken || (!multiplexed && singleFinished);
+    }
+
+    public boolean hasOpenSessions() {
+        return !sessions.isEmpty();
+    }
+
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    public boolean anyFailed() {
+        return anyFailed;
+    }
+}
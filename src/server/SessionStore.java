@@ -0,0 +1,50 @@
+package server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Where verifier nodes keep the state of multiplexed proof sessions
+ * between messages, so that any node sharing the store can handle the
+ * next message of any session, and a restarted node loses no proofs.
+ *
+ * Sessions are keyed by the session id the prover tags its messages with,
+ * which provers pick at random so that ids do not collide across clients.
+ * States are ZKPSession snapshots; the store treats them as opaque bytes.
+ * A session's commitments, one digest per vertex, are kept apart from its
+ * state: the state changes with every message but stays small, while the
+ * commitments are written once per round, before the state that needs them.
+ */
+public interface SessionStore extends Closeable {
+
+    /**
+     * Exclusive hold on one session, across every node sharing the store.
+     */
+    interface Lock extends Closeable {
+        @Override
+        void close() throws IOException;
+    }
+
+    // Wait until no other thread or node holds this session, then hold it
+    Lock lock(long sessionId) throws IOException;
+
+    // The saved state, positioned at its start, or null if the store has none
+    ByteBuffer load(long sessionId) throws IOException;
+
+    // Replace the session's state with the remaining bytes of state
+    void save(long sessionId, ByteBuffer state) throws IOException;
+
+    // The commitments last saved with saveCommitments, positioned at their start, or null if none
+    ByteBuffer loadCommitments(long sessionId) throws IOException;
+
+    // Replace the session's commitments with the remaining bytes of commitments
+    void saveCommitments(long sessionId, ByteBuffer commitments) throws IOException;
+
+    // Drop the session's state and commitments
+
+    void remove(long sessionId) throws IOException;
+
+    // Drop sessions not saved for this long, abandoned by their provers; returns how many
+    int purge(long idleMillis) throws IOException;
+}
@@ -0,0 +1,90 @@
+package server;
+
+import common.CryptoUtils;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of transcript segment files, shared by TranscriptLog and TranscriptReplay.
+ *
+ * A segment starts with the magic "ZKT1" and the 8-byte id of the log run
+ * that wrote it (session ids are only unique within one run). Records follow
+ * back to back, big-endian, each as
+ *     int length, byte type, long sessionId, body
+ * where length counts everything after itself. Segments are preallocated
+ * and zero-filled, so a zero length marks the end of the written part.
+ *
+ *     START  long timeMillis, short+bytes fingerprint, int vertices, int rounds
+ *     ROUND  int round, byte mode, commitments, int v1, int v2,
+ *            short+bytes colour1, colour2, nonce1, nonce2 (as sent),
+ *            path1, path2 (byte count, then byte+bytes per node), byte verdict
+ *            mode 0: int count, count * 32 digest bytes; mode 1: 32-byte Merkle root, int leaves
+ *     END    long timeMillis, byte verified, int completedRounds, short+bytes failureType
+ *            verified 2: answered from the verdict cache, the session has no rounds
+ */
+final class TranscriptFormat {
+
+    static final byte[] MAGIC = {'Z', 'K', 'T', '1'};
+    static final int SEGMENT_HEADER_BYTES = 4 + 8;
+    static final int RECORD_HEADER_BYTES = 4 + 1 + 8;
+
+    static final byte START = 1;
+    static final byte ROUND = 2;
+    static final byte END = 3;
+
+    static final byte FAILED = 0;
+    static final byte VERIFIED = 1;
+    static final byte VERIFIED_FROM_CACHE = 2;
+
+    static final byte FULL_COMMITMENTS = 0;
+    static final byte MERKLE_ROOT = 1;
+
+    static final int DIGEST_BYTES = CryptoUtils.DIGEST_BYTES;
+
+    private TranscriptFormat() {
+    }
+
+    static String segmentName(int index) {
+        return String.format("transcript-%06d.zkt", index);
+    }
+
+    static int shortBytesSize(byte[] bytes) {
+        return 2 + bytes.length;
+    }
+
+    static void putShortBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Field too long for transcript record");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static byte[] getShortBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static void putTinyBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes.length > 0xFF) {
+            throw new IllegalArgumentException("Field too long for transcript record");
+        }
+        buffer.put((byte) bytes.length);
+        buffer.put(bytes);
+    }
+
+    static byte[] getTinyBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    static String getShortString(ByteBuffer buffer) {
+        return new String(getShortBytes(buffer), StandardCharsets.UTF_8);
+    }
+
+    static byte[] utf8(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,411 @@
+package server;
+
+import common.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only audit trail of every proof: session start, every round's
+ * commitments, challenge, reveal and verdict, and the session's result,
+ * written to memory-mapped segment files (format in TranscriptFormat).
+ *
+ * Sessions only enqueue records; a single background thread encodes them
+ * into the current segment and rotates to a new file when it is full, so
+ * the round loop never waits for the disk. The queue is bounded by the
+ * bytes it holds: when the writer falls that far behind, records are
+ * dropped and counted instead of stalling verification, and the replay
+ * tool reports the affected sessions as incomplete.
+ */
+public class TranscriptLog implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    // Encoded size of records waiting for the writer, mostly commitment buffers
+    public static final long MAX_PENDING_BYTES = 256L << 20;
+
+    private static final Record CLOSE = new Record(0, (byte) 0) {
+        @Override
+        int bodySize() {
+            return 0;
+        }
+
+        @Override
+        void writeBody(ByteBuffer buffer) {
+        }
+    };
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long logId = new SecureRandom().nextLong();
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Writer thread only
+    private int segmentIndex;
+    private MappedByteBuffer segment;
+    private boolean dirty;
+
+    public TranscriptLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public TranscriptLog(Path directory, long segmentBytes) throws IOException {
+        if (segmentBytes < 1024 || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between 1 KB and 2 GB");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.segmentIndex = lastSegmentIndex(directory);
+        this.writer = new Thread(this::writeLoop, "zkp-transcript");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // graphFingerprint is that of the graph the session proves, which a HELLO may have chosen
+    public void sessionStarted(long sessionId, long startedMillis, String graphFingerprint, int numVertices, int numRounds) {
+        byte[] fingerprint = TranscriptFormat.utf8(graphFingerprint);
+        offer(new Record(sessionId, TranscriptFormat.START) {
+            @Override
+            int bodySize() {
+                return 8 + TranscriptFormat.shortBytesSize(fingerprint) + 4 + 4;
+            }
+
+            @Override
+            void writeBody(ByteBuffer buffer) {
+                buffer.putLong(startedMillis);
+                TranscriptFormat.putShortBytes(buffer, fingerprint);
+                buffer.putInt(numVertices);
+                buffer.putInt(numRounds);
+            }
+        });
+    }
+
+    /**
+     * One verified round. The log takes over the commitment buffer and
+     * releases it once written; pass null and a Merkle root in Merkle mode.
+     */
+    public void round(long sessionId, int round, CommitmentBuffer commitments, String merkleRoot, int numLeaves,
+                      int v1, int v2, RevealMessage reveal, boolean verdict) {
+        RoundRecord record;
+        try {
+            record = new RoundRecord(sessionId, round, commitments, merkleRoot, numLeaves, v1, v2, reveal, verdict);
+        } catch (RuntimeException e) {
+            // A reveal too malformed to encode; the session's verdict does not depend on it
+            if (commitments != null) {
+                commitments.release();
+            }
+            dropped.increment();
+            return;
+        }
+        offer(record);
+    }
+
+    public void sessionFinished(long sessionId, boolean verified, int completedRounds, String failureType) {
+        end(sessionId, verified ? TranscriptFormat.VERIFIED : TranscriptFormat.FAILED, completedRounds, failureType);
+    }
+
+    // Answered from the verdict cache; rounds are those of the cached proof
+    public void sessionFinishedFromCache(long sessionId, int cachedRounds) {
+        end(sessionId, TranscriptFormat.VERIFIED_FROM_CACHE, cachedRounds, null);
+    }
+
+    private void end(long sessionId, byte verdict, int completedRounds, String failureType) {
+        long time = System.currentTimeMillis();
+        byte[] failure = TranscriptFormat.utf8(failureType);
+        offer(new Record(sessionId, TranscriptFormat.END) {
+            @Override
+            int bodySize() {
+                return 8 + 1 + 4 + TranscriptFormat.shortBytesSize(failure);
+            }
+
+            @Override
+            void writeBody(ByteBuffer buffer) {
+                buffer.putLong(time);
+                buffer.put(verdict);
+                buffer.putInt(completedRounds);
+                TranscriptFormat.putShortBytes(buffer, failure);
+            }
+        });
+    }
+
+    public long getWrittenRecords() {
+        return written.sum();
+    }
+
+    public long getDroppedRecords() {
+        return dropped.sum();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    // Write what is queued, flush the segment and stop the writer
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void offer(Record record) {
+        int size = record.size();
+        if (closed) {
+            drop(record);
+            return;
+        }
+        if (pendingBytes.addAndGet(size) > MAX_PENDING_BYTES) {
+            pendingBytes.addAndGet(-size);
+            drop(record);
+            return;
+        }
+        queue.add(record);
+    }
+
+    private void drop(Record record) {
+        record.release();
+        dropped.increment();
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Record record = queue.poll();
+                if (record == null) {
+                    // Caught up: make what is written durable before waiting
+                    force();
+                    record = queue.take();
+                }
+                if (record == CLOSE) {
+                    break;
+                }
+                try {
+                    write(record);
+                    written.increment();
+                } catch (IOException | RuntimeException e) {
+                    dropped.increment();
+                    System.err.println("Transcript write failed: " + e.getMessage());
+                } finally {
+                    pendingBytes.addAndGet(-record.size());
+                    record.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            force();
+        }
+    }
+
+    private void write(Record record) throws IOException {
+        int size = record.size();
+        if (segment == null || segment.remaining() < size) {
+            rotate(size);
+        }
+        int start = segment.position();
+        try {
+            segment.putInt(size - 4);
+            segment.put(record.type);
+            segment.putLong(record.sessionId);
+            record.writeBody(segment);
+        } catch (RuntimeException e) {
+            // Leave the end marker where the record began, the segment stays readable
+            segment.putInt(start, 0);
+            segment.position(start);
+            throw e;
+        }
+        dirty = true;
+    }
+
+    // Start the next segment file, large enough for at least this record
+    private void rotate(int recordBytes) throws IOException {
+        force();
+        long size = Math.max(segmentBytes, TranscriptFormat.SEGMENT_HEADER_BYTES + recordBytes);
+        Path path = directory.resolve(TranscriptFormat.segmentName(++segmentIndex));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        segment.put(TranscriptFormat.MAGIC);
+        segment.putLong(logId);
+        dirty = true;
+    }
+
+    private void force() {
+        if (segment != null && dirty) {
+            segment.force();
+            dirty = false;
+        }
+    }
+
+    // Continue numbering after the segments already in the directory, never reopening them
+    private static int lastSegmentIndex(Path directory) throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "transcript-*.zkt")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    last = Math.max(last, Integer.parseInt(name.substring("transcript-".length(), name.length() - 4)));
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * One queued record; size() includes the length prefix and record header.
+     */
+    private abstract static class Record {
+        final long sessionId;
+        final byte type;
+
+        Record(long sessionId, byte type) {
+            this.sessionId = sessionId;
+            this.type = type;
+        }
+
+        int size() {
+            return TranscriptFormat.RECORD_HEADER_BYTES + bodySize();
+        }
+
+        abstract int bodySize();
+
+        abstract void writeBody(ByteBuffer buffer);
+
+        void release() {
+        }
+    }
+
+    private static class RoundRecord extends Record {
+        private final int round;
+        private final CommitmentBuffer commitments;
+        private final byte[] merkleRoot;
+        private final int numLeaves;
+        private final int v1;
+        private final int v2;
+        private final byte[] colour1;
+        private final byte[] colour2;
+        private final byte[] nonce1;
+        private final byte[] nonce2;
+        private final List<byte[]> path1;
+        private final List<byte[]> path2;
+        private final boolean verdict;
+
+        RoundRecord(long sessionId, int round, CommitmentBuffer commitments, String merkleRoot, int numLeaves,
+                    int v1, int v2, RevealMessage reveal, boolean verdict) {
+            super(sessionId, TranscriptFormat.ROUND);
+            this.round = round;
+            this.commitments = commitments;
+            this.merkleRoot = commitments == null ? CryptoUtils.hexToBytes(merkleRoot) : null;
+            if (this.merkleRoot != null && this.merkleRoot.length != TranscriptFormat.DIGEST_BYTES) {
+                throw new IllegalArgumentException("Merkle root is not a SHA-256 digest");
+            }
+            this.numLeaves = numLeaves;
+            this.v1 = v1;
+            this.v2 = v2;
+            this.colour1 = TranscriptFormat.utf8(reveal.getColour1());
+            this.colour2 = TranscriptFormat.utf8(reveal.getColour2());
+            // Nonces stay text: the commitment hashes them exactly as the prover sent them
+            this.nonce1 = TranscriptFormat.utf8(reveal.getNonce1());
+            this.nonce2 = TranscriptFormat.utf8(reveal.getNonce2());
+            this.path1 = pathBytes(reveal.getPath1());
+            this.path2 = pathBytes(reveal.getPath2());
+            this.verdict = verdict;
+            // Encoding must not fail on the writer thread, so check the field limits here
+            for (byte[] field : Arrays.asList(colour1, colour2, nonce1, nonce2)) {
+                if (field.length > 0xFFFF) {
+                    throw new IllegalArgumentException("Reveal field too long for transcript record");
+                }
+            }
+        }
+
+        // A path longer than 255 nodes fails verification anyway, so the tail is not kept
+        private static List<byte[]> pathBytes(List<String> path) {
+            List<byte[]> nodes = new ArrayList<>();
+            for (int i = 0; i < Math.min(path.size(), 0xFF); i++) {
+                nodes.add(CryptoUtils.hexToBytes(path.get(i)));
+                if (nodes.get(i).length > 0xFF) {
+                    throw new IllegalArgumentException("Merkle path node too long for transcript record");
+                }
+            }
+            return nodes;
+        }
+
+        @Override
+        int bodySize() {
+            int commitmentBytes = commitments != null
+                ? 4 + commitments.size() * TranscriptFormat.DIGEST_BYTES
+                : TranscriptFormat.DIGEST_BYTES + 4;
+            return 4 + 1 + commitmentBytes + 4 + 4
+                + TranscriptFormat.shortBytesSize(colour1) + TranscriptFormat.shortBytesSize(colour2)
+                + TranscriptFormat.shortBytesSize(nonce1) + TranscriptFormat.shortBytesSize(nonce2)
+                + pathSize(path1) + pathSize(path2)
+                + 1;
+        }
+
+        private static int pathSize(List<byte[]> path) {
+            int size = 1;
+            for (byte[] node : path) {
+                size += 1 + node.length;
+            }
+            return size;
+        }
+
+        @Override
+        void writeBody(ByteBuffer buffer) {
+            buffer.putInt(round);
+            if (commitments != null) {
+                buffer.put(TranscriptFormat.FULL_COMMITMENTS);
+                buffer.putInt(commitments.size());
+                commitments.writeTo(buffer);
+            } else {
+                buffer.put(TranscriptFormat.MERKLE_ROOT);
+                buffer.put(merkleRoot);
+                buffer.putInt(numLeaves);
+            }
+            buffer.putInt(v1);
+            buffer.putInt(v2);
+            TranscriptFormat.putShortBytes(buffer, colour1);
+            TranscriptFormat.putShortBytes(buffer, colour2);
+            TranscriptFormat.putShortBytes(buffer, nonce1);
+            TranscriptFormat.putShortBytes(buffer, nonce2);
+            putPath(buffer, path1);
+            putPath(buffer, path2);
+            buffer.put((byte) (verdict ? 1 : 0));
+        }
+
+        private static void putPath(ByteBuffer buffer, List<byte[]> path) {
+            buffer.put((byte) path.size());
+            for (byte[] node : path) {
+                TranscriptFormat.putTinyBytes(buffer, node);
+            }
+        }
+
+        @Override
+        void release() {
+            if (commitments != null) {
+                commitments.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package server;
+
+import common.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Offline re-verification of the transcripts written by TranscriptLog.
+ *
+ * Segments are mapped read-only and indexed by session, then sessions are
+ * re-verified in parallel on a pool of their own: every recorded reveal is
+ * checked against its recorded commitments (or Merkle root), adjacent
+ * colours must differ, a session may show at most three colours, and the
+ * verifier's recorded verdicts must agree with the recomputed ones. Given
+ * the graph file or a GraphRegistry directory, the challenged edges are
+ * checked against each session's graph as well.
+ *
+ * Usage: TranscriptReplay <transcript-dir> [--graph file.zkg] [--graphs registry-dir] [--threads N]
+ */
+public class TranscriptReplay {
+
+    private static final int MAX_PRINTED_PROBLEMS = 20;
+
+    public enum Outcome {
+        CONSISTENT,  // recomputed verdicts match the recorded ones
+        MISMATCH,    // the verifier decided differently from the recomputation
+        INCOMPLETE   // records are missing, e.g. dropped under load or the server was killed
+    }
+
+    /**
+     * All records of one session, as slices of the mapped segments.
+     */
+    static class SessionTranscript {
+        final String key;
+        ByteBuffer start;
+        final List<ByteBuffer> rounds = new ArrayList<>();
+        ByteBuffer end;
+
+        SessionTranscript(String key) {
+            this.key = key;
+        }
+    }
+
+    static class Result {
+        final String session;
+        final Outcome outcome;
+        final String detail;
+        final int rounds;
+
+        Result(String session, Outcome outcome, String detail, int rounds) {
+            this.session = session;
+            this.outcome = outcome;
+            this.detail = detail;
+            this.rounds = rounds;
+        }
+    }
+
+    private final GraphRegistry graphs;
+
+    // graphs may be null, then challenged edges are not checked
+    public TranscriptReplay(GraphRegistry graphs) {
+        this.graphs = graphs;
+    }
+
+    // Index every record in the directory's segments by log run and session id
+    static Map<String, SessionTranscript> scan(Path directory) throws IOException {
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(p -> p.getFileName().toString().matches("transcript-\\d+\\.zkt"))
+                            .sorted()
+                            .collect(Collectors.toList());
+        }
+
+        Map<String, SessionTranscript> sessions = new LinkedHashMap<>();
+        for (Path path : segments) {
+            ByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            byte[] magic = new byte[TranscriptFormat.MAGIC.length];
+            if (segment.remaining() < TranscriptFormat.SEGMENT_HEADER_BYTES) {
+                System.err.println("Skipping short segment " + path);
+                continue;
+            }
+            segment.get(magic);
+            if (!Arrays.equals(magic, TranscriptFormat.MAGIC)) {
+                System.err.println("Skipping " + path + ": not a transcript segment");
+                continue;
+            }
+            long logId = segment.getLong();
+
+            while (segment.remaining() >= 4) {
+                int length = segment.getInt();
+                if (length == 0) {
+                    break;
+                }
+                if (length < TranscriptFormat.RECORD_HEADER_BYTES - 4 || length > segment.remaining()) {
+                    System.err.println("Corrupt record in " + path + " at " + (segment.position() - 4));
+                    break;
+                }
+                byte type = segment.get();
+                long sessionId = segment.getLong();
+                ByteBuffer body = segment.slice();
+                body.limit(length - (TranscriptFormat.RECORD_HEADER_BYTES - 4));
+                segment.position(segment.position() + body.limit());
+
+                String key = Long.toHexString(logId) + "/" + sessionId;
+                SessionTranscript session = sessions.computeIfAbsent(key, SessionTranscript::new);
+                if (type == TranscriptFormat.START) {
+                    session.start = body;
+                } else if (type == TranscriptFormat.ROUND) {
+                    session.rounds.add(body);
+                } else if (type == TranscriptFormat.END) {
+                    session.end = body;
+                }
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Re-verify one session from its records. A record that cannot be parsed,
+     * e.g. torn at a segment tail by a crash, makes this session INCOMPLETE
+     * and leaves the others to be checked.
+     */
+    Result verify(SessionTranscript session) {
+        try {
+            return verifyRecords(session);
+        } catch (RuntimeException e) {
+            return new Result(session.key, Outcome.INCOMPLETE, "a record is corrupt: " + e, session.rounds.size());
+        }
+    }
+
+    private Result verifyRecords(SessionTranscript session) {
+        int numRounds = session.rounds.size();
+        if (session.start == null || session.end == null) {
+            return new Result(session.key, Outcome.INCOMPLETE,
+                              session.start == null ? "no start record" : "no end record", numRounds);
+        }
+
+        ByteBuffer start = session.start.duplicate();
+        start.getLong();
+        String sessionFingerprint = TranscriptFormat.getShortString(start);
+        start.getInt();
+        int plannedRounds = start.getInt();
+        GraphView graph = null;
+        if (graphs != null && numRounds > 0) {
+            try {
+                ServedGraph served = graphs.get(sessionFingerprint);
+                graph = served != null ? served.getGraph() : null;
+            } catch (IOException e) {
+                System.err.println("Could not load graph " + sessionFingerprint + ": " + e.getMessage());
+            }
+            if (graph == null) {
+                return new Result(session.key, Outcome.INCOMPLETE,
+                                  "graph " + sessionFingerprint + " is not available", numRounds);
+            }
+        }
+
+        Set<String> colours = new HashSet<>();
+        boolean allValid = true;
+        for (int i = 0; i < numRounds; i++) {
+            RoundCheck check;
+            try {
+                check = checkRound(session.rounds.get(i).duplicate(), graph);
+            } catch (RuntimeException e) {
+                return new Result(session.key, Outcome.INCOMPLETE,
+                                  "round record " + (i + 1) + " is corrupt: " + e, numRounds);
+            }
+            colours.add(check.colour1);
+            colours.add(check.colour2);
+            if (check.notAnEdge) {
+                return new Result(session.key, Outcome.MISMATCH,
+                                  "round " + check.round + " challenged a pair that is not an edge", numRounds);
+            }
+            if (check.recordedVerdict && !check.valid) {
+                return new Result(session.key, Outcome.MISMATCH,
+                                  "round " + check.round + " was accepted but fails re-verification", numRounds);
+            }
+            // A valid round may still be rejected for bringing a fourth colour
+            if (!check.recordedVerdict && check.valid && colours.size() <= 3) {
+                return new Result(session.key, Outcome.MISMATCH,
+                                  "round " + check.round + " was rejected but re-verifies", numRounds);
+            }
+            allValid &= check.valid;
+        }
+
+        ByteBuffer end = session.end.duplicate();
+        end.getLong();
+        byte verdict = end.get();
+        boolean verified = verdict != TranscriptFormat.FAILED;
+        int completedRounds = end.getInt();
+        String failureType = TranscriptFormat.getShortString(end);
+
+        // Nothing to re-verify, the proof it relied on is an earlier session of the transcript
+        if (verdict == TranscriptFormat.VERIFIED_FROM_CACHE) {
+            return numRounds == 0
+                ? new Result(session.key, Outcome.CONSISTENT, "answered from the verdict cache", 0)
+                : new Result(session.key, Outcome.MISMATCH, "cached verdict but rounds were recorded", numRounds);
+        }
+
+        boolean expected = allValid && colours.size() <= 3 && numRounds == plannedRounds;
+        if (verified && !expected) {
+            if (numRounds < completedRounds) {
+                return new Result(session.key, Outcome.INCOMPLETE,
+                                  numRounds + " of " + completedRounds + " rounds recorded", numRounds);
+            }
+            return new Result(session.key, Outcome.MISMATCH, "accepted but does not re-verify", numRounds);
+        }
+        if (!verified && expected) {
+            return new Result(session.key, Outcome.MISMATCH, "rejected although every round re-verifies", numRounds);
+        }
+        String detail = verified ? "verified" : "rejected" + (failureType.isEmpty() ? "" : " (" + failureType + ")");
+        return new Result(session.key, Outcome.CONSISTENT, detail, numRounds);
+    }
+
+    private static class RoundCheck {
+        int round;
+        String colour1;
+        String colour2;
+        boolean valid;
+        boolean recordedVerdict;
+        boolean notAnEdge;
+    }
+
+    private static RoundCheck checkRound(ByteBuffer record, GraphView graph) {
+        RoundCheck check = new RoundCheck();
+        check.round = record.getInt();
+        byte mode = record.get();
+
+        // Commitments stay in the mapped segment; only the two challenged ones are read
+        int commitmentsAt = -1;
+        int count = 0;
+        String root = null;
+        int numLeaves = 0;
+        if (mode == TranscriptFormat.FULL_COMMITMENTS) {
+            count = record.getInt();
+            if (count < 0 || count > record.remaining() / TranscriptFormat.DIGEST_BYTES) {
+                throw new IllegalArgumentException("commitment count " + count + " runs past the record");
+            }
+            commitmentsAt = record.position();
+            record.position(commitmentsAt + count * TranscriptFormat.DIGEST_BYTES);
+        } else {
+            byte[] rootBytes = new byte[TranscriptFormat.DIGEST_BYTES];
+            record.get(rootBytes);
+            root = CryptoUtils.bytesToHex(rootBytes);
+            numLeaves = record.getInt();
+        }
+
+        int v1 = record.getInt();
+        int v2 = record.getInt();
+        check.colour1 = TranscriptFormat.getShortString(record);
+        check.colour2 = TranscriptFormat.getShortString(record);
+        String nonce1 = TranscriptFormat.getShortString(record);
+        String nonce2 = TranscriptFormat.getShortString(record);
+        List<String> path1 = getPath(record);
+        List<String> path2 = getPath(record);
+        check.recordedVerdict = record.get() != 0;
+
+        boolean opens;
+        if (mode == TranscriptFormat.FULL_COMMITMENTS) {
+            opens = v1 >= 0 && v1 < count && v2 >= 0 && v2 < count
+                && CryptoUtils.verifyCommitment(record, commitmentsAt + v1 * TranscriptFormat.DIGEST_BYTES, check.colour1, nonce1)
+                && CryptoUtils.verifyCommitment(record, commitmentsAt + v2 * TranscriptFormat.DIGEST_BYTES, check.colour2, nonce2);
+        } else {
+            opens = MerkleTree.verify(root, CryptoUtils.createCommitment(check.colour1, nonce1), v1, numLeaves, path1)
+                && MerkleTree.verify(root, CryptoUtils.createCommitment(check.colour2, nonce2), v2, numLeaves, path2);
+        }
+        check.valid = opens && !check.colour1.equals(check.colour2);
+        check.notAnEdge = graph != null && !isEdge(graph, v1, v2);
+        return check;
+    }
+
+    private static List<String> getPath(ByteBuffer record) {
+        int length = record.get() & 0xFF;
+        List<String> path = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            path.add(CryptoUtils.bytesToHex(TranscriptFormat.getTinyBytes(record)));
+        }
+        return path;
+    }
+
+    private static boolean isEdge(GraphView graph, int v1, int v2) {
+        if (v1 < 0 || v1 >= graph.getNumVertices() || v2 < 0 || v2 >= graph.getNumVertices()) {
+            return false;
+        }
+        for (int i = 0; i < graph.degree(v1); i++) {
+            if (graph.neighbor(v1, i) == v2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length < 1) {
+                System.err.println("Usage: TranscriptReplay <transcript-dir> [--graph file.zkg] [--graphs registry-dir] [--threads N]");
+                return;
+            }
+            // Sessions are checked against their own graph, from the registry or the one given
+            int graphsFlag = Arrays.asList(args).indexOf("--graphs");
+            int graphFlag = Arrays.asList(args).indexOf("--graph");
+            GraphRegistry graphs = null;
+            if (graphsFlag >= 0 && graphsFlag + 1 < args.length) {
+                graphs = new GraphRegistry(Paths.get(args[graphsFlag + 1]), GraphRegistry.DEFAULT_MEMORY_BUDGET);
+            } else if (graphFlag >= 0 && graphFlag + 1 < args.length) {
+                graphs = new GraphRegistry(null, 0);
+            }
+            if (graphs != null && graphFlag >= 0 && graphFlag + 1 < args.length) {
+                graphs.pin(ServedGraph.of(GraphFile.open(Paths.get(args[graphFlag + 1]))));
+            }
+            int threadsFlag = Arrays.asList(args).indexOf("--threads");
+            int threads = threadsFlag >= 0 && threadsFlag + 1 < args.length
+                ? Integer.parseInt(args[threadsFlag + 1])
+                : Runtime.getRuntime().availableProcessors();
+
+            long begin = System.nanoTime();
+            Map<String, SessionTranscript> sessions = scan(Paths.get(args[0]));
+            long scanned = System.nanoTime();
+
+            // A pool of its own, so the replay's width is set here and not by the common pool
+            TranscriptReplay replay = new TranscriptReplay(graphs);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            List<Result> results;
+            try {
+                results = pool.submit(() -> sessions.values().parallelStream()
+                                                    .map(replay::verify)
+                                                    .collect(Collectors.toList())).get();
+            } finally {
+                pool.shutdown();
+            }
+            long verified = System.nanoTime();
+
+            Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+            int printed = 0;
+            long rounds = 0;
+            for (Result result : results) {
+                counts.merge(result.outcome, 1, Integer::sum);
+                rounds += result.rounds;
+                if (result.outcome != Outcome.CONSISTENT && printed++ < MAX_PRINTED_PROBLEMS) {
+                    System.out.println("[session " + result.session + "] " + result.outcome + ": " + result.detail);
+                }
+            }
+
+            System.out.println("Replayed " + results.size() + " sessions, " + rounds + " rounds in " +
+                               (verified - begin) / 1_000_000 + " ms (scan " + (scanned - begin) / 1_000_000 +
+                               " ms) on " + threads + " threads");
+            for (Outcome outcome : Outcome.values()) {
+                System.out.println("   " + outcome + ": " + counts.getOrDefault(outcome, 0));
+            }
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package server;
+
+import common.CryptoUtils;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Recent successful verifications, keyed by prover id and graph fingerprint.
+ *
+ * A prover that proved a graph within the last ttl gets the cached verdict
+ * instead of running every round again. Entries expire after the ttl and
+ * the least recently used ones are evicted beyond maxEntries. Only
+ * successes are cached, and a failed proof drops the prover's entry.
+ *
+ * Prover ids are self-asserted, so a verdict is only served to a HELLO that
+ * brings the token issued with it: "expiry.mac", where mac is
+ * HMAC-SHA256(key, proverId | fingerprint | expiry) under a key that never
+ * leaves this cache. Only the prover that ran the proof received the token,
+ * and it stops working when the verdict would expire.
+ */
+public class VerdictCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /**
+     * One cached success.
+     */
+    public static final class Verdict {
+        private final int rounds;
+        private final long verifiedAtMillis;
+        private final long expiresAtNanos;
+
+        Verdict(int rounds, long verifiedAtMillis, long expiresAtNanos) {
+            this.rounds = rounds;
+            this.verifiedAtMillis = verifiedAtMillis;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        // Rounds the cached proof passed
+        public int getRounds() {
+            return rounds;
+        }
+
+        public long getVerifiedAtMillis() {
+            return verifiedAtMillis;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final ServerMetrics metrics;
+    private final LinkedHashMap<String, Verdict> entries;
+    private final Mac mac;
+
+    public VerdictCache(int maxEntries, long ttlMillis, ServerMetrics metrics) {
+        this(maxEntries, ttlMillis, metrics, randomKey());
+    }
+
+    public VerdictCache(int maxEntries, long ttlMillis, ServerMetrics metrics, byte[] tokenKey) {
+        if (maxEntries < 1 || ttlMillis < 1) {
+            throw new IllegalArgumentException("Verdict cache needs a positive size and ttl");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.metrics = metrics;
+        try {
+            this.mac = Mac.getInstance("HmacSHA256");
+            this.mac.init(new SecretKeySpec(tokenKey, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("HmacSHA256 not available", e);
+        }
+        // Access order, so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+                if (size() > VerdictCache.this.maxEntries) {
+                    metrics.verdictCacheEviction();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The prover's unexpired success on this graph with at least minRounds
+     * rounds, or null when a full proof is needed. The token must be the
+     * one issued with that success.
+     */
+    public synchronized Verdict lookup(String proverId, String fingerprint, String token, int minRounds) {
+        if (!isValid(token, proverId, fingerprint)) {
+            metrics.verdictCacheMiss();
+            return null;
+        }
+        String key = key(proverId, fingerprint);
+        Verdict verdict = entries.get(key);
+        if (verdict != null && System.nanoTime() - verdict.expiresAtNanos >= 0) {
+            entries.remove(key);
+            metrics.verdictCacheExpiration();
+            verdict = null;
+        }
+        if (verdict == null || verdict.rounds < minRounds) {
+            metrics.verdictCacheMiss();
+            return null;
+        }
+        metrics.verdictCacheHit();
+        return verdict;
+    }
+
+    // Cache a success and return the token that unlocks it, for the prover's result
+    public synchronized String put(String proverId, String fingerprint, int rounds) {
+        if (entries.size() >= maxEntries) {
+            // Make room from expired entries before evicting live ones
+            purgeExpired();
+        }
+        long now = System.currentTimeMillis();
+        entries.put(key(proverId, fingerprint), new Verdict(rounds, now, System.nanoTime() + ttlNanos));
+        long expiresAtMillis = now + ttlNanos / 1_000_000L;
+        return expiresAtMillis + "." + CryptoUtils.bytesToHex(sign(proverId, fingerprint, expiresAtMillis));
+    }
+
+    // A token this cache issued for this prover and graph, and not yet expired
+    public synchronized boolean isValid(String token, String proverId, String fingerprint) {
+        if (token == null || proverId == null) {
+            return false;
+        }
+        int dot = token.indexOf('.');
+        long expiresAtMillis;
+        byte[] presented;
+        try {
+            expiresAtMillis = Long.parseLong(token.substring(0, dot));
+            presented = CryptoUtils.hexToBytes(token.substring(dot + 1));
+        } catch (RuntimeException e) {
+            return false;
+        }
+        if (System.currentTimeMillis() >= expiresAtMillis) {
+            return false;
+        }
+        return MessageDigest.isEqual(presented, sign(proverId, fingerprint, expiresAtMillis));
+    }
+
+    public synchronized void invalidate(String proverId, String fingerprint) {
+        entries.remove(key(proverId, fingerprint));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // Entries are in access order, not expiry order, so expired ones are found by a scan
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        Iterator<Verdict> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().expiresAtNanos >= 0) {
+                it.remove();
+                metrics.verdictCacheExpiration();
+            }
+        }
+    }
+
+    // Length-prefixed fields, so no prover id can be shifted into the fingerprint
+    private byte[] sign(String proverId, String fingerprint, long expiresAtMillis) {
+        byte[] prover = proverId.getBytes(StandardCharsets.UTF_8);
+        byte[] graph = fingerprint.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer fields = ByteBuffer.allocate(4 + prover.length + 4 + graph.length + 8);
+        fields.putInt(prover.length).put(prover).putInt(graph.length).put(graph).putLong(expiresAtMillis);
+        return mac.doFinal(fields.array());
+    }
+
+    private static byte[] randomKey() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    // Fingerprints are hex, so the first ':' separates them from any prover id
+    private static String key(String proverId, String fingerprint) {
+        return fingerprint + ":" + proverId;
+    }
+}
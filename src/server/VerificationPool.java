@@ -0,0 +1,56 @@
+package server;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker threads that run the CPU-heavy part of the protocol (session state
+ * machines, commitment hashing, reply encoding) off the selector threads.
+ * The task queue is bounded: when it is full, trySubmit refuses instead of
+ * blocking, and the caller stops reading from its socket until a slot frees
+ * up, so a burst of reveals pushes back on the provers rather than on memory.
+ */
+public class VerificationPool {
+
+    // Queued tasks per worker before submitters are pushed back
+    public static final int QUEUE_PER_WORKER = 64;
+
+    private final ThreadPoolExecutor executor;
+
+    public VerificationPool(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Need at least one verification worker");
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER),
+            task -> {
+                Thread thread = new Thread(task, "zkp-verify-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Queue a task, or return false if the queue is full
+    public boolean trySubmit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public int getWorkers() {
+        return executor.getCorePoolSize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,626 @@
+package server;
+
+import common.*;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event-driven verifier built on a Selector instead of a thread per prover.
+ * One acceptor hands connections to a few selector loops, and each
+ * connection feeds complete frames (JSON lines or binary frames, as
+ * negotiated) into its ZKPSession state machine.
+ *
+ * The work is pipelined: selector threads only read and decode frames and
+ * write encoded replies, while the session state machines, which hash every
+ * revealed commitment, run on a VerificationPool. A connection has at most
+ * one batch of messages on the pool at a time, so its sessions still see
+ * messages in order, and stops reading once MAX_PENDING_MESSAGES are queued
+ * or the pool is full. A connection whose reveals are being verified thus
+ * never holds up the selector for the others.
+ */
+public class ZKPNioServer {
+
+    private static final int INITIAL_BUFFER_BYTES = 4096;
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+
+    // Decoded messages a connection may queue for verification before its reads pause
+    public static final int MAX_PENDING_MESSAGES = 16;
+
+    private final int port;
+    private final ServedGraph graph;
+    private final int numRounds;
+    private int maxMessageBytes;
+    private final SelectorLoop[] loops;
+    private final ServerMetrics metrics;
+    private final VerificationPool verificationPool;
+    private TranscriptLog transcript;
+    private VerdictCache verdictCache;
+    private GraphRegistry registry;
+    private SessionStore sessionStore;
+    private double soundnessBits;
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+    private ServerSocketChannel serverChannel;
+    private Selector acceptSelector;
+    private volatile boolean running;
+
+    public ZKPNioServer(int port, GraphView graph, int numRounds, int selectorThreads) {
+        this(port, graph, numRounds, selectorThreads, new ServerMetrics());
+    }
+
+    public ZKPNioServer(int port, GraphView graph, int numRounds, int selectorThreads, ServerMetrics metrics) {
+        this(port, ServedGraph.of(graph), numRounds, selectorThreads, metrics, Runtime.getRuntime().availableProcessors());
+    }
+
+    // verifyThreads 0 verifies on the selector threads, as a baseline for the pipelined mode
+    public ZKPNioServer(int port, ServedGraph graph, int numRounds, int selectorThreads, ServerMetrics metrics,
+                        int verifyThreads) {
+        this.port = port;
+        this.graph = graph;
+        this.numRounds = numRounds;
+        // A COMMIT line carries one 64-char hex digest per vertex plus JSON punctuation,
+        // and a BATCH_COMMIT can carry that for every round
+        long largestCommit = 1024 + (long) numRounds * graph.getNumVertices() * 80;
+        this.maxMessageBytes = (int) Math.min(largestCommit, MessageChannel.DEFAULT_MAX_FRAME_BYTES);
+        this.loops = new SelectorLoop[Math.max(1, selectorThreads)];
+        this.metrics = metrics;
+        this.verificationPool = verifyThreads > 0 ? new VerificationPool(verifyThreads) : null;
+    }
+
+    // Record every session in this transcript, must be called before serve()
+    public void setTranscript(TranscriptLog transcript) {
+        this.transcript = transcript;
+    }
+
+    // Answer provers that proved this graph recently from the cache, must be called before serve()
+    public void setVerdictCache(VerdictCache verdictCache) {
+        this.verdictCache = verdictCache;
+    }
+
+    // Serve any graph of the registry a prover names, must be called before serve().
+    // A first use loads the graph on the verifying thread, a selector thread when verifyThreads is 0
+    public void setGraphRegistry(GraphRegistry registry) {
+        this.registry = registry;
+        // Registry graphs may be far larger than the default one
+        this.maxMessageBytes = MessageChannel.DEFAULT_MAX_FRAME_BYTES;
+    }
+
+    // Keep multiplexed sessions in this store, shared with other servers, must be called before serve().
+    // Sessions are loaded and saved on the verifying thread, a selector thread when verifyThreads is 0
+    public void setSessionStore(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    // Run every session until a 2^-bits soundness error on its graph, must be called before serve()
+    public void setSoundnessTarget(double soundnessBits) {
+        this.soundnessBits = soundnessBits;
+    }
+
+    private ZKPSession newSession() {
+        return newSession(nextSessionId.getAndIncrement());
+    }
+
+    private ZKPSession newSession(long sessionId) {
+        ZKPSession session = new ZKPSession(sessionId, graph, numRounds, false, metrics);
+        if (soundnessBits > 0) {
+            session.setSoundnessTarget(soundnessBits);
+        }
+        return attach(session);
+    }
+
+    private SessionDemux newDemux() {
+        if (sessionStore == null) {
+            return new SessionDemux(this::newSession);
+        }
+        return new SessionDemux(this::newSession, sessionStore, new SessionDemux.StoredSessions() {
+            @Override
+            public ZKPSession create(long sessionId) {
+                return newSession(sessionId);
+            }
+
+            @Override
+            public ZKPSession restore(ByteBuffer state, ByteBuffer commitments) throws IOException {
+                return attach(ZKPSession.restore(state, commitments, graph, registry, metrics));
+            }
+        });
+    }
+
+    private ZKPSession attach(ZKPSession session) {
+        if (transcript != null) {
+            session.setTranscript(transcript);
+        }
+        if (verdictCache != null) {
+            session.setVerdictCache(verdictCache);
+        }
+        if (registry != null) {
+            session.setGraphRegistry(registry);
+        }
+        return session;
+    }
+
+    // Accept connections until stopped
+    public void serve() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        acceptSelector = Selector.open();
+        serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+        metrics.register(port);
+        running = true;
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop();
+            Thread thread = new Thread(loops[i], "zkp-selector-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        System.out.println("ZKP NIO Server started on port " + port);
+        System.out.println("Graph: " + graph.getNumVertices() + " vertices, " +
+                           graph.getEdgeIndex().size() + " edges");
+        System.out.println("Selector threads: " + loops.length + ", verification threads: " +
+                           (verificationPool != null ? verificationPool.getWorkers() : "none (inline)") + "\n");
+
+        int next = 0;
+        while (running) {
+            acceptSelector.select();
+            Iterator<SelectionKey> it = acceptSelector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid() || !key.isAcceptable()) {
+                    continue;
+                }
+                SocketChannel channel = serverChannel.accept();
+                if (channel == null) {
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            }
+        }
+    }
+
+    // Stop accepting and close every selector
+    public void stop() {
+        running = false;
+        try {
+            if (acceptSelector != null) acceptSelector.wakeup();
+            if (serverChannel != null) serverChannel.close();
+            for (SelectorLoop loop : loops) {
+                if (loop != null) loop.selector.wakeup();
+            }
+            if (verificationPool != null) verificationPool.shutdown();
+            System.out.println("\nServer stopped");
+        } catch (IOException e) {
+            System.err.println("Error closing server: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One selector thread serving many connections.
+     */
+    private class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final Set<NioConnection> connections = new HashSet<>();
+
+        // Verification results handed back by the workers, run on this thread
+        private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+
+        // Connections whose last submit found the verification pool full
+        private final Set<NioConnection> stalled = new LinkedHashSet<>();
+
+        SelectorLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        // Run on this loop's thread, from any thread
+        void post(Runnable completion) {
+            completions.add(completion);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(1000);
+                    registerPending();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioConnection conn = (NioConnection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) conn.onReadable();
+                            if (key.isValid() && key.isWritable()) conn.onWritable();
+                        } catch (IOException | CancelledKeyException e) {
+                            conn.close();
+                        }
+                    }
+
+                    Runnable completion;
+                    while ((completion = completions.poll()) != null) {
+                        completion.run();
+                    }
+                    retryStalled();
+                    expireIdle();
+                }
+            } catch (IOException e) {
+                System.err.println("Selector loop failed: " + e.getMessage());
+            } finally {
+                for (NioConnection conn : new ArrayList<>(connections)) {
+                    conn.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    SessionDemux demux = newDemux();
+                    NioConnection conn = new NioConnection(this, channel, demux);
+                    conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+                    connections.add(conn);
+                } catch (IOException e) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        private void retryStalled() {
+            if (stalled.isEmpty()) {
+                return;
+            }
+            List<NioConnection> retry = new ArrayList<>(stalled);
+            stalled.clear();
+            for (NioConnection conn : retry) {
+                conn.pumpOrClose();
+            }
+        }
+
+        private void expireIdle() {
+            long now = System.currentTimeMillis();
+            for (NioConnection conn : new ArrayList<>(connections)) {
+                if (conn.verifying || !conn.inbound.isEmpty()) {
+                    // Waiting on the server, not on the prover
+                    continue;
+                }
+                if (now - conn.lastActivity > IDLE_TIMEOUT_MS) {
+                    if (!conn.demux.isDone()) {
+                        conn.demux.failAll(new IOException("Idle timeout"));
+                    }
+                    conn.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-connection buffers around the connection's sessions. The buffers
+     * are only touched by the selector thread; the demux and its sessions
+     * belong to the verification worker while a batch is in flight and to
+     * the selector thread otherwise.
+     */
+    private class NioConnection {
+        private final SelectorLoop loop;
+        private final SocketChannel channel;
+        private final SessionDemux demux;
+        private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private final Deque<ProtocolMessage> inbound = new ArrayDeque<>();
+        private SelectionKey key;
+        private WireFormat format;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        private long lastActivity = System.currentTimeMillis();
+        private boolean outputShutdown;
+
+        // Pipeline state, selector thread only
+        private boolean verifying;      // a batch is on the verification pool
+        private boolean done;           // the demux was done when this thread last owned it
+        private boolean disconnected;   // the prover closed its side
+        private Exception failure;      // to fail the sessions with once the pipeline drains
+        private boolean closed;
+
+        NioConnection(SelectorLoop loop, SocketChannel channel, SessionDemux demux) {
+            this.loop = loop;
+            this.channel = channel;
+            this.demux = demux;
+        }
+
+        void onReadable() throws IOException {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                // Let queued messages finish, then fail what is still open
+                disconnected = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                pump();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+
+            if (done) {
+                // Result already sent, drain whatever the prover still writes
+                readBuffer.clear();
+                return;
+            }
+            pump();
+        }
+
+        void onWritable() throws IOException {
+            flush();
+        }
+
+        /**
+         * Move the pipeline forward: decode buffered frames, hand them to the
+         * verification pool, or apply a pending failure once nothing is in flight.
+         */
+        private void pump() throws IOException {
+            if (closed) {
+                return;
+            }
+            if (verifying) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                return;
+            }
+            decodeBuffered();
+
+            if (!inbound.isEmpty() && !done) {
+                submit();
+            } else if (disconnected) {
+                if (!demux.isDone() && (demux.hasOpenSessions() || !demux.isMultiplexed())) {
+                    demux.failAll(new IOException("Client disconnected"));
+                }
+                close();
+                return;
+            } else if (failure != null) {
+                if (!demux.isDone()) {
+                    demux.failAll(failure).forEach(reply -> writeQueue.add(encode(reply)));
+                }
+                failure = null;
+                inbound.clear();
+                done = demux.isDone();
+            }
+
+            // Read on while there is room in the pipeline, drain after the result. While a batch
+            // is being verified reads pause until onVerified, else a full read buffer makes
+            // the selector spin on a channel it cannot read from
+            boolean readable = !verifying && !disconnected && failure == null
+                && inbound.size() < MAX_PENDING_MESSAGES && (done || readBuffer.hasRemaining());
+            key.interestOps(readable ? key.interestOps() | SelectionKey.OP_READ
+                                     : key.interestOps() & ~SelectionKey.OP_READ);
+            flush();
+        }
+
+        void pumpOrClose() {
+            try {
+                pump();
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        // Pull complete frames out of the read buffer until the pipeline is full
+        private void decodeBuffered() throws IOException {
+            if (done || failure != null || disconnected && readBuffer.position() == 0) {
+                return;
+            }
+            readBuffer.flip();
+            if (format == null && !negotiateFormat()) {
+                readBuffer.compact();
+                return;
+            }
+            boolean incomplete = false;
+            while (inbound.size() < MAX_PENDING_MESSAGES) {
+                ProtocolMessage msg;
+                try {
+                    msg = nextMessage();
+                } catch (Exception e) {
+                    // A broken frame leaves the stream unusable for every session on it
+                    failure = e;
+                    break;
+                }
+                if (msg == null) {
+                    incomplete = true;
+                    break;
+                }
+                inbound.add(msg);
+            }
+            readBuffer.compact();
+
+            if (incomplete && !readBuffer.hasRemaining()) {
+                growReadBuffer();
+            } else if (readBuffer.position() == 0 && readBuffer.capacity() > INITIAL_BUFFER_BYTES) {
+                // Give large buffers back once a big COMMIT has been consumed
+                readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+            }
+        }
+
+        // Hand every queued message to one verification task, or wait for room on the pool
+        private void submit() {
+            List<ProtocolMessage> batch = new ArrayList<>(inbound);
+            Runnable task = () -> {
+                List<ByteBuffer> replies = new ArrayList<>();
+                RuntimeException error = null;
+                boolean finished;
+                try {
+                    for (ProtocolMessage msg : batch) {
+                        if (demux.isDone()) {
+                            break;
+                        }
+                        ProtocolMessage reply = demux.handle(msg);
+                        if (reply != null) {
+                            replies.add(encode(reply));
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+                finished = demux.isDone();
+                RuntimeException taskError = error;
+                loop.post(() -> onVerified(replies, finished, taskError));
+            };
+
+            if (verificationPool == null) {
+                task.run();
+            } else if (!verificationPool.trySubmit(task)) {
+                loop.stalled.add(this);
+                return;
+            }
+            inbound.clear();
+            verifying = true;
+        }
+
+        // Back on the selector thread with the replies of one batch
+        private void onVerified(List<ByteBuffer> replies, boolean finished, RuntimeException error) {
+            verifying = false;
+            if (closed) {
+                return;
+            }
+            writeQueue.addAll(replies);
+            done = finished;
+            if (error != null && failure == null) {
+                failure = error;
+            }
+            pumpOrClose();
+        }
+
+        // Pick the wire format from the first bytes, false until enough have arrived
+        private boolean negotiateFormat() throws IOException {
+            if (!readBuffer.hasRemaining()) {
+                return false;
+            }
+            if (!WireFormat.startsBinary(readBuffer.get(readBuffer.position()))) {
+                format = WireFormat.JSON;
+                return true;
+            }
+            if (readBuffer.remaining() < WireFormat.magicLength()) {
+                return false;
+            }
+            byte[] magic = new byte[WireFormat.magicLength()];
+            readBuffer.get(magic);
+            if (!WireFormat.isMagic(magic)) {
+                throw new IOException("Unsupported binary wire format version");
+            }
+            format = WireFormat.BINARY;
+            writeQueue.add(ByteBuffer.wrap(magic));
+            return true;
+        }
+
+        // Extract one complete message from the read buffer, or null if incomplete
+        private ProtocolMessage nextMessage() throws IOException {
+            if (format == WireFormat.BINARY) {
+                if (readBuffer.remaining() < 4) {
+                    return null;
+                }
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length <= 0 || length > maxMessageBytes - 4) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    return null;
+                }
+                readBuffer.position(readBuffer.position() + 4);
+                ByteBuffer payload = readBuffer.slice();
+                payload.limit(length);
+                readBuffer.position(readBuffer.position() + length);
+                // Decoding copies everything out, so the read buffer can be compacted afterwards
+                return BinaryCodec.decode(payload);
+            }
+
+            String line = nextLine();
+            return line == null ? null : ProtocolMessage.fromJSON(line);
+        }
+
+        // Extract one '\n'-terminated line from the read buffer, or null if incomplete
+        private String nextLine() {
+            int start = readBuffer.position();
+            for (int i = start; i < readBuffer.limit(); i++) {
+                if (readBuffer.get(i) == '\n') {
+                    int end = i;
+                    if (end > start && readBuffer.get(end - 1) == '\r') {
+                        end--;
+                    }
+                    byte[] bytes = new byte[end - start];
+                    readBuffer.get(bytes);
+                    readBuffer.position(i + 1);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+            }
+            return null;
+        }
+
+        private void growReadBuffer() {
+            if (readBuffer.capacity() >= maxMessageBytes) {
+                failure = new IOException("Message exceeds " + maxMessageBytes + " bytes");
+                return;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(maxMessageBytes, readBuffer.capacity() * 2));
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+
+        // Runs on the verification worker too; the format is fixed before the first message
+        private ByteBuffer encode(ProtocolMessage message) {
+            byte[] bytes = format == WireFormat.BINARY
+                ? BinaryCodec.encode(message)
+                : (message.toJSON() + "\n").getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.wrap(bytes);
+        }
+
+        private void flush() throws IOException {
+            while (!writeQueue.isEmpty()) {
+                ByteBuffer head = writeQueue.peek();
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+            if (done && !outputShutdown) {
+                // Half-close so the prover sees the result before the socket goes away
+                channel.shutdownOutput();
+                outputShutdown = true;
+                readBuffer = ByteBuffer.allocate(256);
+            }
+        }
+
+        void close() {
+            closed = true;
+            loop.connections.remove(this);
+            loop.stalled.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -2,272 +2,344 @@ package server;
 
 import common.*;
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.*;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ZKPServer {
-    
+
+    // How long a stored session may wait for its prover's next message
+    public static final long SESSION_IDLE_MILLIS = 10 * 60_000;
+
     private int port;
-    private Graph graph;
+    private ServedGraph graph;
     private ServerSocket serverSocket;
     private Socket clientSocket;
-    private BufferedReader in;
-    private PrintWriter out;
-    
-    // Store commitments for current round
-    private List<String> currentCommitments;
-    
-    // Track revealed colours across all rounds
-    private Set<String> allRevealedColours;
-    
-    // Track failure type
-    private String failureType;
-    
-    public ZKPServer(int port, Graph graph) {
+    private ExecutorService sessionExecutor;
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+    private final ServerMetrics metrics = new ServerMetrics();
+    private TranscriptLog transcript;
+    private VerdictCache verdictCache;
+    private GraphRegistry registry;
+    private SessionStore sessionStore;
+    private double soundnessBits;
+    private volatile boolean running;
+
+    public ZKPServer(int port, GraphView graph) {
         this.port = port;
-        this.graph = graph;
-        this.allRevealedColours = new HashSet<>();
-        this.failureType = null;
+        this.graph = ServedGraph.of(graph);
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // The default graph, for provers that do not name one
+    public ServedGraph getServedGraph() {
+        return graph;
+    }
+
+    // Record every session in this transcript, must be called before start() or serve()
+    public void setTranscript(TranscriptLog transcript) {
+        this.transcript = transcript;
+    }
+
+    // Answer provers that proved this graph recently from the cache, must be called before start() or serve()
+    public void setVerdictCache(VerdictCache verdictCache) {
+        this.verdictCache = verdictCache;
+    }
+
+    // Serve any graph of the registry a prover names in its HELLO, must be called before start() or serve()
+    public void setGraphRegistry(GraphRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Keep multiplexed sessions in this store, shared with other servers, must be called before serve()
+    public void setSessionStore(SessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+    }
+
+    // Run every session until a 2^-bits soundness error on its graph, must be called before start() or serve()
+    public void setSoundnessTarget(double soundnessBits) {
+        this.soundnessBits = soundnessBits;
+    }
+
+    private ZKPSession newSession(int numRounds, boolean verbose) {
+        return newSession(nextSessionId.getAndIncrement(), numRounds, verbose);
+    }
+
+    private ZKPSession newSession(long sessionId, int numRounds, boolean verbose) {
+        ZKPSession session = new ZKPSession(sessionId, graph, numRounds, verbose, metrics);
+        if (soundnessBits > 0) {
+            session.setSoundnessTarget(soundnessBits);
+        }
+        return attach(session);
+    }
+
+    private SessionDemux newDemux(int numRounds) {
+        if (sessionStore == null) {
+            return new SessionDemux(() -> newSession(numRounds, false));
+        }
+        return new SessionDemux(() -> newSession(numRounds, false), sessionStore, new SessionDemux.StoredSessions() {
+            @Override
+            public ZKPSession create(long sessionId) {
+                return newSession(sessionId, numRounds, false);
+            }
+
+            @Override
+            public ZKPSession restore(ByteBuffer state, ByteBuffer commitments) throws IOException {
+                return attach(ZKPSession.restore(state, commitments, graph, registry, metrics));
+            }
+        });
+    }
+
+    private ZKPSession attach(ZKPSession session) {
+        if (transcript != null) {
+            session.setTranscript(transcript);
+        }
+        if (verdictCache != null) {
+            session.setVerdictCache(verdictCache);
+        }
+        if (registry != null) {
+            session.setGraphRegistry(registry);
+        }
+        return session;
     }
-    
+
     // Start the server and listen for connections
     public void start() throws IOException {
-        serverSocket = new ServerSocket(port);
-        System.out.println("ZKP Server started on port " + port);
-        System.out.println("Graph: " + graph.getNumVertices() + " vertices, " + 
-                           graph.getEdges().size() + " edges");
+        openServerSocket();
         System.out.println("Waiting for client connection...\n");
-        
+
         clientSocket = serverSocket.accept();
-        in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        out = new PrintWriter(clientSocket.getOutputStream(), true);
-        
+
         System.out.println("Client connected from: " + clientSocket.getInetAddress());
     }
 
     // Run the verification protocol for specified number of rounds
     public void runProtocol(int numRounds) throws IOException {
-        System.out.println("\nStarting Zero-Knowledge Verification Protocol");
-        System.out.println("Rounds to execute: " + numRounds);
-        
-        boolean allRoundsValid = true;
-        int completedRounds = 0;
-        
-        for (int round = 1; round <= numRounds; round++) {
-            System.out.println("Round " + round + "/" + numRounds);
-            
-            try {
-                // Step 1: Receive commitments from client
-                String commitJson = receiveMessage();
-                ProtocolMessage msg = ProtocolMessage.fromJSON(commitJson);
-                
-                if (!(msg instanceof CommitMessage)) {
-                    throw new IOException("Expected COMMIT message");
-                }
-                
-                CommitMessage commit = (CommitMessage) msg;
-                currentCommitments = commit.getCommitments();
-                System.out.println("   Received commitments (" + currentCommitments.size() + " vertices)");
-                
-                // Step 2: Select random edge and challenge client
-                int[] edge = selectRandomEdge();
-                int v1 = edge[0];
-                int v2 = edge[1];
-                
-                ChallengeMessage challenge = new ChallengeMessage(v1, v2, round);
-                sendMessage(challenge);
-                System.out.println("   Challenge: Reveal edge (" + v1 + ", " + v2 + ")");
-                
-                // Step 3: Receive and verify the revealed colours
-                String revealJson = receiveMessage();
-                ProtocolMessage revealMsg = ProtocolMessage.fromJSON(revealJson);
-                
-                if (!(revealMsg instanceof RevealMessage)) {
-                    throw new IOException("Expected REVEAL message");
-                }
-                
-                RevealMessage reveal = (RevealMessage) revealMsg;
-                
-                // Track revealed colours
-                allRevealedColours.add(reveal.getColour1());
-                allRevealedColours.add(reveal.getColour2());
-                
-                // Check immediately if more than 3 colours detected
-                if (allRevealedColours.size() > 3) {
-                    System.out.println("\nDETECTED: More than 3 colours used!");
-                    System.out.println("   Colours revealed: " + allRevealedColours);
-                    System.out.println("   Total unique colours: " + allRevealedColours.size());
-                    failureType = "FAILURE_CASE_2_TOO_MANY_COLORS";
-                    allRoundsValid = false;
-                    completedRounds = round;
-                    
-                    // Send result immediately and break
-                    sendFailureResult(completedRounds, "FAILURE CASE 2: Used " + allRevealedColours.size() + " colours instead of 3!");
-                    displayFinalResults(allRoundsValid, completedRounds, numRounds);
-                    return;
-                }
-                
-                // Verify this round
-                boolean roundValid = verifyRound(reveal, v1, v2);
-                
-                if (roundValid) {
-                    System.out.println("   Round " + round + " PASSED");
-                    completedRounds++;
-                } else {
-                    System.out.println("   Round " + round + " FAILED");
-                    allRoundsValid = false;
-                    completedRounds = round;
-                    
-                    // Send result immediately and break
-                    sendFailureResult(completedRounds, "FAILURE CASE 1: Adjacent vertices have same colour!");
-                    displayFinalResults(allRoundsValid, completedRounds, numRounds);
-                    return;
-                }
-                
-                System.out.println();
-                
-                // Small delay
-                Thread.sleep(100);
-                
-            } catch (Exception e) {
-                System.err.println("   Error in round " + round + ": " + e.getMessage());
-                allRoundsValid = false;
-                completedRounds = round;
-                sendFailureResult(completedRounds, "Verification failed. Invalid colouring or cheating detected.");
-                displayFinalResults(false, completedRounds, numRounds);
-                return;
-            }
-        }
-        
-        // All rounds passed successfully
-        ResultMessage result = new ResultMessage(true, 
-            "Verification successful! Client knows valid 3-colouring.", 
-            completedRounds);
-        sendMessage(result);
-        displayFinalResults(true, completedRounds, numRounds);
+        new BlockingConnection(clientSocket, newSession(numRounds, true), true).runProtocol();
     }
-    
+
     /**
-     * Verify a single round of the protocol
+     * Accept provers until stopped, running each one in its own session.
+     * Sessions run on virtual threads when the JVM supports them.
      */
-    private boolean verifyRound(RevealMessage reveal, int v1, int v2) {
-        String colour1 = reveal.getColour1();
-        String colour2 = reveal.getColour2();
-        String nonce1 = reveal.getNonce1();
-        String nonce2 = reveal.getNonce2();
-        
-        System.out.println("   Verifying revealed colours...");
-        System.out.println("      v" + v1 + " = " + colour1);
-        System.out.println("      v" + v2 + " = " + colour2);
-        
-        // Check 1: Verify commitments match
-        String commitment1 = currentCommitments.get(v1);
-        String commitment2 = currentCommitments.get(v2);
-        
-        boolean commit1Valid = CryptoUtils.verifyCommitment(commitment1, colour1, nonce1);
-        boolean commit2Valid = CryptoUtils.verifyCommitment(commitment2, colour2, nonce2);
-        
-        if (!commit1Valid || !commit2Valid) {
-            System.out.println("      Commitment verification failed!");
-            return false;
-        }
-        
-        System.out.println("      Commitments verified");
-        
-        // Check 2: Verify colours are different (adjacent vertices must have different colours)
-        if (colour1.equals(colour2)) {
-            System.out.println("      Adjacent vertices have same colour!");
-            failureType = "FAILURE_CASE_1_SAME_COLOR";
-            return false;
+    public void serve(int numRounds) throws IOException {
+        openServerSocket();
+        sessionExecutor = newSessionExecutor();
+        running = true;
+        System.out.println("Accepting concurrent sessions...\n");
+
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                // Server socket closed by stop()
+                break;
+            }
+            sessionExecutor.execute(new BlockingConnection(socket, newDemux(numRounds), false));
         }
-        
-        System.out.println("      Colours are different");
-        
-        return true;
     }
-    
-    // Select a random edge from the graph
-    private int[] selectRandomEdge() {
-        List<int[]> edges = graph.getEdges();
-        Random random = new Random();
-        return edges.get(random.nextInt(edges.size()));
-    }
-    
-    // Send a message to the client
-    private void sendMessage(ProtocolMessage message) {
-        out.println(message.toJSON());
-    }
-    
-    // Receive a message from the client
-    private String receiveMessage() throws IOException {
-        return in.readLine();
+
+    private void openServerSocket() throws IOException {
+        serverSocket = new ServerSocket(port);
+        metrics.register(port);
+        System.out.println("ZKP Server started on port " + port);
+        System.out.println("Graph: " + graph.getNumVertices() + " vertices, " +
+                           graph.getEdgeIndex().size() + " edges");
     }
-    
-    // Helper method to send failure result
-    private void sendFailureResult(int completedRounds, String failureMsg) {
-        ResultMessage result = new ResultMessage(false, failureMsg, completedRounds);
-        sendMessage(result);
-        out.flush(); // Ensure message is sent before we return
+
+    // Virtual threads need Java 21+, fall back to a cached platform pool otherwise
+    static ExecutorService newSessionExecutor() {
         try {
-            Thread.sleep(200); // Give client time to receive the message
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
         }
     }
-    
-    // Helper method to display final results
-    private void displayFinalResults(boolean allRoundsValid, int completedRounds, int numRounds) {
-        System.out.println();
-        if (allRoundsValid) {
-            System.out.println("VERIFICATION COMPLETE - SUCCESS!");
-            System.out.println("Client proved knowledge of valid 3-colouring");
-            System.out.println("Server learned NOTHING about actual colours");
-            System.out.println("Colours observed: " + allRevealedColours.size() + " unique colours (permuted)");
-        } else {
-            System.out.println("VERIFICATION FAILED");
-            if ("FAILURE_CASE_1_SAME_COLOR".equals(failureType)) {
-                System.out.println("FAILURE CASE 1: Adjacent vertices had same colour");
-            } else if ("FAILURE_CASE_2_TOO_MANY_COLORS".equals(failureType)) {
-                System.out.println("FAILURE CASE 2: Used " + allRevealedColours.size() + " colours (expected 3)");
-                System.out.println("   Revealed colours: " + allRevealedColours);
-            } else {
-                System.out.println("Client failed to prove valid colouring");
+
+    // Drop sessions their provers abandoned, every minute on a daemon thread
+    private static void schedulePurge(SessionStore sessionStore) {
+        ScheduledExecutorService purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "zkp-session-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(() -> {
+            try {
+                int purged = sessionStore.purge(SESSION_IDLE_MILLIS);
+                if (purged > 0) {
+                    System.out.println("Purged " + purged + " idle sessions");
+                }
+            } catch (IOException e) {
+                System.err.println("Error purging sessions: " + e.getMessage());
             }
-        }
-        System.out.println("Rounds completed: " + completedRounds + "/" + numRounds);
+        }, 1, 1, TimeUnit.MINUTES);
     }
-    
+
     // Stop the server and close connections
     public void stop() {
+        running = false;
         try {
-            if (in != null) in.close();
-            if (out != null) out.close();
             if (clientSocket != null) clientSocket.close();
             if (serverSocket != null) serverSocket.close();
+            if (sessionExecutor != null) sessionExecutor.shutdown();
             System.out.println("\nServer stopped");
         } catch (IOException e) {
             System.err.println("Error closing connections: " + e.getMessage());
         }
     }
-    
+
     public static void main(String[] args) {
         try {
-            // Create the same graph structure as the client
-            Graph graph = Graph.createSampleGraph();
-            
+            // Create the same graph structure as the client, or map a prebuilt graph file,
+            // scanning all of it first with --check
+            int graphFlag = Arrays.asList(args).indexOf("--graph");
+            GraphView graph = graphFlag >= 0 && graphFlag + 1 < args.length
+                ? GraphFile.open(Paths.get(args[graphFlag + 1]), Arrays.asList(args).contains("--check"))
+                : Graph.createSampleGraph();
+
             System.out.println("Zero-Knowledge Proof - Graph Colouring Server");
             System.out.println(graph);
-            
+
+            // Rounds per proof, 100 unless given, e.g. --rounds 20
+            int roundsFlag = Arrays.asList(args).indexOf("--rounds");
+            int numRounds = roundsFlag >= 0 && roundsFlag + 1 < args.length
+                ? Integer.parseInt(args[roundsFlag + 1])
+                : 100;
+
+            // Or run each session until a target soundness error is reached, e.g. --soundness 40 for 2^-40
+            int soundnessFlag = Arrays.asList(args).indexOf("--soundness");
+            double soundnessBits = 0;
+            if (soundnessFlag >= 0 && soundnessFlag + 1 < args.length) {
+                soundnessBits = Double.parseDouble(args[soundnessFlag + 1]);
+                RoundScheduler scheduler = RoundScheduler.forGraph(graph, soundnessBits);
+                numRounds = scheduler.getRequiredRounds();
+                System.out.println("Round schedule: " + scheduler);
+            }
+
+            // Port to listen on, 8888 unless given, e.g. --port 8889 for a second server on this host
+            int portFlag = Arrays.asList(args).indexOf("--port");
+            int port = portFlag >= 0 && portFlag + 1 < args.length
+                ? Integer.parseInt(args[portFlag + 1])
+                : 8888;
+
             // Create and start server
-            ZKPServer server = new ZKPServer(8888, graph);
+            ZKPServer server = new ZKPServer(port, graph);
+            if (soundnessBits > 0) {
+                server.setSoundnessTarget(soundnessBits);
+            }
+
+            // Optional Prometheus scrape endpoint, e.g. --metrics 9100
+            int metricsFlag = Arrays.asList(args).indexOf("--metrics");
+            if (metricsFlag >= 0 && metricsFlag + 1 < args.length) {
+                MetricsEndpoint.start(server.getMetrics(), Integer.parseInt(args[metricsFlag + 1]));
+            }
+
+            // Optional audit transcript of every proof, e.g. --transcript transcripts/
+            int transcriptFlag = Arrays.asList(args).indexOf("--transcript");
+            TranscriptLog transcript = null;
+            if (transcriptFlag >= 0 && transcriptFlag + 1 < args.length) {
+                transcript = new TranscriptLog(Paths.get(args[transcriptFlag + 1]));
+                server.setTranscript(transcript);
+                // The servers run until killed; write out what is still queued on the way down
+                Runtime.getRuntime().addShutdownHook(new Thread(transcript::close));
+                System.out.println("Writing transcripts to " + transcript.getDirectory());
+            }
+
+            // Optional directory of further graphs named <fingerprint>.zkg, loaded when a prover names them,
+            // e.g. --graphs registry/ --graph-budget 4096 to keep at most about 4 GB of them loaded
+            int graphsFlag = Arrays.asList(args).indexOf("--graphs");
+            GraphRegistry registry = null;
+            if (graphsFlag >= 0 && graphsFlag + 1 < args.length) {
+                int budgetFlag = Arrays.asList(args).indexOf("--graph-budget");
+                long budget = budgetFlag >= 0 && budgetFlag + 1 < args.length
+                    ? Long.parseLong(args[budgetFlag + 1]) << 20
+                    : GraphRegistry.DEFAULT_MEMORY_BUDGET;
+                registry = new GraphRegistry(Paths.get(args[graphsFlag + 1]), budget);
+                registry.pin(server.getServedGraph());
+                server.setGraphRegistry(registry);
+                System.out.println("Serving graphs from " + args[graphsFlag + 1] + " within " + (budget >> 20) + " MB");
+            }
+
+            // Optional verdict cache for provers that send HELLO, e.g. --verdict-cache 900 for a 15 minute ttl.
+            // A cached verdict is only served to a HELLO with the token from that proof's result, see VerdictCache
+            int cacheFlag = Arrays.asList(args).indexOf("--verdict-cache");
+            VerdictCache verdictCache = null;
+            if (cacheFlag >= 0 && cacheFlag + 1 < args.length) {
+                long ttlSeconds = Long.parseLong(args[cacheFlag + 1]);
+                verdictCache = new VerdictCache(VerdictCache.DEFAULT_MAX_ENTRIES, ttlSeconds * 1000, server.getMetrics());
+                server.setVerdictCache(verdictCache);
+                System.out.println("Caching verdicts for " + ttlSeconds + "s, up to " +
+                                   VerdictCache.DEFAULT_MAX_ENTRIES + " provers");
+            }
+
+            // Optional store for multiplexed sessions, so any server sharing it can take a session's next message:
+            // --session-store memory within this process, or a directory shared by servers on this host.
+            // Sessions idle for SESSION_IDLE_MILLIS are dropped
+            int storeFlag = Arrays.asList(args).indexOf("--session-store");
+            SessionStore sessionStore = null;
+            if (storeFlag >= 0 && storeFlag + 1 < args.length) {
+                String location = args[storeFlag + 1];
+                sessionStore = location.equals("memory")
+                    ? new InMemorySessionStore()
+                    : new FileSessionStore(Paths.get(location));
+                server.setSessionStore(sessionStore);
+                schedulePurge(sessionStore);
+                System.out.println("Keeping multiplexed sessions in " +
+                                   (location.equals("memory") ? "memory" : "directory " + location));
+            }
+
+            if (args.length > 0 && args[0].equals("--concurrent")) {
+                // Serve many provers at once until the process is killed
+                server.serve(numRounds);
+                return;
+            }
+
+            if (args.length > 0 && args[0].equals("--nio")) {
+                // Event-driven server with one selector loop per core, verifying on
+                // a worker pool of the same size unless given, e.g. --workers 0 for inline
+                int threads = Runtime.getRuntime().availableProcessors();
+                int workersFlag = Arrays.asList(args).indexOf("--workers");
+                int workers = workersFlag >= 0 && workersFlag + 1 < args.length
+                    ? Integer.parseInt(args[workersFlag + 1])
+                    : threads;
+                ZKPNioServer nioServer = new ZKPNioServer(port, server.getServedGraph(), numRounds, threads,
+                                                          server.getMetrics(), workers);
+                if (transcript != null) {
+                    nioServer.setTranscript(transcript);
+                }
+                if (verdictCache != null) {
+                    nioServer.setVerdictCache(verdictCache);
+                }
+                if (registry != null) {
+                    nioServer.setGraphRegistry(registry);
+                }
+                if (sessionStore != null) {
+                    nioServer.setSessionStore(sessionStore);
+                }
+                if (soundnessBits > 0) {
+                    nioServer.setSoundnessTarget(soundnessBits);
+                }
+                nioServer.serve();
+                return;
+            }
+
             server.start();
-            
-            // Run protocol for 100 rounds
-            server.runProtocol(100);
-            
+
+            // Run protocol for the requested rounds
+            server.runProtocol(numRounds);
+
             // Stop server
             server.stop();
-            
+
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
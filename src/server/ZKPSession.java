@@ -0,0 +1,905 @@
+package server;
+
+import common.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * One verification session with a single prover.
+ * All round state lives here so the server can run many sessions at once.
+ * The session is a small state machine driven by incoming messages, so it
+ * does not care whether the transport is a blocking socket or a selector.
+ * Between messages a session can be saved with snapshot() and picked up
+ * again with restore(), possibly by another server process.
+ */
+public class ZKPSession {
+
+    public enum Phase {
+        AWAIT_COMMIT,   // waiting for the prover's commitments
+        AWAIT_REVEAL,   // challenge sent, waiting for the reveal
+        AWAIT_BATCH_REVEAL, // batch of challenges sent, waiting for all reveals
+        FINISHED        // result sent, nothing more to do
+    }
+
+    private final long id;
+    private int numRounds;
+    private final boolean verbose;
+    private final ServerMetrics metrics;
+    private final long startedMillis;
+
+    // Layout of snapshot(), bump when it changes so old states are refused rather than misread
+    private static final int SNAPSHOT_VERSION = 3;
+
+    // The graph being proven: the server's default until a HELLO names another
+    private ServedGraph served;
+    private GraphView graph;
+    private ChallengeSampler sampler;
+
+    // Optional soundness target, see setSoundnessTarget; numRounds follows it
+    private RoundScheduler scheduler;
+
+    // Where a HELLO's graph is looked up, see setGraphRegistry
+    private GraphRegistry registry;
+
+    // Optional audit trail, see setTranscript
+    private TranscriptLog transcript;
+    private boolean transcriptStarted;
+
+    // Optional cache of recent successes, see setVerdictCache
+    private VerdictCache verdictCache;
+
+    // Set by the prover's HELLO, null for provers that do not send one or stay anonymous
+    private boolean helloReceived;
+    private String proverId;
+    // The HELLO brought a valid verdict token for proverId, see VerdictCache
+    private boolean proverAuthenticated;
+
+    // When the current wait for the prover began, for the phase latency metrics
+    private long phaseStart;
+
+    private Phase phase;
+    private int round;
+    private int completedRounds;
+    private int challengeV1;
+    private int challengeV2;
+    private boolean verified;
+    private boolean fromCache;
+
+    // Store commitments for current round, packed off-heap
+    private CommitmentBuffer currentCommitments;
+
+    // Merkle mode: only the root of the current round's commitments
+    private String currentRoot;
+
+    // Track revealed colours across all rounds
+    private Set<String> allRevealedColours;
+
+    // Batch mode: one commitment set and challenge per parallel round
+    private List<CommitmentBuffer> batchCommitments;
+    private List<int[]> batchChallenges;
+    private List<Boolean> roundVerdicts;
+
+    // The commitments above arrived since the last snapshotCommitments()
+    private boolean commitmentsChanged;
+
+    // Track failure type
+    private String failureType;
+
+    public ZKPSession(long id, GraphView graph, int numRounds, boolean verbose) {
+        this(id, ServedGraph.of(graph), numRounds, verbose, new ServerMetrics());
+    }
+
+    public ZKPSession(long id, ServedGraph graph, int numRounds, boolean verbose, ServerMetrics metrics) {
+        this(id, System.currentTimeMillis(), graph, numRounds, verbose, metrics);
+        metrics.sessionStarted();
+
+        log("\nStarting Zero-Knowledge Verification Protocol");
+        log("Rounds to execute: " + numRounds);
+    }
+
+    private ZKPSession(long id, long startedMillis, ServedGraph graph, int numRounds, boolean verbose,
+                       ServerMetrics metrics) {
+        this.id = id;
+        this.startedMillis = startedMillis;
+        this.numRounds = numRounds;
+        this.verbose = verbose;
+        useGraph(graph);
+        this.phase = Phase.AWAIT_COMMIT;
+        this.round = 1;
+        this.allRevealedColours = new HashSet<>();
+        this.roundVerdicts = new ArrayList<>();
+        this.failureType = null;
+        this.metrics = metrics;
+        this.phaseStart = System.nanoTime();
+    }
+
+    /**
+     * The session's state between two messages, for a SessionStore. The
+     * transcript, verdict cache and registry are not part of it; whoever
+     * restores the session attaches its own. Neither are the commitments,
+     * one digest per vertex, which change once per round at most and are
+     * saved apart with snapshotCommitments(); the state only records the
+     * round they belong to, so it stays a few hundred bytes per message.
+     */
+    public ByteBuffer snapshot() {
+        byte[] fingerprint = utf8(served.getFingerprint());
+        byte[] prover = utf8(proverId);
+        byte[] failure = utf8(failureType);
+        byte[] root = utf8(currentRoot);
+        List<byte[]> colours = new ArrayList<>();
+        for (String colour : allRevealedColours) {
+            colours.add(utf8(colour));
+        }
+
+        int size = 4 + 4 + 8 + 8 + 4 + 8 + 1 + 4 * 4 + 1
+                 + stringSize(fingerprint) + stringSize(prover) + stringSize(failure) + stringSize(root)
+                 + 4 + 4 + roundVerdicts.size() + 4;
+        for (byte[] colour : colours) {
+            size += stringSize(colour);
+        }
+        if (batchChallenges != null) {
+            size += batchChallenges.size() * 8;
+        }
+
+        ByteBuffer state = ByteBuffer.allocate(size);
+        state.putInt(SNAPSHOT_VERSION);
+        state.putInt(hasCommitments() ? round : -1);
+        state.putLong(id);
+        state.putLong(startedMillis);
+        state.putInt(numRounds);
+        state.putDouble(scheduler != null ? scheduler.getSoundnessBits() : 0);
+        state.put((byte) phase.ordinal());
+        state.putInt(round);
+        state.putInt(completedRounds);
+        state.putInt(challengeV1);
+        state.putInt(challengeV2);
+        state.put((byte) ((verified ? 1 : 0) | (fromCache ? 2 : 0) | (helloReceived ? 4 : 0) | (transcriptStarted ? 8 : 0)
+                           | (proverAuthenticated ? 16 : 0)));
+        putString(state, fingerprint);
+        putString(state, prover);
+        putString(state, failure);
+        putString(state, root);
+        state.putInt(colours.size());
+        for (byte[] colour : colours) {
+            putString(state, colour);
+        }
+        state.putInt(roundVerdicts.size());
+        for (boolean verdict : roundVerdicts) {
+            state.put((byte) (verdict ? 1 : 0));
+        }
+        state.putInt(batchChallenges != null ? batchChallenges.size() : -1);
+        if (batchChallenges != null) {
+            for (int[] edge : batchChallenges) {
+                state.putInt(edge[0]);
+                state.putInt(edge[1]);
+            }
+        }
+        state.flip();
+        return state;
+    }
+
+    // True if commitments arrived since the last snapshotCommitments(), which must be saved with this snapshot
+    public boolean commitmentsChanged() {
+        return commitmentsChanged;
+    }
+
+    /**
+     * The commitments awaiting their reveals, tagged with their round, for
+     * SessionStore.saveCommitments. Save them before the snapshot() that
+     * refers to them.
+     */
+    public ByteBuffer snapshotCommitments() {
+        int size = 4 + commitmentsSize(currentCommitments) + 4;
+        if (batchCommitments != null) {
+            for (CommitmentBuffer commitments : batchCommitments) {
+                size += commitmentsSize(commitments);
+            }
+        }
+        ByteBuffer saved = ByteBuffer.allocate(size);
+        saved.putInt(round);
+        putCommitments(saved, currentCommitments);
+        saved.putInt(batchCommitments != null ? batchCommitments.size() : -1);
+        if (batchCommitments != null) {
+            for (CommitmentBuffer commitments : batchCommitments) {
+                putCommitments(saved, commitments);
+            }
+        }
+        saved.flip();
+        commitmentsChanged = false;
+        return saved;
+    }
+
+    private boolean hasCommitments() {
+        return currentCommitments != null || batchCommitments != null;
+    }
+
+    // True if a state from snapshot() needs its commitments to be restored
+    public static boolean needsCommitments(ByteBuffer state) throws IOException {
+        if (state.remaining() < 8 || state.getInt(state.position()) != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported or corrupt session snapshot");
+        }
+        return state.getInt(state.position() + 4) >= 0;
+    }
+
+    /**
+     * A session saved by snapshot(), on any server of the same graphs, with
+     * the commitments from snapshotCommitments() if needsCommitments says
+     * it has any, else null. Its graph is the default one or is looked up in
+     * the registry, which may be null. The session counts as started on the
+     * server that created it, so the metrics of this one only see its rounds
+     * and its end.
+     */
+    public static ZKPSession restore(ByteBuffer state, ByteBuffer commitments, ServedGraph defaultGraph,
+                                     GraphRegistry registry, ServerMetrics metrics) throws IOException {
+        ByteBuffer in = state.duplicate();
+        try {
+            int version = in.getInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported session snapshot version " + version);
+            }
+            int commitmentsRound = in.getInt();
+            long id = in.getLong();
+            long startedMillis = in.getLong();
+            int numRounds = in.getInt();
+            double soundnessBits = in.getDouble();
+            Phase phase = Phase.values()[in.get()];
+            int round = in.getInt();
+            int completedRounds = in.getInt();
+            int challengeV1 = in.getInt();
+            int challengeV2 = in.getInt();
+            byte flags = in.get();
+            String fingerprint = getString(in);
+
+            ServedGraph graph = defaultGraph.getFingerprint().equals(fingerprint) ? defaultGraph
+                : registry != null ? registry.get(fingerprint) : null;
+            if (graph == null) {
+                throw new IOException("Graph " + fingerprint + " is not available");
+            }
+
+            ZKPSession session = new ZKPSession(id, startedMillis, graph, numRounds, false, metrics);
+            if (soundnessBits > 0) {
+                session.scheduler = new RoundScheduler(graph.getEdgeIndex().size(), soundnessBits);
+            }
+            session.registry = registry;
+            session.phase = phase;
+            session.round = round;
+            session.completedRounds = completedRounds;
+            session.challengeV1 = challengeV1;
+            session.challengeV2 = challengeV2;
+            session.verified = (flags & 1) != 0;
+            session.fromCache = (flags & 2) != 0;
+            session.helloReceived = (flags & 4) != 0;
+            session.transcriptStarted = (flags & 8) != 0;
+            session.proverAuthenticated = (flags & 16) != 0;
+            session.proverId = getString(in);
+            session.failureType = getString(in);
+            session.currentRoot = getString(in);
+            for (int i = in.getInt(); i > 0; i--) {
+                session.allRevealedColours.add(getString(in));
+            }
+            for (int i = in.getInt(); i > 0; i--) {
+                session.roundVerdicts.add(in.get() != 0);
+            }
+            int challenges = in.getInt();
+            if (challenges >= 0) {
+                session.batchChallenges = new ArrayList<>(challenges);
+                for (int i = 0; i < challenges; i++) {
+                    session.batchChallenges.add(new int[]{in.getInt(), in.getInt()});
+                }
+            }
+            if (commitmentsRound >= 0) {
+                session.restoreCommitments(commitmentsRound, commitments);
+            }
+            return session;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt session snapshot", e);
+        }
+    }
+
+    private void restoreCommitments(int expectedRound, ByteBuffer saved) throws IOException {
+        if (saved == null) {
+            throw new IOException("Commitments of round " + expectedRound + " are missing");
+        }
+        ByteBuffer in = saved.duplicate();
+        int savedRound = in.getInt();
+        if (savedRound != expectedRound) {
+            throw new IOException("Saved commitments are from round " + savedRound + ", not " + expectedRound);
+        }
+        currentCommitments = getCommitments(in);
+        int sets = in.getInt();
+        if (sets >= 0) {
+            batchCommitments = new ArrayList<>(sets);
+            for (int i = 0; i < sets; i++) {
+                batchCommitments.add(getCommitments(in));
+            }
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int stringSize(byte[] value) {
+        return 4 + (value != null ? value.length : 0);
+    }
+
+    // Length first, -1 for null
+    private static void putString(ByteBuffer state, byte[] value) {
+        state.putInt(value != null ? value.length : -1);
+        if (value != null) {
+            state.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer state) {
+        int length = state.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        state.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static int commitmentsSize(CommitmentBuffer commitments) {
+        return 4 + (commitments != null ? commitments.size() * CommitmentBuffer.DIGEST_BYTES : 0);
+    }
+
+    // Count first, -1 for none
+    private static void putCommitments(ByteBuffer state, CommitmentBuffer commitments) {
+        state.putInt(commitments != null ? commitments.size() : -1);
+        if (commitments != null) {
+            commitments.writeTo(state);
+        }
+    }
+
+    private static CommitmentBuffer getCommitments(ByteBuffer state) {
+        int count = state.getInt();
+        if (count < 0) {
+            return null;
+        }
+        if ((long) count * CommitmentBuffer.DIGEST_BYTES > state.remaining()) {
+            throw new IllegalArgumentException("Snapshot truncated in " + count + " commitments");
+        }
+        CommitmentBuffer commitments = CommitmentBuffer.acquire(count);
+        commitments.readFrom(state);
+        return commitments;
+    }
+
+    /**
+     * Hand this session's pooled memory back without ending it, once it
+     * has been saved and another server may carry on with it.
+     */
+    public void release() {
+        releaseCommitments();
+    }
+
+    // Record this session in an audit transcript; it starts with the session's first record
+    public void setTranscript(TranscriptLog transcript) {
+        this.transcript = transcript;
+    }
+
+    /**
+     * Answer provers that send HELLO from the cache when they proved this
+     * graph recently, and cache their verdict when they prove it now.
+     */
+    public void setVerdictCache(VerdictCache verdictCache) {
+        this.verdictCache = verdictCache;
+    }
+
+    /**
+     * Run until the passed rounds bound a cheater's success by 2^-bits on
+     * this session's graph, instead of for the fixed number of rounds.
+     * Must be called before the first message.
+     */
+    public void setSoundnessTarget(double soundnessBits) {
+        scheduler = new RoundScheduler(served.getEdgeIndex().size(), soundnessBits);
+        numRounds = scheduler.getRequiredRounds();
+        log("Round schedule: " + scheduler);
+    }
+
+    // Let a HELLO name any graph of this registry instead of the default one
+    public void setGraphRegistry(GraphRegistry registry) {
+        this.registry = registry;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public boolean isFinished() {
+        return phase == Phase.FINISHED;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public String getFailureType() {
+        return failureType;
+    }
+
+    /**
+     * Advance the state machine with one message from the prover.
+     * Returns the message to send back, or null if nothing is due yet.
+     */
+    public ProtocolMessage handle(ProtocolMessage msg) {
+        long received = System.nanoTime();
+        if (phase == Phase.AWAIT_COMMIT) {
+            // A HELLO is handshake, not a commitment; the wait before it is the client's own
+            if (msg instanceof CommitMessage || msg instanceof MerkleCommitMessage || msg instanceof BatchCommitMessage) {
+                metrics.recordCommitReceive(received - phaseStart);
+            }
+        } else if (phase != Phase.FINISHED) {
+            metrics.recordRevealReceive(received - phaseStart);
+        }
+
+        ProtocolMessage reply;
+        try {
+            reply = dispatch(msg);
+        } catch (Exception e) {
+            reply = fail(e);
+        }
+        phaseStart = System.nanoTime();
+        return reply;
+    }
+
+    private ProtocolMessage dispatch(ProtocolMessage msg) throws IOException {
+        switch (phase) {
+            case AWAIT_COMMIT:
+                if (msg instanceof HelloMessage) {
+                    return onHello((HelloMessage) msg);
+                }
+                if (msg instanceof BatchCommitMessage) {
+                    return onBatchCommit((BatchCommitMessage) msg);
+                }
+                if (msg instanceof MerkleCommitMessage) {
+                    return onMerkleCommit((MerkleCommitMessage) msg);
+                }
+                if (!(msg instanceof CommitMessage)) {
+                    throw reject(msg, "Expected COMMIT message");
+                }
+                return onCommit((CommitMessage) msg);
+            case AWAIT_REVEAL:
+                if (!(msg instanceof RevealMessage)) {
+                    throw reject(msg, "Expected REVEAL message");
+                }
+                return onReveal((RevealMessage) msg);
+            case AWAIT_BATCH_REVEAL:
+                if (!(msg instanceof BatchRevealMessage)) {
+                    throw reject(msg, "Expected BATCH_REVEAL message");
+                }
+                return onBatchReveal((BatchRevealMessage) msg);
+            default:
+                // Late messages after the result are ignored
+                msg.release();
+                return null;
+        }
+    }
+
+    // A message out of phase; its pooled commitments go back before the session fails
+    private static IllegalStateException reject(ProtocolMessage msg, String expected) {
+        msg.release();
+        return new IllegalStateException(expected);
+    }
+
+    /**
+     * The transport failed before the session could finish.
+     */
+    public ProtocolMessage fail(Exception e) {
+        System.err.println("   Error in round " + round + ": " + e.getMessage());
+        return finishWithFailure("Verification failed. Invalid colouring or cheating detected.");
+    }
+
+    // Optional step 0: the prover names its graph, and maybe itself, before the first commitment
+    private ProtocolMessage onHello(HelloMessage hello) throws IOException {
+        if (round != 1 || helloReceived) {
+            throw new IllegalStateException("HELLO must come before the first COMMIT");
+        }
+        helloReceived = true;
+        if (!served.getFingerprint().equals(hello.getFingerprint())) {
+            ServedGraph named = registry != null ? registry.get(hello.getFingerprint()) : null;
+            if (named == null) {
+                log("Unknown graph " + hello.getFingerprint());
+                return finishWithFailure("Unknown graph " + hello.getFingerprint());
+            }
+            useGraph(named);
+            log("Graph " + served.getFingerprint() + ": " + graph.getNumVertices() + " vertices");
+        }
+        proverId = hello.getProverId();
+        if (proverId == null || verdictCache == null) {
+            // Nothing to look up, the proof runs as usual
+            return null;
+        }
+        log("Prover: " + proverId);
+        // Anyone can claim an id; only the token from that prover's last result unlocks its verdict
+        proverAuthenticated = verdictCache.isValid(hello.getVerdictToken(), proverId, served.getFingerprint());
+        // numRounds already follows the graph the HELLO chose
+        VerdictCache.Verdict cached = verdictCache.lookup(proverId, served.getFingerprint(),
+                                                          hello.getVerdictToken(), numRounds);
+        if (cached == null) {
+            return null;
+        }
+        return finishFromCache(cached);
+    }
+
+    // Step 1 + 2: store the commitments and challenge a random edge
+    private ProtocolMessage onCommit(CommitMessage commit) {
+        log("Round " + round + "/" + numRounds);
+
+        releaseCommitments();
+        currentCommitments = commit.toCommitmentBuffer();
+        commitmentsChanged = true;
+        currentRoot = null;
+        checkCommitmentCount(currentCommitments.size());
+        log("   Received commitments (" + currentCommitments.size() + " vertices)");
+
+        return challenge();
+    }
+
+    // Merkle mode: keep only the root, reveals must bring their authentication paths
+    private ProtocolMessage onMerkleCommit(MerkleCommitMessage commit) {
+        log("Round " + round + "/" + numRounds);
+
+        if (commit.getNumLeaves() != graph.getNumVertices()) {
+            throw new IllegalArgumentException("Expected " + graph.getNumVertices() + " leaves, got " + commit.getNumLeaves());
+        }
+        releaseCommitments();
+        currentRoot = commit.getRoot();
+        log("   Received Merkle root " + currentRoot);
+
+        return challenge();
+    }
+
+    private void useGraph(ServedGraph graph) {
+        this.served = graph;
+        this.graph = graph.getGraph();
+        this.sampler = new ChallengeSampler(graph.getEdgeIndex());
+        if (scheduler != null) {
+            // The same target takes more rounds on a graph with more edges
+            scheduler = new RoundScheduler(graph.getEdgeIndex().size(), scheduler.getSoundnessBits());
+            numRounds = scheduler.getRequiredRounds();
+            log("Round schedule: " + scheduler);
+        }
+    }
+
+    private ProtocolMessage challenge() {
+        int edge = sampler.nextEdge();
+        challengeV1 = sampler.from(edge);
+        challengeV2 = sampler.to(edge);
+
+        log("   Challenge: Reveal edge (" + challengeV1 + ", " + challengeV2 + ")");
+        phase = Phase.AWAIT_REVEAL;
+        return new ChallengeMessage(challengeV1, challengeV2, round);
+    }
+
+    // Step 3: verify the revealed colours
+    private ProtocolMessage onReveal(RevealMessage reveal) {
+        // Track revealed colours
+        allRevealedColours.add(reveal.getColour1());
+        allRevealedColours.add(reveal.getColour2());
+
+        // Check immediately if more than 3 colours detected
+        if (allRevealedColours.size() > 3) {
+            log("\nDETECTED: More than 3 colours used!");
+            log("   Colours revealed: " + allRevealedColours);
+            log("   Total unique colours: " + allRevealedColours.size());
+            failureType = "FAILURE_CASE_2_TOO_MANY_COLORS";
+            recordRound(round, takeCommitments(), challengeV1, challengeV2, reveal, false);
+            return finishWithFailure("FAILURE CASE 2: Used " + allRevealedColours.size() + " colours instead of 3!");
+        }
+
+        // Verify this round
+        long start = System.nanoTime();
+        boolean valid = verifyRound(reveal, challengeV1, challengeV2, currentCommitments);
+        metrics.recordVerify(System.nanoTime() - start);
+        recordRound(round, takeCommitments(), challengeV1, challengeV2, reveal, valid);
+        if (!valid) {
+            log("   Round " + round + " FAILED");
+            return finishWithFailure("FAILURE CASE 1: Adjacent vertices have same colour!");
+        }
+
+        log("   Round " + round + " PASSED");
+        log("");
+        completedRounds++;
+        metrics.roundCompleted();
+
+        if (roundsDone()) {
+            return finishWithSuccess();
+        }
+
+        round++;
+        phase = Phase.AWAIT_COMMIT;
+        return null;
+    }
+
+    /**
+     * Batch mode: k independent commitment sets arrive at once and get k
+     * independent challenges back. Parallel repetition keeps the soundness
+     * of k sequential rounds while costing a single round trip.
+     */
+    private ProtocolMessage onBatchCommit(BatchCommitMessage batch) {
+        releaseCommitments();
+        List<CommitmentBuffer> sets = batch.toCommitmentBuffers();
+        batchCommitments = sets;
+        commitmentsChanged = true;
+        int remaining = numRounds - round + 1;
+        if (sets.isEmpty() || sets.size() > remaining) {
+            throw new IllegalArgumentException("Batch of " + sets.size() + " rounds, " + remaining + " remaining");
+        }
+        for (CommitmentBuffer commitments : sets) {
+            checkCommitmentCount(commitments.size());
+        }
+        log("Rounds " + round + "-" + (round + sets.size() - 1) + "/" + numRounds);
+        log("   Received " + sets.size() + " commitment sets");
+
+        batchChallenges = new ArrayList<>();
+        for (int i = 0; i < sets.size(); i++) {
+            int edge = sampler.nextEdge();
+            batchChallenges.add(new int[]{sampler.from(edge), sampler.to(edge)});
+        }
+
+        log("   Challenged " + sets.size() + " edges");
+        phase = Phase.AWAIT_BATCH_REVEAL;
+        return new BatchChallengeMessage(batchChallenges, round);
+    }
+
+    // Verify every reveal of the batch and record one verdict per round
+    private ProtocolMessage onBatchReveal(BatchRevealMessage batch) {
+        List<RevealMessage> reveals = batch.getReveals();
+        if (reveals.size() != batchChallenges.size()) {
+            throw new IllegalArgumentException("Expected " + batchChallenges.size() + " reveals, got " + reveals.size());
+        }
+
+        boolean batchValid = true;
+        for (int i = 0; i < reveals.size(); i++) {
+            RevealMessage reveal = reveals.get(i);
+            int[] edge = batchChallenges.get(i);
+            allRevealedColours.add(reveal.getColour1());
+            allRevealedColours.add(reveal.getColour2());
+
+            long start = System.nanoTime();
+            boolean roundValid = verifyRound(reveal, edge[0], edge[1], batchCommitments.get(i));
+            metrics.recordVerify(System.nanoTime() - start);
+            recordRound(round + i, batchCommitments.set(i, null), edge[0], edge[1], reveal, roundValid);
+            roundVerdicts.add(roundValid);
+            if (roundValid) {
+                completedRounds++;
+                metrics.roundCompleted();
+            } else {
+                batchValid = false;
+            }
+        }
+
+        round += reveals.size() - 1;
+        releaseCommitments();
+        batchChallenges = null;
+
+        if (allRevealedColours.size() > 3) {
+            log("\nDETECTED: More than 3 colours used!");
+            log("   Colours revealed: " + allRevealedColours);
+            failureType = "FAILURE_CASE_2_TOO_MANY_COLORS";
+            return finishWithFailure("FAILURE CASE 2: Used " + allRevealedColours.size() + " colours instead of 3!");
+        }
+        if (!batchValid) {
+            log("   Batch ending at round " + round + " FAILED");
+            return finishWithFailure("FAILURE CASE 1: Adjacent vertices have same colour!");
+        }
+
+        log("   Batch ending at round " + round + " PASSED");
+        log("");
+
+        if (roundsDone()) {
+            return finishWithSuccess();
+        }
+
+        round++;
+        phase = Phase.AWAIT_COMMIT;
+        return null;
+    }
+
+    // The soundness target is reached, or the fixed rounds are used up
+    private boolean roundsDone() {
+        return scheduler != null ? scheduler.isSatisfied(completedRounds) : round == numRounds;
+    }
+
+    private void checkCommitmentCount(int count) {
+        if (count != graph.getNumVertices()) {
+            throw new IllegalArgumentException("Expected " + graph.getNumVertices() + " commitments, got " + count);
+        }
+    }
+
+    // Hand the packed commitments back to the pool once their round is verified or abandoned
+    private void releaseCommitments() {
+        if (currentCommitments != null) {
+            currentCommitments.release();
+            currentCommitments = null;
+        }
+        if (batchCommitments != null) {
+            for (CommitmentBuffer commitments : batchCommitments) {
+                if (commitments != null) {
+                    commitments.release();
+                }
+            }
+            batchCommitments = null;
+        }
+    }
+
+    private CommitmentBuffer takeCommitments() {
+        CommitmentBuffer commitments = currentCommitments;
+        currentCommitments = null;
+        return commitments;
+    }
+
+    // Hand a decided round to the transcript, which takes over the commitment buffer
+    private void recordRound(int roundNumber, CommitmentBuffer commitments, int v1, int v2,
+                             RevealMessage reveal, boolean verdict) {
+        if (transcript != null) {
+            startTranscript();
+            transcript.round(id, roundNumber, commitments, currentRoot, graph.getNumVertices(), v1, v2, reveal, verdict);
+        } else if (commitments != null) {
+            commitments.release();
+        }
+    }
+
+    // Written with the first record, once a HELLO can no longer change the graph
+    private void startTranscript() {
+        if (!transcriptStarted) {
+            transcriptStarted = true;
+            transcript.sessionStarted(id, startedMillis, served.getFingerprint(), graph.getNumVertices(), numRounds);
+        }
+    }
+
+    // All rounds passed successfully
+    private ProtocolMessage finishWithSuccess() {
+        verified = true;
+        phase = Phase.FINISHED;
+        releaseCommitments();
+        metrics.sessionVerified();
+        if (transcript != null) {
+            startTranscript();
+            transcript.sessionFinished(id, true, completedRounds, failureType);
+        }
+        String token = null;
+        if (verdictCache != null && proverId != null) {
+            token = verdictCache.put(proverId, served.getFingerprint(), completedRounds);
+        }
+        displayFinalResults();
+        ResultMessage result = new ResultMessage(true,
+            "Verification successful! Client knows valid 3-colouring.",
+            completedRounds, roundVerdicts);
+        result.setVerdictToken(token);
+        return result;
+    }
+
+    // The prover proved this graph recently enough, no rounds are run
+    private ProtocolMessage finishFromCache(VerdictCache.Verdict cached) {
+        completedRounds = cached.getRounds();
+        verified = true;
+        fromCache = true;
+        phase = Phase.FINISHED;
+        metrics.sessionVerified();
+        if (transcript != null) {
+            startTranscript();
+            transcript.sessionFinishedFromCache(id, completedRounds);
+        }
+        long age = (System.currentTimeMillis() - cached.getVerifiedAtMillis()) / 1000;
+        log("\nVerdict cached from a proof " + age + "s ago");
+        displayFinalResults();
+        return new ResultMessage(true,
+            "Verification successful! Cached verdict from a proof " + age + "s ago.",
+            completedRounds);
+    }
+
+    private ProtocolMessage finishWithFailure(String failureMsg) {
+        completedRounds = round;
+        verified = false;
+        phase = Phase.FINISHED;
+        releaseCommitments();
+        metrics.sessionFailed(failureType);
+        if (transcript != null) {
+            startTranscript();
+            transcript.sessionFinished(id, false, completedRounds, failureType);
+        }
+        if (verdictCache != null && proverAuthenticated) {
+            // A prover that merely claims an id must not wipe the real prover's verdict
+            verdictCache.invalidate(proverId, served.getFingerprint());
+        }
+        displayFinalResults();
+        return new ResultMessage(false, failureMsg, completedRounds, roundVerdicts);
+    }
+
+    /**
+     * Verify a single round of the protocol
+     */
+    private boolean verifyRound(RevealMessage reveal, int v1, int v2, CommitmentBuffer commitments) {
+        String colour1 = reveal.getColour1();
+        String colour2 = reveal.getColour2();
+        String nonce1 = reveal.getNonce1();
+        String nonce2 = reveal.getNonce2();
+
+        log("   Verifying revealed colours...");
+        log("      v" + v1 + " = " + colour1);
+        log("      v" + v2 + " = " + colour2);
+
+        // Check 1: Verify commitments match
+        boolean commit1Valid = commitmentMatches(commitments, v1, colour1, nonce1, reveal.getPath1());
+        boolean commit2Valid = commitmentMatches(commitments, v2, colour2, nonce2, reveal.getPath2());
+
+        if (!commit1Valid || !commit2Valid) {
+            log("      Commitment verification failed!");
+            return false;
+        }
+
+        log("      Commitments verified");
+
+        // Check 2: Verify colours are different (adjacent vertices must have different colours)
+        if (colour1.equals(colour2)) {
+            log("      Adjacent vertices have same colour!");
+            failureType = "FAILURE_CASE_1_SAME_COLOR";
+            return false;
+        }
+
+        log("      Colours are different");
+
+        return true;
+    }
+
+    // Check against the full commitment list, or against the Merkle root when there is none
+    private boolean commitmentMatches(CommitmentBuffer commitments, int vertex, String colour, String nonce, List<String> path) {
+        if (commitments != null) {
+            return commitments.matches(vertex, colour, nonce);
+        }
+        String leaf = CryptoUtils.createCommitment(colour, nonce);
+        return MerkleTree.verify(currentRoot, leaf, vertex, graph.getNumVertices(), path);
+    }
+
+    // Helper method to display final results
+    private void displayFinalResults() {
+        if (!verbose) {
+            // One summary line per session when many run side by side
+            System.out.println("[session " + id + "] " + (verified ? "VERIFIED" : "FAILED") +
+                               (failureType != null ? " (" + failureType + ")" : "") +
+                               ", rounds " + completedRounds + "/" + numRounds + (fromCache ? " (cached)" : "") +
+                               (verified ? String.format(Locale.ROOT, ", soundness 2^-%.1f", soundnessBits()) : ""));
+            return;
+        }
+
+        System.out.println();
+        if (verified) {
+            System.out.println("VERIFICATION COMPLETE - SUCCESS!");
+            System.out.println("Client proved knowledge of valid 3-colouring");
+            System.out.println("Server learned NOTHING about actual colours");
+            System.out.println("Colours observed: " + allRevealedColours.size() + " unique colours (permuted)");
+            System.out.println(String.format(Locale.ROOT, "Soundness error: at most 2^-%.1f", soundnessBits()));
+        } else {
+            System.out.println("VERIFICATION FAILED");
+            if ("FAILURE_CASE_1_SAME_COLOR".equals(failureType)) {
+                System.out.println("FAILURE CASE 1: Adjacent vertices had same colour");
+            } else if ("FAILURE_CASE_2_TOO_MANY_COLORS".equals(failureType)) {
+                System.out.println("FAILURE CASE 2: Used " + allRevealedColours.size() + " colours (expected 3)");
+                System.out.println("   Revealed colours: " + allRevealedColours);
+            } else {
+                System.out.println("Client failed to prove valid colouring");
+            }
+        }
+        System.out.println("Rounds completed: " + completedRounds + "/" + numRounds);
+    }
+
+    // Bound on a cheater having passed every round so far
+    private double soundnessBits() {
+        return RoundScheduler.soundnessBits(served.getEdgeIndex().size(), completedRounds);
+    }
+
+    private void log(String line) {
+        if (verbose) {
+            System.out.println(line);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package common;
+
+import static common.Checks.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Every message type survives both wire formats unchanged, and a reveal
+ * means the same in both: a nonce only verifies in the spelling the binary
+ * format gives back, so JSON refuses any other.
+ */
+public class BinaryCodecTest {
+
+    public static void main(String[] args) {
+        for (ProtocolMessage message : messages()) {
+            String expected = message.toJSON();
+            checkEquals(expected, ProtocolMessage.fromJSON(expected).toJSON(), message.getType() + " over JSON");
+
+            ProtocolMessage decoded = binaryRoundTrip(message);
+            checkEquals(message.getType(), decoded.getType(), message.getType() + " type over binary");
+            checkEquals(message.getSessionId(), decoded.getSessionId(), message.getType() + " session id over binary");
+            checkEquals(expected, decoded.toJSON(), message.getType() + " over binary");
+            decoded.release();
+        }
+
+        // A reveal verifies its commitment the same way after either format
+        String nonce = CryptoUtils.generateNonce();
+        String commitment = CryptoUtils.createCommitment("red", nonce);
+        RevealMessage reveal = new RevealMessage("red", "green", nonce, CryptoUtils.generateNonce(), 1);
+        RevealMessage overJson = (RevealMessage) ProtocolMessage.fromJSON(reveal.toJSON());
+        RevealMessage overBinary = (RevealMessage) binaryRoundTrip(reveal);
+        check(CryptoUtils.verifyCommitment(commitment, overJson.getColour1(), overJson.getNonce1()),
+              "reveal over JSON verifies");
+        check(CryptoUtils.verifyCommitment(commitment, overBinary.getColour1(), overBinary.getNonce1()),
+              "reveal over binary verifies");
+
+        // Other spellings of the same nonce would verify differently, so JSON refuses them
+        String upper = reveal.toJSON().replace(nonce, nonce.toUpperCase(Locale.ROOT));
+        checkThrows(IllegalArgumentException.class, () -> ProtocolMessage.fromJSON(upper), "upper-case nonce");
+        String odd = reveal.toJSON().replace(nonce, nonce + "0");
+        checkThrows(IllegalArgumentException.class, () -> ProtocolMessage.fromJSON(odd), "odd-length nonce");
+
+        // A count larger than the payload is refused before anything is allocated
+        ByteBuffer truncated = ByteBuffer.allocate(9);
+        truncated.put((byte) ProtocolMessage.MessageType.COMMIT.ordinal()).putInt(1).putInt(1000).flip();
+        checkThrows(IllegalArgumentException.class, () -> BinaryCodec.decode(truncated), "truncated commit");
+
+        done("BinaryCodecTest");
+    }
+
+    static ProtocolMessage binaryRoundTrip(ProtocolMessage message) {
+        byte[] frame = BinaryCodec.encode(message);
+        int length = ByteBuffer.wrap(frame).getInt();
+        checkEquals(frame.length - 4, length, message.getType() + " frame length");
+        return BinaryCodec.decode(ByteBuffer.wrap(frame, 4, length));
+    }
+
+    private static List<ProtocolMessage> messages() {
+        List<String> commitments = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            commitments.add(CryptoUtils.createCommitment("red", CryptoUtils.generateNonce()));
+        }
+        List<String> path = Arrays.asList(commitments.get(0), commitments.get(1));
+
+        List<ProtocolMessage> messages = new ArrayList<>();
+        messages.add(new CommitMessage(commitments, 3));
+        messages.add(new ChallengeMessage(1, 4, 3));
+        messages.add(new RevealMessage("red", "blue", CryptoUtils.generateNonce(), CryptoUtils.generateNonce(), 3));
+        messages.add(new RevealMessage("red", "blue", CryptoUtils.generateNonce(), CryptoUtils.generateNonce(), 3,
+                                       path, path.subList(0, 1)));
+        messages.add(new ResultMessage(false, "Commitment verification failed in round 2", 2));
+        ResultMessage withToken = new ResultMessage(true, "Verification successful, caf\u00e9", 3,
+                                                    Arrays.asList(true, true, true));
+        withToken.setVerdictToken("1700000000000.00ff");
+        messages.add(withToken);
+        messages.add(new BatchCommitMessage(Arrays.asList(commitments, commitments), 1));
+        messages.add(new BatchChallengeMessage(Arrays.asList(new int[]{0, 1}, new int[]{2, 4}), 1));
+        messages.add(new BatchRevealMessage(Arrays.asList(
+            new RevealMessage("red", "blue", CryptoUtils.generateNonce(), CryptoUtils.generateNonce(), 1),
+            new RevealMessage("green", "red", CryptoUtils.generateNonce(), CryptoUtils.generateNonce(), 2)), 1));
+        messages.add(new MerkleCommitMessage(commitments.get(2), 5, 4));
+        messages.add(new HelloMessage("alice", commitments.get(3)));
+        messages.add(new HelloMessage("alice", commitments.get(3), "1700000000000.00ff"));
+
+        // Every other message as if multiplexed
+        for (int i = 0; i < messages.size(); i += 2) {
+            messages.get(i).setSessionId(0x1234_5678_9abc_def0L + i);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,48 @@
+package common;
+
+/**
+ * Assertions for the tests under test/, which are plain main programs so
+ * they need nothing beyond the JDK and lib/. A failed check throws
+ * AssertionError, so a test exits non-zero at its first failure.
+ */
+public final class Checks {
+
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    private static int passed;
+
+    private Checks() {
+    }
+
+    public static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+        passed++;
+    }
+
+    public static void checkEquals(Object expected, Object actual, String what) {
+        check(expected == null ? actual == null : expected.equals(actual),
+              what + ": expected " + expected + ", got " + actual);
+    }
+
+    // The action must throw an exception of the given type; returns it for further checks
+    public static <T extends Throwable> T checkThrows(Class<T> type, Action action, String what) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                passed++;
+                return type.cast(e);
+            }
+            throw new AssertionError(what + ": expected " + type.getSimpleName() + ", got " + e, e);
+        }
+        throw new AssertionError(what + ": expected " + type.getSimpleName() + ", nothing was thrown");
+    }
+
+    public static void done(String test) {
+        System.out.println(test + ": " + passed + " checks passed");
+    }
+}
@@ -0,0 +1,84 @@
+package common;
+
+import static common.Checks.*;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Packed commitments: hex and raw digests convert both ways, reveals are
+ * matched against the packed form, and released memory goes back to the
+ * pool exactly once and is reused.
+ */
+public class CommitmentBufferTest {
+
+    private static final int COUNT = 1237;
+
+    public static void main(String[] args) {
+        List<String> colours = new ArrayList<>();
+        List<String> nonces = new ArrayList<>();
+        List<String> hex = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            colours.add(Graph.COLOR_POOL.get(i % 3));
+            nonces.add(CryptoUtils.generateNonce());
+            hex.add(CryptoUtils.createCommitment(colours.get(i), nonces.get(i)));
+        }
+
+        CommitmentBuffer buffer = CommitmentBuffer.fromHex(hex);
+        checkEquals(COUNT, buffer.size(), "size");
+        checkEquals(hex, buffer.toHexList(), "hex round trip");
+        for (int i = 0; i < COUNT; i += 97) {
+            check(buffer.matches(i, colours.get(i), nonces.get(i)), "vertex " + i + " opens");
+            check(!buffer.matches(i, Graph.COLOR_POOL.get((i + 1) % 3), nonces.get(i)), "vertex " + i + " other colour");
+            check(!buffer.matches(i, colours.get(i), nonces.get((i + 1) % COUNT)), "vertex " + i + " other nonce");
+        }
+        check(!buffer.matches(-1, colours.get(0), nonces.get(0)), "negative vertex");
+        check(!buffer.matches(COUNT, colours.get(0), nonces.get(0)), "vertex past the end");
+
+        // Raw digests out and back in, as the binary format and session snapshots move them
+        ByteBuffer raw = ByteBuffer.allocate(COUNT * CommitmentBuffer.DIGEST_BYTES);
+        buffer.writeTo(raw);
+        raw.flip();
+        CommitmentBuffer copy = CommitmentBuffer.acquire(COUNT);
+        copy.readFrom(raw);
+        check(!raw.hasRemaining(), "readFrom consumes every digest");
+        checkEquals(hex, copy.toHexList(), "raw round trip");
+
+        // Upper-case input is the same digest, and comes back in the canonical spelling
+        List<String> upper = new ArrayList<>();
+        for (String commitment : hex) {
+            upper.add(commitment.toUpperCase(Locale.ROOT));
+        }
+        CommitmentBuffer fromUpper = CommitmentBuffer.fromHex(upper);
+        checkEquals(hex, fromUpper.toHexList(), "upper-case hex");
+
+        // Release hands the memory to the pool once; a double release is harmless, use afterwards is not
+        long pooled = CommitmentBuffer.getPooledBytes();
+        buffer.release();
+        buffer.release();
+        checkEquals(pooled + (long) COUNT * CommitmentBuffer.DIGEST_BYTES, CommitmentBuffer.getPooledBytes(),
+                    "released once into the pool");
+        checkThrows(IllegalStateException.class, () -> buffer.getHex(0), "use after release");
+        CommitmentBuffer reused = CommitmentBuffer.acquire(COUNT);
+        checkEquals(pooled, CommitmentBuffer.getPooledBytes(), "acquire takes it back out");
+
+        // A rejected set hands back what it took
+        List<String> bad = new ArrayList<>(hex);
+        bad.set(COUNT - 1, "zz");
+        checkThrows(IllegalArgumentException.class, () -> CommitmentBuffer.fromHex(bad), "non-digest commitment");
+        checkEquals(pooled + (long) COUNT * CommitmentBuffer.DIGEST_BYTES, CommitmentBuffer.getPooledBytes(),
+                    "rejected set released");
+
+        // A decoded COMMIT owns its buffer until release()
+        CommitMessage decoded = (CommitMessage) BinaryCodecTest.binaryRoundTrip(new CommitMessage(hex, 1));
+        checkEquals(pooled, CommitmentBuffer.getPooledBytes(), "decoding takes a pooled buffer");
+        decoded.release();
+        checkEquals(pooled + (long) COUNT * CommitmentBuffer.DIGEST_BYTES, CommitmentBuffer.getPooledBytes(),
+                    "released message returns it");
+
+        for (CommitmentBuffer held : Arrays.asList(copy, fromUpper, reused)) {
+            held.release();
+        }
+        done("CommitmentBufferTest");
+    }
+}
@@ -0,0 +1,94 @@
+package common;
+
+import static common.Checks.*;
+
+import java.util.*;
+
+/**
+ * The CSR graph answers every question the way the mutable Graph it was
+ * built from does: neighbours, edges, fingerprint and colouring rules,
+ * for the sample graph and for a generated planted graph.
+ */
+public class CompactGraphTest {
+
+    public static void main(String[] args) {
+        Graph sample = Graph.createSampleGraph();
+        colour(sample, Graph.getSampleColouring());
+        sameGraph(sample, CompactGraph.from(sample), "sample");
+        check(CompactGraph.from(sample).isValidColouring(), "sample colouring is valid");
+
+        // Each way a colouring can be wrong, judged the same by both
+        Graph monochrome = Graph.createSampleGraph();
+        colour(monochrome, Graph.getSampleColouring());
+        int u = monochrome.neighbor(0, 0);
+        monochrome.setColour(u, monochrome.getColour(0));
+        checkColouring(monochrome, false, "monochrome edge");
+
+        Graph fourColours = Graph.createSampleGraph();
+        colour(fourColours, Graph.getSampleColouring());
+        fourColours.setColour(0, "PURPLE");
+        checkColouring(fourColours, false, "fourth colour");
+
+        Graph uncoloured = Graph.createSampleGraph();
+        Map<Integer, String> partial = new HashMap<>(Graph.getSampleColouring());
+        partial.remove(1);
+        colour(uncoloured, partial);
+        checkColouring(uncoloured, false, "uncoloured vertex");
+
+        // A generated graph, its witness and its copy as a mutable Graph
+        PlantedGraph planted = new PlantedGraphGenerator(2000, 6, 42).generate();
+        CompactGraph compact = planted.getGraph();
+        Graph copy = planted.toGraph();
+        colour(copy, planted.getColouring());
+        check(compact.isValidColouring(), "planted witness is valid");
+        check(copy.isValidColouring(), "planted witness is valid on the copy");
+        sameGraph(copy, compact, "planted");
+        checkEquals(compact.fingerprint(), new PlantedGraphGenerator(2000, 6, 42).generate().getGraph().fingerprint(),
+                    "same seed, same graph");
+        check(!compact.fingerprint().equals(new PlantedGraphGenerator(2000, 6, 43).generate().getGraph().fingerprint()),
+              "other seed, other graph");
+
+        done("CompactGraphTest");
+    }
+
+    private static void colour(Graph graph, Map<Integer, String> colouring) {
+        for (Map.Entry<Integer, String> entry : colouring.entrySet()) {
+            graph.setColour(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void checkColouring(Graph graph, boolean valid, String what) {
+        checkEquals(valid, graph.isValidColouring(), what + " on Graph");
+        checkEquals(valid, CompactGraph.from(graph).isValidColouring(), what + " on CompactGraph");
+    }
+
+    private static void sameGraph(Graph graph, CompactGraph compact, String what) {
+        int n = graph.getNumVertices();
+        checkEquals(n, compact.getNumVertices(), what + " vertices");
+        long targets = 0;
+        for (int v = 0; v < n; v++) {
+            checkEquals(new HashSet<>(graph.getNeighbors(v)), neighbours(compact, v), what + " neighbours of " + v);
+            checkEquals(compact.neighborEnd(v) - compact.neighborStart(v), compact.degree(v), what + " degree of " + v);
+            targets += compact.degree(v);
+        }
+
+        EdgeIndex edges = compact.getEdgeIndex();
+        checkEquals(targets / 2, (long) edges.size(), what + " edges");
+        checkEquals(edges.size(), compact.getNumEdges(), what + " edge count");
+        check(edges.sameEdges(graph.getEdgeIndex()), what + " edge index");
+        for (int i = 0; i < edges.size(); i++) {
+            check(edges.from(i) < edges.to(i), what + " edge " + i + " is (min, max)");
+            check(i == 0 || edges.from(i - 1) < edges.from(i)
+                  || edges.from(i - 1) == edges.from(i) && edges.to(i - 1) < edges.to(i), what + " edge " + i + " ascends");
+        }
+        checkEquals(graph.fingerprint(), compact.fingerprint(), what + " fingerprint");
+    }
+
+    private static Set<Integer> neighbours(GraphView graph, int vertex) {
+        Set<Integer> neighbours = new HashSet<>();
+        for (int i = 0; i < graph.degree(vertex); i++) {
+            neighbours.add(graph.neighbor(vertex, i));
+        }
+        return neighbours;
+    }
+}
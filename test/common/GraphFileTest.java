@@ -0,0 +1,119 @@
+package common;
+
+import static common.Checks.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.*;
+import java.util.Arrays;
+
+/**
+ * Graph files: what is written opens as the same graph with the same
+ * fingerprint, version 1 files still open, a bad header or size fails on
+ * open, and damage inside the sections, which open does not scan for,
+ * fails the check.
+ */
+public class GraphFileTest {
+
+    // Header layout of version 2, see GraphFile
+    private static final int VERSION_AT = 4;
+    private static final int NUM_TARGETS_AT = 16;
+    private static final int FINGERPRINT_AT = 32;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("graphfile-test");
+        try {
+            roundTrip(Graph.createSampleGraph(), directory.resolve("sample.zkg"));
+            Path planted = directory.resolve("planted.zkg");
+            roundTrip(new PlantedGraphGenerator(5000, 6, 7).generate().getGraph(), planted);
+
+            byte[] good = Files.readAllBytes(planted);
+            MappedGraph graph = GraphFile.open(planted);
+            int n = graph.getNumVertices();
+            int targetsAt = GraphFile.HEADER_BYTES + 4 * (n + 1);
+            int fromAt = targetsAt + 4 * graph.getNumTargets();
+
+            // Fails on open: the header or the sizes are wrong
+            rejectOnOpen(directory, "magic", patch(good, 0, (byte) 'X'));
+            rejectOnOpen(directory, "version", patchInt(good, VERSION_AT, 99));
+            rejectOnOpen(directory, "truncated", Arrays.copyOf(good, good.length - 4));
+            rejectOnOpen(directory, "trailing data", Arrays.copyOf(good, good.length + 4));
+            rejectOnOpen(directory, "short header", Arrays.copyOf(good, 10));
+            rejectOnOpen(directory, "last offset", patchInt(good, targetsAt - 4, graph.getNumTargets() - 1));
+
+            // Opens, but the check finds it: a target, the stored index or the fingerprint is wrong
+            rejectOnCheck(directory, "target", patchInt(good, targetsAt, n + 5));
+            rejectOnCheck(directory, "edge index", patchInt(good, fromAt, graph.getEdgeIndex().from(0) + 1));
+            rejectOnCheck(directory, "fingerprint", patch(good, FINGERPRINT_AT, (byte) (good[FINGERPRINT_AT] ^ 1)));
+
+            // A version 1 file has neither the index nor the fingerprint and derives both
+            Path v1 = directory.resolve("v1.zkg");
+            Files.write(v1, toVersion1(good, fromAt));
+            MappedGraph old = GraphFile.open(v1, true);
+            check(!old.hasStoredIndex(), "version 1 has no stored index");
+            checkEquals(graph.fingerprint(), old.fingerprint(), "version 1 fingerprint");
+            check(graph.getEdgeIndex().sameEdges(old.getEdgeIndex()), "version 1 edge index");
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+        done("GraphFileTest");
+    }
+
+    private static void roundTrip(GraphView source, Path path) throws IOException {
+        GraphFile.write(source, path);
+        MappedGraph graph = GraphFile.open(path, true);
+        check(graph.hasStoredIndex(), path.getFileName() + " has a stored index");
+        checkEquals(source.getNumVertices(), graph.getNumVertices(), path.getFileName() + " vertices");
+        for (int v = 0; v < source.getNumVertices(); v++) {
+            checkEquals(source.degree(v), graph.degree(v), path.getFileName() + " degree of " + v);
+            for (int i = 0; i < source.degree(v); i++) {
+                checkEquals(source.neighbor(v, i), graph.neighbor(v, i), path.getFileName() + " neighbour of " + v);
+            }
+        }
+        check(source.getEdgeIndex().sameEdges(graph.getEdgeIndex()), path.getFileName() + " edge index");
+        checkEquals(source.fingerprint(), graph.fingerprint(), path.getFileName() + " stored fingerprint");
+        checkEquals(source.fingerprint(), graph.computeFingerprint(), path.getFileName() + " computed fingerprint");
+    }
+
+    private static void rejectOnOpen(Path directory, String what, byte[] bytes) throws IOException {
+        Path path = directory.resolve("bad-" + what.replace(' ', '-') + ".zkg");
+        Files.write(path, bytes);
+        checkThrows(IOException.class, () -> GraphFile.open(path), "open rejects bad " + what);
+    }
+
+    private static void rejectOnCheck(Path directory, String what, byte[] bytes) throws IOException {
+        Path path = directory.resolve("bad-" + what.replace(' ', '-') + ".zkg");
+        Files.write(path, bytes);
+        MappedGraph graph = GraphFile.open(path);
+        checkThrows(IOException.class, () -> GraphFile.check(path, graph), "check rejects bad " + what);
+        checkThrows(IOException.class, () -> GraphFile.open(path, true), "verified open rejects bad " + what);
+    }
+
+    private static byte[] patch(byte[] bytes, int at, byte value) {
+        byte[] copy = bytes.clone();
+        copy[at] = value;
+        return copy;
+    }
+
+    private static byte[] patchInt(byte[] bytes, int at, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(at, value);
+        return copy;
+    }
+
+    // The same graph in the 24-byte version 1 header, without the edge sections
+    private static byte[] toVersion1(byte[] v2, int sectionsEnd) {
+        ByteBuffer in = ByteBuffer.wrap(v2).order(ByteOrder.LITTLE_ENDIAN);
+        int body = sectionsEnd - GraphFile.HEADER_BYTES;
+        ByteBuffer out = ByteBuffer.allocate(24 + body).order(ByteOrder.LITTLE_ENDIAN);
+        out.put(v2, 0, 4).putInt(1).putInt(in.getInt(8)).putInt(0).putLong(in.getLong(NUM_TARGETS_AT));
+        out.put(v2, GraphFile.HEADER_BYTES, body);
+        return out.array();
+    }
+}
@@ -0,0 +1,64 @@
+package common;
+
+import static common.Checks.*;
+
+import java.util.*;
+
+/**
+ * Authentication paths: every leaf of trees of awkward sizes verifies
+ * against the root, and a path fails for any other leaf, index or root,
+ * or once an entry is changed, dropped or added.
+ */
+public class MerkleTreeTest {
+
+    public static void main(String[] args) {
+        for (int size : new int[]{1, 2, 3, 5, 8, 13, 100}) {
+            List<String> leaves = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                leaves.add(CryptoUtils.createCommitment(Graph.COLOR_POOL.get(i % 3), CryptoUtils.generateNonce()));
+            }
+            MerkleTree tree = new MerkleTree(leaves);
+            String root = tree.getRoot();
+            checkEquals(size, tree.getNumLeaves(), "leaves of tree of " + size);
+            checkEquals(root, new MerkleTree(leaves).getRoot(), "root of " + size + " is deterministic");
+
+            for (int i = 0; i < size; i++) {
+                List<String> path = tree.getPath(i);
+                String what = "leaf " + i + " of " + size;
+                check(MerkleTree.verify(root, leaves.get(i), i, size, path), what + " verifies");
+                if (size == 1) {
+                    continue;
+                }
+                int other = (i + 1) % size;
+                check(!MerkleTree.verify(root, leaves.get(other), i, size, path), what + " rejects another leaf");
+                check(!MerkleTree.verify(root, leaves.get(i), other, size, path), what + " rejects another index");
+                check(!MerkleTree.verify(flipLastDigit(root), leaves.get(i), i, size, path), what + " rejects another root");
+
+                List<String> flipped = new ArrayList<>(path);
+                flipped.set(0, flipLastDigit(flipped.get(0)));
+                check(!MerkleTree.verify(root, leaves.get(i), i, size, flipped), what + " rejects a changed path");
+                check(!MerkleTree.verify(root, leaves.get(i), i, size, path.subList(0, path.size() - 1)),
+                      what + " rejects a short path");
+                List<String> longer = new ArrayList<>(path);
+                longer.add(root);
+                check(!MerkleTree.verify(root, leaves.get(i), i, size, longer), what + " rejects a long path");
+            }
+            check(!MerkleTree.verify(root, leaves.get(0), -1, size, tree.getPath(0)), "negative index of " + size);
+            check(!MerkleTree.verify(root, leaves.get(0), size, size, tree.getPath(0)), "index past the end of " + size);
+        }
+
+        // A leaf is not an inner node: a two-leaf tree's root is not a leaf of a one-leaf tree
+        List<String> pair = Arrays.asList(CryptoUtils.createCommitment("red", CryptoUtils.generateNonce()),
+                                          CryptoUtils.createCommitment("blue", CryptoUtils.generateNonce()));
+        String pairRoot = new MerkleTree(pair).getRoot();
+        check(!new MerkleTree(Collections.singletonList(pairRoot)).getRoot().equals(pairRoot), "domain separation");
+        checkThrows(IllegalArgumentException.class, () -> new MerkleTree(Collections.emptyList()), "empty tree");
+
+        done("MerkleTreeTest");
+    }
+
+    private static String flipLastDigit(String hex) {
+        char last = hex.charAt(hex.length() - 1);
+        return hex.substring(0, hex.length() - 1) + (last == '0' ? '1' : '0');
+    }
+}
@@ -0,0 +1,61 @@
+package common;
+
+import static common.Checks.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Seeded nonces: the same seed always gives the same nonces, they are the
+ * documented HMAC truncation, distinct per vertex and per seed, and the byte
+ * commitment path hashes exactly what the hex one does.
+ */
+public class NonceDeriverTest {
+
+    public static void main(String[] args) throws Exception {
+        byte[] seed = new byte[NonceDeriver.SEED_BYTES];
+        for (int i = 0; i < seed.length; i++) {
+            seed[i] = (byte) (i * 7 + 1);
+        }
+        NonceDeriver deriver = new NonceDeriver(seed);
+        NonceDeriver again = new NonceDeriver(seed.clone());
+        byte[] otherSeed = seed.clone();
+        otherSeed[0] ^= 1;
+        NonceDeriver other = new NonceDeriver(otherSeed);
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(seed, "HmacSHA256"));
+        Set<String> seen = new HashSet<>();
+        for (int v = 0; v < 5000; v++) {
+            byte[] nonce = deriver.derive(v);
+            byte[] expected = Arrays.copyOf(mac.doFinal(ByteBuffer.allocate(4).putInt(v).array()), CryptoUtils.NONCE_BYTES);
+            check(Arrays.equals(expected, nonce), "vertex " + v + " is HMAC-SHA256(seed, v) truncated");
+            check(Arrays.equals(nonce, again.derive(v)), "vertex " + v + " is deterministic");
+            check(!Arrays.equals(nonce, other.derive(v)), "vertex " + v + " depends on the seed");
+            check(seen.add(deriver.deriveHex(v)), "vertex " + v + " has its own nonce");
+        }
+
+        // Hex and offset forms agree with the plain one
+        String hex = deriver.deriveHex(42);
+        checkEquals(CryptoUtils.bytesToHex(deriver.derive(42)), hex, "hex form");
+        check(CryptoUtils.isCanonicalHex(hex) && hex.length() == 2 * CryptoUtils.NONCE_BYTES, "hex is canonical");
+        byte[] out = new byte[3 + CryptoUtils.NONCE_BYTES];
+        deriver.derive(42, out, 3);
+        check(Arrays.equals(deriver.derive(42), Arrays.copyOfRange(out, 3, out.length)), "derive at offset");
+
+        // The byte path commits to the same text as the hex path
+        byte[] colour = "GREEN".getBytes(StandardCharsets.UTF_8);
+        byte[] digest = new byte[CryptoUtils.DIGEST_BYTES];
+        CryptoUtils.createCommitment(colour, deriver.derive(42), digest, 0);
+        checkEquals(CryptoUtils.createCommitment("GREEN", hex), CryptoUtils.bytesToHex(digest), "byte commitment");
+        check(CryptoUtils.verifyCommitment(digest, 0, colour, deriver.derive(42)), "byte commitment verifies");
+
+        check(!NonceDeriver.fresh().deriveHex(0).equals(NonceDeriver.fresh().deriveHex(0)), "fresh seeds differ");
+        checkThrows(IllegalArgumentException.class, () -> new NonceDeriver(new byte[16]), "short seed");
+
+        done("NonceDeriverTest");
+    }
+}
@@ -0,0 +1,52 @@
+package common;
+
+import static common.Checks.*;
+
+/**
+ * Round counts: the scheduler picks the fewest rounds whose soundness error
+ * is within the target, for small and large edge counts, and refuses
+ * targets it cannot meet.
+ */
+public class RoundSchedulerTest {
+
+    public static void main(String[] args) {
+        // Worked examples: ceil(bits * ln 2 / -ln(1 - 1/|E|))
+        checkEquals(1, RoundScheduler.requiredRounds(1, 40), "a single edge");
+        checkEquals(40, RoundScheduler.requiredRounds(2, 40), "two edges, 40 bits");
+        checkEquals(264, RoundScheduler.requiredRounds(10, 40), "ten edges, 40 bits");
+        checkEquals(1, RoundScheduler.requiredRounds(1000, 1e-9), "a tiny target");
+
+        // The count is the least k with error(k) <= 2^-bits, wherever that boundary falls
+        for (long edges : new long[]{2, 3, 7, 18, 100, 12345, 1_000_000}) {
+            for (double bits : new double[]{1, 10, 20, 40, 64, 80.5}) {
+                int k = RoundScheduler.requiredRounds(edges, bits);
+                String what = edges + " edges, " + bits + " bits";
+                check(RoundScheduler.soundnessError(edges, k) <= Math.pow(2, -bits) * (1 + 1e-12), what + " is enough");
+                check(RoundScheduler.soundnessError(edges, k - 1) > Math.pow(2, -bits), what + " is the least");
+                check(RoundScheduler.soundnessBits(edges, k) >= bits - 1e-9, what + " in bits");
+                check(RoundScheduler.requiredRounds(edges + 1, bits) >= k, what + " grows with the edges");
+                check(RoundScheduler.requiredRounds(edges, bits + 1) > k, what + " grows with the bits");
+            }
+        }
+
+        // About 0.69 * bits * |E| once |E| is large
+        double estimate = 40 * Math.log(2) * 1_000_000;
+        check(Math.abs(RoundScheduler.requiredRounds(1_000_000, 40) - estimate) < 1e-4 * estimate, "large graph estimate");
+
+        // The sample graph, through the GraphView entry point
+        Graph sample = Graph.createSampleGraph();
+        RoundScheduler scheduler = RoundScheduler.forGraph(sample, 40);
+        checkEquals((long) sample.getEdgeIndex().size(), scheduler.getNumEdges(), "sample edges");
+        checkEquals(RoundScheduler.requiredRounds(scheduler.getNumEdges(), 40), scheduler.getRequiredRounds(),
+                    "sample rounds");
+        check(!scheduler.isSatisfied(scheduler.getRequiredRounds() - 1), "one round short is not enough");
+        check(scheduler.isSatisfied(scheduler.getRequiredRounds()), "the required rounds are enough");
+
+        checkThrows(IllegalArgumentException.class, () -> new RoundScheduler(0, 40), "no edges");
+        checkThrows(IllegalArgumentException.class, () -> new RoundScheduler(10, 0), "no soundness");
+        checkThrows(IllegalArgumentException.class, () -> RoundScheduler.requiredRounds(1_000_000_000L, 1000),
+                    "more rounds than an int");
+
+        done("RoundSchedulerTest");
+    }
+}
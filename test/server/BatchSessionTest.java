@@ -0,0 +1,98 @@
+package server;
+
+import static common.Checks.*;
+
+import client.ProverRound;
+import common.*;
+import java.util.*;
+
+/**
+ * Batch mode end to end against a session: honest batches of any size
+ * verify with one verdict per round, a single bad reveal fails the proof
+ * at its round, and a batch may not claim more rounds than are left.
+ */
+public class BatchSessionTest {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        Graph graph = Graph.createSampleGraph();
+        Map<Integer, String> colouring = Graph.getSampleColouring();
+
+        for (int batchSize : new int[]{1, 7, ROUNDS}) {
+            ResultMessage result = prove(graph, colouring, batchSize, -1);
+            check(result.isVerified(), "batches of " + batchSize + " verify: " + result.getMessage());
+            checkEquals(ROUNDS, result.getTotalRounds(), "rounds in batches of " + batchSize);
+            checkEquals(Collections.nCopies(ROUNDS, true), result.getRoundVerdicts(), "verdicts in batches of " + batchSize);
+        }
+
+        // A wrong nonce in round 9 fails the batch holding it, and only that round's verdict
+        ResultMessage tampered = prove(graph, colouring, 5, 9);
+        check(!tampered.isVerified(), "tampered batch fails");
+        checkEquals(10, tampered.getRoundVerdicts().size(), "verdicts up to the failed batch");
+        for (int i = 0; i < 10; i++) {
+            checkEquals(i != 8, tampered.getRoundVerdicts().get(i), "verdict of round " + (i + 1));
+        }
+
+        // More rounds than the proof has left ends the session
+        ZKPSession session = new ZKPSession(1, graph, ROUNDS, false);
+        List<List<String>> sets = new ArrayList<>();
+        for (int i = 0; i <= ROUNDS; i++) {
+            sets.add(ProverRound.create(graph.getNumVertices(), colouring).getCommitments());
+        }
+        ProtocolMessage reply = session.handle(new BatchCommitMessage(sets, 1));
+        check(reply instanceof ResultMessage && !((ResultMessage) reply).isVerified(), "oversized batch is refused");
+        check(session.isFinished(), "oversized batch ends the session");
+
+        done("BatchSessionTest");
+    }
+
+    // Run one proof in batches; badRound > 0 reveals a wrong nonce in that round
+    static ResultMessage prove(GraphView graph, Map<Integer, String> colouring, int batchSize, int badRound) {
+        ZKPSession session = new ZKPSession(1, graph, ROUNDS, false);
+        int firstRound = 1;
+        while (true) {
+            int size = Math.min(batchSize, ROUNDS - firstRound + 1);
+            List<ProverRound> rounds = new ArrayList<>();
+            List<List<String>> sets = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                ProverRound round = ProverRound.create(graph.getNumVertices(), colouring);
+                rounds.add(round);
+                sets.add(round.getCommitments());
+            }
+            ProtocolMessage reply = session.handle(new BatchCommitMessage(sets, firstRound));
+            if (reply instanceof ResultMessage) {
+                return (ResultMessage) reply;
+            }
+            List<int[]> edges = ((BatchChallengeMessage) reply).getEdges();
+            checkEquals(size, edges.size(), "challenges in batch from round " + firstRound);
+
+            List<RevealMessage> reveals = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int[] edge = edges.get(i);
+                check(isEdge(graph, edge[0], edge[1]), "challenge " + Arrays.toString(edge) + " is an edge");
+                RevealMessage reveal = rounds.get(i).reveal(edge[0], edge[1], firstRound + i);
+                if (firstRound + i == badRound) {
+                    reveal = new RevealMessage(reveal.getColour1(), reveal.getColour2(), CryptoUtils.generateNonce(),
+                                               reveal.getNonce2(), reveal.getRound());
+                }
+                reveals.add(reveal);
+            }
+            reply = session.handle(new BatchRevealMessage(reveals, firstRound));
+            if (reply != null) {
+                check(session.isFinished(), "a result ends the session");
+                return (ResultMessage) reply;
+            }
+            firstRound += size;
+        }
+    }
+
+    static boolean isEdge(GraphView graph, int v1, int v2) {
+        for (int i = 0; i < graph.degree(v1); i++) {
+            if (graph.neighbor(v1, i) == v2) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package server;
+
+import static common.Checks.*;
+
+import client.NonInteractiveProver;
+import client.ProverRound;
+import common.*;
+import java.util.*;
+
+/**
+ * Fiat-Shamir proofs: an honest proof verifies before and after a trip
+ * through JSON, the challenges depend on the commitments' digests and not
+ * their spelling, and tampered, short, malformed or foreign proofs fail.
+ */
+public class ProofVerifierTest {
+
+    private static final int ROUNDS = 30;
+
+    public static void main(String[] args) {
+        Graph graph = Graph.createSampleGraph();
+        Map<Integer, String> colouring = Graph.getSampleColouring();
+        NonInteractiveProof proof = NonInteractiveProver.prove(graph, colouring, ROUNDS);
+
+        ResultMessage result = ProofVerifier.verify(graph, proof, ROUNDS);
+        check(result.isVerified(), "honest proof verifies: " + result.getMessage());
+        checkEquals(ROUNDS, result.getTotalRounds(), "rounds of honest proof");
+        check(ProofVerifier.verify(graph, NonInteractiveProof.fromJSON(proof.toJSON()), ROUNDS).isVerified(),
+              "honest proof verifies after JSON");
+        List<ResultMessage> all = ProofVerifier.verifyAll(graph, Arrays.asList(proof, proof, proof), ROUNDS);
+        check(all.stream().allMatch(ResultMessage::isVerified), "verifyAll agrees");
+
+        // The seed hashes decoded digests, so re-spelling the hex picks the same edges
+        List<int[]> edges = graph.getCanonicalEdges();
+        List<int[]> challenges = FiatShamir.deriveChallenges(proof.getGraphFingerprint(), proof.getCommitmentSets(), edges);
+        List<List<String>> upper = new ArrayList<>();
+        for (List<String> set : proof.getCommitmentSets()) {
+            List<String> copy = new ArrayList<>();
+            for (String commitment : set) {
+                copy.add(commitment.toUpperCase(Locale.ROOT));
+            }
+            upper.add(copy);
+        }
+        check(sameEdges(challenges, FiatShamir.deriveChallenges(proof.getGraphFingerprint(), upper, edges)),
+              "challenges ignore hex case");
+
+        // Fresh commitments for round 1 move the challenges; the old reveals no longer open them
+        List<List<String>> swapped = new ArrayList<>(proof.getCommitmentSets());
+        swapped.set(0, ProverRound.create(graph.getNumVertices(), colouring).getCommitments());
+        check(!sameEdges(challenges, FiatShamir.deriveChallenges(proof.getGraphFingerprint(), swapped, edges)),
+              "other commitments give other challenges");
+        check(!ProofVerifier.verify(graph, new NonInteractiveProof(proof.getGraphFingerprint(), swapped,
+                                                                   proof.getReveals()), ROUNDS).isVerified(),
+              "swapped commitments fail");
+
+        // A revealed colour that does not match its commitment
+        List<RevealMessage> reveals = new ArrayList<>(proof.getReveals());
+        RevealMessage reveal = reveals.get(ROUNDS / 2);
+        reveals.set(ROUNDS / 2, new RevealMessage(reveal.getColour2(), reveal.getColour1(), reveal.getNonce1(),
+                                                  reveal.getNonce2(), reveal.getRound()));
+        ResultMessage tampered = ProofVerifier.verify(graph, new NonInteractiveProof(proof.getGraphFingerprint(),
+                                                      proof.getCommitmentSets(), reveals), ROUNDS);
+        check(!tampered.isVerified(), "tampered reveal fails");
+        checkEquals(false, tampered.getRoundVerdicts().get(ROUNDS / 2), "verdict of the tampered round");
+
+        // Too few rounds for the required soundness, however honest
+        ResultMessage shortProof = ProofVerifier.verify(graph, proof, ROUNDS + 1);
+        check(!shortProof.isVerified() && shortProof.getMessage().contains("at least"), "short proof fails");
+        check(FiatShamir.requiredRounds(graph, 40) > RoundScheduler.forGraph(graph, 40).getRequiredRounds(),
+              "offline proofs need more rounds than interactive ones");
+
+        // Commitments that are not digests, and a proof about another graph
+        List<List<String>> malformed = new ArrayList<>(proof.getCommitmentSets());
+        List<String> notHex = new ArrayList<>(malformed.get(0));
+        notHex.set(0, "not a digest");
+        malformed.set(0, notHex);
+        ResultMessage bad = ProofVerifier.verify(graph, new NonInteractiveProof(proof.getGraphFingerprint(), malformed,
+                                                 proof.getReveals()), ROUNDS);
+        check(!bad.isVerified() && bad.getMessage().startsWith("Malformed proof"), "non-digest commitment fails");
+        Graph other = Graph.createSampleGraph();
+        other.addEdge(0, graph.getNumVertices() - 1);
+        check(!ProofVerifier.verify(other, proof, ROUNDS).isVerified(), "proof for another graph fails");
+
+        done("ProofVerifierTest");
+    }
+
+    private static boolean sameEdges(List<int[]> a, List<int[]> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!Arrays.equals(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
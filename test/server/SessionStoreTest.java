@@ -0,0 +1,287 @@
+package server;
+
+import static common.Checks.*;
+
+import client.ProverRound;
+import common.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Stored sessions: a restored session snapshots to the same bytes as the
+ * one that was saved and finishes the proof, whichever of two servers
+ * handles each message; commitments are only written on the messages that
+ * bring them; and a damaged or mismatched store is refused rather than
+ * misread. Runs against both stores.
+ */
+public class SessionStoreTest {
+
+    private static final int ROUNDS = 12;
+
+    public static void main(String[] args) throws Exception {
+        Graph graph = Graph.createSampleGraph();
+        ServedGraph served = ServedGraph.of(graph);
+
+        snapshots(served);
+
+        Path directory = Files.createTempDirectory("session-store-test");
+        try {
+            stores(served, new InMemorySessionStore(), "memory");
+            try (FileSessionStore files = new FileSessionStore(directory)) {
+                stores(served, files, "file");
+                fileLayout(files);
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+        done("SessionStoreTest");
+    }
+
+    // Snapshot and restore after every message, checking nothing changes on the way
+    private static void snapshots(ServedGraph served) throws IOException {
+        ServerMetrics metrics = new ServerMetrics();
+        ZKPSession session = new ZKPSession(7, served, ROUNDS, false, metrics);
+        session.setSoundnessTarget(3);
+        Map<Integer, String> colouring = Graph.getSampleColouring();
+        ByteBuffer commitments = null;
+        ResultMessage result = null;
+        for (int round = 1; result == null; round++) {
+            ProverRound prover = ProverRound.create(served.getNumVertices(), colouring);
+            ChallengeMessage challenge = (ChallengeMessage) session.handle(new CommitMessage(prover.getCommitments(), round));
+            check(session.commitmentsChanged(), "round " + round + " commitments are new");
+            commitments = session.snapshotCommitments();
+            check(!session.commitmentsChanged(), "round " + round + " commitments are saved");
+            session = roundTrip(session, commitments, served, metrics, "round " + round + " awaiting reveal");
+
+            ProtocolMessage reply = session.handle(prover.reveal(challenge.getVertex1(), challenge.getVertex2(), round));
+            check(!session.commitmentsChanged(), "round " + round + " reveal brings no commitments");
+            session = roundTrip(session, null, served, metrics, "round " + round + " awaiting commit");
+            result = (ResultMessage) reply;
+        }
+        check(result.isVerified(), "restored after every message, the proof verifies: " + result.getMessage());
+        check(session.isFinished() && session.isVerified(), "restored finished session");
+
+        // Awaiting a reveal, the state needs exactly the commitments of its round
+        ZKPSession waiting = new ZKPSession(8, served, ROUNDS, false, metrics);
+        ProverRound prover = ProverRound.create(served.getNumVertices(), colouring);
+        waiting.handle(new CommitMessage(prover.getCommitments(), 1));
+        ByteBuffer state = waiting.snapshot();
+        check(ZKPSession.needsCommitments(state), "awaiting reveal needs commitments");
+        checkThrows(IOException.class, () -> ZKPSession.restore(state, null, served, null, metrics),
+                    "missing commitments");
+        ByteBuffer stale = commitments;
+        checkThrows(IOException.class, () -> ZKPSession.restore(state, stale, served, null, metrics),
+                    "commitments of another round");
+        ByteBuffer truncated = state.duplicate();
+        truncated.limit(truncated.limit() - 5);
+        checkThrows(IOException.class, () -> ZKPSession.restore(truncated, waiting.snapshotCommitments(), served, null,
+                                                                metrics), "truncated state");
+        ByteBuffer version = ByteBuffer.allocate(state.remaining()).put(state.duplicate());
+        version.putInt(0, 99).flip();
+        checkThrows(IOException.class, () -> ZKPSession.needsCommitments(version), "unknown version");
+        Graph triangle = new Graph(3);
+        triangle.addEdge(0, 1);
+        triangle.addEdge(1, 2);
+        triangle.addEdge(2, 0);
+        ServedGraph other = ServedGraph.of(triangle);
+        checkThrows(IOException.class, () -> ZKPSession.restore(state, waiting.snapshotCommitments(), other, null,
+                                                                metrics), "graph not served");
+        waiting.release();
+    }
+
+    private static ZKPSession roundTrip(ZKPSession session, ByteBuffer commitments, ServedGraph served,
+                                        ServerMetrics metrics, String what) throws IOException {
+        ByteBuffer state = session.snapshot();
+        checkEquals(commitments != null, ZKPSession.needsCommitments(state), what + " needs commitments");
+        ZKPSession restored = ZKPSession.restore(state, commitments, served, null, metrics);
+        checkEquals(state, restored.snapshot(), what + " state");
+        if (commitments != null) {
+            checkEquals(commitments, restored.snapshotCommitments(), what + " commitments");
+        }
+        checkEquals(session.getPhase(), restored.getPhase(), what + " phase");
+        session.release();
+        return restored;
+    }
+
+    // Whole proofs through two demultiplexers sharing one store, as two servers would
+    private static void stores(ServedGraph served, SessionStore store, String name) throws IOException {
+        CountingStore counting = new CountingStore(store);
+        ServerMetrics metrics = new ServerMetrics();
+        SessionDemux.StoredSessions sessions = new SessionDemux.StoredSessions() {
+            @Override
+            public ZKPSession create(long sessionId) {
+                return new ZKPSession(sessionId, served, ROUNDS, false, metrics);
+            }
+
+            @Override
+            public ZKPSession restore(ByteBuffer state, ByteBuffer commitments) throws IOException {
+                return ZKPSession.restore(state, commitments, served, null, metrics);
+            }
+        };
+        SessionDemux[] servers = {
+            new SessionDemux(() -> null, counting, sessions),
+            new SessionDemux(() -> null, counting, sessions)
+        };
+        Map<Integer, String> colouring = Graph.getSampleColouring();
+
+        // One round at a time: one commitments write per round, each message on the other server
+        long id = 0x5e55_1011_0000_0001L;
+        ResultMessage result = null;
+        int messages = 0;
+        for (int round = 1; result == null; round++) {
+            ProverRound prover = ProverRound.create(served.getNumVertices(), colouring);
+            ChallengeMessage challenge = (ChallengeMessage) servers[messages++ % 2].handle(
+                tagged(new CommitMessage(prover.getCommitments(), round), id));
+            checkEquals(id, challenge.getSessionId(), name + " reply carries the session id");
+            result = (ResultMessage) servers[messages++ % 2].handle(
+                tagged(prover.reveal(challenge.getVertex1(), challenge.getVertex2(), round), id));
+        }
+        check(result.isVerified(), name + " store, alternating servers, verifies: " + result.getMessage());
+        checkEquals(ROUNDS, counting.commitmentSaves, name + " commitments saved once per round");
+        checkEquals(messages, counting.stateSaves, name + " state saved once per message");
+        check(counting.largestState < served.getNumVertices() * CryptoUtils.DIGEST_BYTES,
+              name + " states stay smaller than one round's commitments (" + counting.largestState + " bytes)");
+
+        // A late message finds the session finished
+        check(servers[0].handle(tagged(new CommitMessage(Collections.emptyList(), ROUNDS + 1), id)) == null,
+              name + " late message after the result");
+
+        // Batches: one commitments write per batch
+        long batchId = id + 1;
+        counting.commitmentSaves = 0;
+        int firstRound = 1;
+        result = null;
+        while (result == null) {
+            int size = Math.min(5, ROUNDS - firstRound + 1);
+            List<ProverRound> provers = new ArrayList<>();
+            List<List<String>> sets = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                provers.add(ProverRound.create(served.getNumVertices(), colouring));
+                sets.add(provers.get(i).getCommitments());
+            }
+            BatchChallengeMessage challenge = (BatchChallengeMessage) servers[0].handle(
+                tagged(new BatchCommitMessage(sets, firstRound), batchId));
+            List<RevealMessage> reveals = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                int[] edge = challenge.getEdges().get(i);
+                reveals.add(provers.get(i).reveal(edge[0], edge[1], firstRound + i));
+            }
+            result = (ResultMessage) servers[1].handle(tagged(new BatchRevealMessage(reveals, firstRound), batchId));
+            firstRound += size;
+        }
+        check(result.isVerified(), name + " store, batches, verifies: " + result.getMessage());
+        checkEquals(3, counting.commitmentSaves, name + " commitments saved once per batch");
+
+        // Idle sessions go, state and commitments together
+        checkEquals(2, store.purge(0), name + " purge");
+        check(store.load(id) == null && store.loadCommitments(id) == null, name + " purged session is gone");
+        check(store.load(batchId) == null && store.loadCommitments(batchId) == null, name + " purged batch is gone");
+    }
+
+    // The file store's logs: a torn save is cut off, long logs are compacted, damaged commitments refused
+    private static void fileLayout(FileSessionStore store) throws IOException {
+        long id = 0x0f11_e000_0000_0001L;
+        Path state = store.getDirectory().resolve(String.format("%016x.zks", id));
+        Path commitments = store.getDirectory().resolve(String.format("%016x.zkc", id));
+
+        store.save(id, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        store.save(id, ByteBuffer.wrap(new byte[]{4, 5}));
+        long intact = Files.size(state);
+        try (FileChannel channel = FileChannel.open(state, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 9, 1, 2}));
+        }
+        checkEquals(ByteBuffer.wrap(new byte[]{4, 5}), store.load(id), "last intact state after a torn save");
+        checkEquals(intact, Files.size(state), "torn save cut off");
+        store.save(id, ByteBuffer.wrap(new byte[]{6}));
+        checkEquals(ByteBuffer.wrap(new byte[]{6}), store.load(id), "save after a torn one");
+
+        byte[] large = new byte[1000];
+        for (int i = 0; i < 200; i++) {
+            large[0] = (byte) i;
+            store.save(id, ByteBuffer.wrap(large));
+        }
+        check(Files.size(state) <= 64 * 1024, "state log compacted (" + Files.size(state) + " bytes)");
+        checkEquals((byte) 199, store.load(id).get(0), "latest state after compaction");
+
+        store.saveCommitments(id, ByteBuffer.wrap(new byte[100]));
+        store.saveCommitments(id, ByteBuffer.wrap(new byte[]{7, 7}));
+        checkEquals(ByteBuffer.wrap(new byte[]{7, 7}), store.loadCommitments(id), "commitments overwritten in place");
+        byte[] damaged = Files.readAllBytes(commitments);
+        damaged[damaged.length - 1] ^= 1;
+        Files.write(commitments, damaged);
+        checkThrows(IOException.class, () -> store.loadCommitments(id), "damaged commitments");
+
+        Files.write(state, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        checkThrows(IOException.class, () -> store.load(id), "state without an intact record");
+        store.remove(id);
+        check(!Files.exists(state) && !Files.exists(commitments), "remove drops both files");
+    }
+
+    private static ProtocolMessage tagged(ProtocolMessage message, long id) {
+        message.setSessionId(id);
+        return message;
+    }
+
+    // Counts what the demultiplexers write
+    private static final class CountingStore implements SessionStore {
+        private final SessionStore store;
+        int stateSaves;
+        int commitmentSaves;
+        int largestState;
+
+        CountingStore(SessionStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public Lock lock(long sessionId) throws IOException {
+            return store.lock(sessionId);
+        }
+
+        @Override
+        public ByteBuffer load(long sessionId) throws IOException {
+            return store.load(sessionId);
+        }
+
+        @Override
+        public void save(long sessionId, ByteBuffer state) throws IOException {
+            stateSaves++;
+            largestState = Math.max(largestState, state.remaining());
+            store.save(sessionId, state);
+        }
+
+        @Override
+        public ByteBuffer loadCommitments(long sessionId) throws IOException {
+            return store.loadCommitments(sessionId);
+        }
+
+        @Override
+        public void saveCommitments(long sessionId, ByteBuffer commitments) throws IOException {
+            commitmentSaves++;
+            store.saveCommitments(sessionId, commitments);
+        }
+
+        @Override
+        public void remove(long sessionId) throws IOException {
+            store.remove(sessionId);
+        }
+
+        @Override
+        public int purge(long idleMillis) throws IOException {
+            return store.purge(idleMillis);
+        }
+
+        @Override
+        public void close() throws IOException {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package server;
+
+import static common.Checks.*;
+
+import client.ProverRound;
+import common.*;
+import java.util.Map;
+
+/**
+ * Verdict tokens: only the token issued with a verdict unlocks it, for that
+ * prover and graph and until it expires; forged, altered and foreign tokens
+ * do not, and a prover who only claims an id can neither use nor drop
+ * another prover's verdict.
+ */
+public class VerdictCacheTest {
+
+    private static final String GRAPH = CryptoUtils.createCommitment("graph", "00");
+    private static final String OTHER_GRAPH = CryptoUtils.createCommitment("other", "00");
+
+    public static void main(String[] args) throws Exception {
+        byte[] key = new byte[32];
+        VerdictCache cache = new VerdictCache(100, 60_000, new ServerMetrics(), key);
+        String token = cache.put("alice", GRAPH, 20);
+
+        VerdictCache.Verdict verdict = cache.lookup("alice", GRAPH, token, 20);
+        check(verdict != null && verdict.getRounds() == 20, "issued token unlocks the verdict");
+        check(cache.isValid(token, "alice", GRAPH), "issued token is valid");
+        check(cache.lookup("alice", GRAPH, token, 21) == null, "verdict with too few rounds");
+
+        // Forgeries: someone else's id or graph, an altered expiry or mac, junk, no token
+        check(cache.lookup("mallory", GRAPH, token, 20) == null, "token of another prover");
+        check(cache.lookup("alice", OTHER_GRAPH, token, 20) == null, "token for another graph");
+        int dot = token.indexOf('.');
+        long expiry = Long.parseLong(token.substring(0, dot));
+        check(!cache.isValid((expiry + 3_600_000) + token.substring(dot), "alice", GRAPH), "extended expiry");
+        String mac = token.substring(dot + 1);
+        String flipped = mac.substring(0, mac.length() - 1) + (mac.endsWith("0") ? "1" : "0");
+        check(!cache.isValid(token.substring(0, dot + 1) + flipped, "alice", GRAPH), "altered mac");
+        for (String junk : new String[]{null, "", ".", "abc", expiry + ".", "." + mac, expiry + ".zz", mac}) {
+            check(!cache.isValid(junk, "alice", GRAPH), "junk token " + junk);
+        }
+        check(!cache.isValid(token, null, GRAPH), "anonymous prover");
+        // Length-prefixed fields: moving a character between id and fingerprint changes the mac
+        check(!cache.isValid(token, "alic", "e" + GRAPH), "shifted fields");
+
+        // Tokens are bound to the cache's key
+        check(!new VerdictCache(100, 60_000, new ServerMetrics()).isValid(token, "alice", GRAPH), "another key");
+        check(new VerdictCache(100, 60_000, new ServerMetrics(), key.clone()).isValid(token, "alice", GRAPH),
+              "the same key");
+
+        // Expiry: the entry and the token stop working together
+        VerdictCache shortLived = new VerdictCache(100, 50, new ServerMetrics(), key);
+        String shortToken = shortLived.put("alice", GRAPH, 20);
+        check(shortLived.lookup("alice", GRAPH, shortToken, 20) != null, "fresh verdict");
+        Thread.sleep(120);
+        check(!shortLived.isValid(shortToken, "alice", GRAPH), "expired token");
+        check(shortLived.lookup("alice", GRAPH, shortToken, 20) == null, "expired verdict");
+
+        // Least recently used entries go first
+        VerdictCache small = new VerdictCache(2, 60_000, new ServerMetrics(), key);
+        String a = small.put("a", GRAPH, 20);
+        String b = small.put("b", GRAPH, 20);
+        check(small.lookup("a", GRAPH, a, 20) != null, "a before eviction");
+        small.put("c", GRAPH, 20);
+        checkEquals(2, small.size(), "size after eviction");
+        check(small.lookup("b", GRAPH, b, 20) == null, "b evicted");
+        check(small.lookup("a", GRAPH, a, 20) != null, "a kept");
+        small.invalidate("a", GRAPH);
+        check(small.lookup("a", GRAPH, a, 20) == null, "a invalidated");
+
+        sessions();
+        done("VerdictCacheTest");
+    }
+
+    // Through sessions: the token from a proof answers the next HELLO, a bare claim does not
+    private static void sessions() {
+        Graph graph = Graph.createSampleGraph();
+        ServedGraph served = ServedGraph.of(graph);
+        VerdictCache cache = new VerdictCache(100, 60_000, new ServerMetrics());
+
+        ResultMessage proved = prove(served, cache, new HelloMessage("alice", graph.fingerprint()), true);
+        check(proved.isVerified() && proved.getVerdictToken() != null, "a proof issues a token");
+        String token = proved.getVerdictToken();
+
+        ZKPSession cached = session(served, cache);
+        ProtocolMessage reply = cached.handle(new HelloMessage("alice", graph.fingerprint(), token));
+        check(reply instanceof ResultMessage && ((ResultMessage) reply).isVerified(), "the token answers HELLO");
+        check(cached.isFinished(), "a cached verdict ends the session");
+
+        ZKPSession claimed = session(served, cache);
+        check(claimed.handle(new HelloMessage("alice", graph.fingerprint())) == null, "a bare claim must prove");
+        claimed.release();
+
+        // Someone claiming alice's id and failing does not drop her verdict
+        ResultMessage failed = prove(served, cache, new HelloMessage("alice", graph.fingerprint()), false);
+        check(!failed.isVerified(), "the impostor fails");
+        check(cache.lookup("alice", graph.fingerprint(), token, 5) != null, "alice keeps her verdict");
+    }
+
+    private static ZKPSession session(ServedGraph served, VerdictCache cache) {
+        ZKPSession session = new ZKPSession(1, served, 5, false, new ServerMetrics());
+        session.setVerdictCache(cache);
+        return session;
+    }
+
+    private static ResultMessage prove(ServedGraph served, VerdictCache cache, HelloMessage hello, boolean honest) {
+        ZKPSession session = session(served, cache);
+        check(session.handle(hello) == null, "HELLO without a token starts a proof");
+        Map<Integer, String> colouring = Graph.getSampleColouring();
+        for (int round = 1; ; round++) {
+            ProverRound prover = ProverRound.create(served.getGraph().getNumVertices(), colouring);
+            ProtocolMessage reply = session.handle(new CommitMessage(prover.getCommitments(), round));
+            ChallengeMessage challenge = (ChallengeMessage) reply;
+            RevealMessage reveal = prover.reveal(challenge.getVertex1(), challenge.getVertex2(), round);
+            if (!honest) {
+                reveal = new RevealMessage(reveal.getColour1(), reveal.getColour2(), CryptoUtils.generateNonce(),
+                                           reveal.getNonce2(), round);
+            }
+            reply = session.handle(reveal);
+            if (reply != null) {
+                return (ResultMessage) reply;
+            }
+        }
+    }
+}